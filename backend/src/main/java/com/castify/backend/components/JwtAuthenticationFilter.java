@@ -1,8 +1,10 @@
 package com.castify.backend.components;
 
-import com.castify.backend.repository.TokenRepository;
+import com.castify.backend.enums.TokenStatus;
+import com.castify.backend.service.authenticatation.PrincipalCache;
 import com.castify.backend.service.authenticatation.jwt.IJwtService;
-import com.castify.backend.service.authenticatation.jwt.JwtServiceImpl;
+import com.castify.backend.service.authenticatation.jwt.TokenStatusCache;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,7 +18,6 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -28,9 +29,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private IJwtService jwtService;
     @Autowired
-    private UserDetailsService userDetailsService;
+    private PrincipalCache principalCache;
     @Autowired
-    private TokenRepository tokenRepository;
+    private TokenStatusCache tokenStatusCache;
 
     @Override
     protected void doFilterInternal(
@@ -50,13 +51,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
         jwt = authHeader.substring(7);
-        userEmail = jwtService.extractUsername(jwt);
+        // Parse 1 lần, user và trạng thái token lấy từ cache (thường không cần đọc DB)
+        final Claims claims = jwtService.parseToken(jwt);
+        userEmail = claims.getSubject();
         if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-            var isTokenValid = tokenRepository.findByToken(jwt)
-                    .map(t -> !t.isExpired() && !t.isRevoked())
-                    .orElse(false);
-            if (jwtService.isTokenValid(jwt, userDetails) && isTokenValid) {
+            UserDetails userDetails = principalCache.load(userEmail);
+            if (jwtService.isTokenValid(claims, userDetails)
+                    && tokenStatusCache.getStatus(jwt) == TokenStatus.ACTIVE) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -1,17 +1,22 @@
 package com.castify.backend.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.concurrent.ThreadPoolExecutor;
+
 @Configuration
 @EnableScheduling
 @EnableAsync
 public class SchedulingConfig {
     @Bean
+    @Primary
     public TaskExecutor taskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(2);
@@ -21,4 +26,36 @@ public class SchedulingConfig {
         executor.initialize();
         return executor;
     }
+
+    // Pool cho tìm kiếm song song theo nhóm; hết chỗ thì từ chối để SearchServiceImpl trả kết quả thiếu
+    // thay vì chạy trên thread request và vượt quá thời gian chờ của từng nhóm
+    @Bean(name = "searchExecutor")
+    public ThreadPoolTaskExecutor searchExecutor(@Value("${search.executor.pool-size:8}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 25);
+        executor.setThreadNamePrefix("search-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Pool riêng cho transcode job: ffmpeg đã tự dùng nhiều core nên giới hạn số job chạy song song theo số core
+    @Bean(name = "transcodeExecutor")
+    public ThreadPoolTaskExecutor transcodeExecutor(
+            @Value("${transcode.worker.pool-size:0}") int configuredPoolSize) {
+        int poolSize = configuredPoolSize > 0
+                ? configuredPoolSize
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize);
+        executor.setThreadNamePrefix("transcode-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
 }
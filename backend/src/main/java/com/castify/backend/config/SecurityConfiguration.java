@@ -54,6 +54,7 @@ public class SecurityConfiguration {
             "/api/v1/podcast/suggested-by-genres/{id}",
             "/api/v1/podcast/view/**",
             "/api/v1/podcast/video",
+            "/api/v1/podcast/hls/**",
             "/api/v1/podcast/{id}/inc-views",
             "/api/v1/podcast/anonymous/**",
             "/api/v1/comment/list/{id}",
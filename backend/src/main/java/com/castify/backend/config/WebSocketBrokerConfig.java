@@ -0,0 +1,62 @@
+package com.castify.backend.config;
+
+import com.castify.backend.service.websocket.WebSocketSendBufferRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * Thay cho @EnableWebSocketMessageBroker (các WebSocketMessageBrokerConfigurer như WebSocketConfig vẫn được áp dụng),
+ * chỉ đổi cách bọc session để đăng ký send buffer của từng session vào {@link WebSocketSendBufferRegistry}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class WebSocketBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Autowired
+    private WebSocketSendBufferRegistry sendBufferRegistry;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel) {
+
+        SubProtocolWebSocketHandler handler =
+                new BufferTrackingWebSocketHandler(clientInboundChannel, clientOutboundChannel, sendBufferRegistry);
+        handler.setPhase(getPhase());
+        return handler;
+    }
+
+    static class BufferTrackingWebSocketHandler extends SubProtocolWebSocketHandler {
+        private final WebSocketSendBufferRegistry sendBufferRegistry;
+
+        BufferTrackingWebSocketHandler(MessageChannel clientInboundChannel, SubscribableChannel clientOutboundChannel,
+                                       WebSocketSendBufferRegistry sendBufferRegistry) {
+            super(clientInboundChannel, clientOutboundChannel);
+            this.sendBufferRegistry = sendBufferRegistry;
+        }
+
+        @Override
+        protected WebSocketSession decorateSession(WebSocketSession session) {
+            return sendBufferRegistry.decorate(session, getSendTimeLimit(), getSendBufferSizeLimit());
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+            try {
+                super.afterConnectionClosed(session, closeStatus);
+            } finally {
+                sendBufferRegistry.remove(session.getId());
+            }
+        }
+    }
+}
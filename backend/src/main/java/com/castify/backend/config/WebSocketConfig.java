@@ -5,6 +5,8 @@ import com.castify.backend.entity.UserEntity;
 import com.castify.backend.repository.UserRepository;
 import com.castify.backend.service.authenticatation.jwt.IJwtService;
 import com.castify.backend.service.authenticatation.jwt.JwtServiceImpl;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import com.castify.backend.service.websocket.OutboundBackpressureInterceptor;
 import com.castify.backend.utils.SocketJwtAuthenticationToken;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,7 +30,6 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.messaging.access.intercept.MessageMatcherDelegatingAuthorizationManager;
 import org.springframework.web.socket.WebSocketHandler;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
@@ -41,13 +42,14 @@ import java.util.Map;
 import java.util.logging.Logger;
 
 @Configuration
-@EnableWebSocketMessageBroker
 @RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final JwtServiceImpl jwtService; // Dùng JwtService của mày
     private final UserDetailsService userDetailsService;
     private final UserRepository userRepository;
+    private final IBrokerRelayService brokerRelayService;
+    private final OutboundBackpressureInterceptor outboundBackpressureInterceptor;
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
@@ -65,6 +67,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private static final Logger logger = Logger.getLogger(WebSocketConfig.class.getName());
 
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Bỏ bớt message không quan trọng khi send buffer của session chậm đã đầy (xem WebSocketBrokerConfig)
+        registration.interceptors(outboundBackpressureInterceptor);
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         registration.interceptors(new ChannelInterceptor() {
@@ -116,6 +124,15 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.enableSimpleBroker("/topic", "/queue", "/user","/msg");
         registry.setApplicationDestinationPrefixes("/app");
         registry.setUserDestinationPrefix("/user");
+
+        // Chạy nhiều node: message gửi vào broker được chuyển tiếp sang các node khác (local mode thì bỏ qua)
+        registry.configureBrokerChannel().interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                brokerRelayService.relay(message);
+                return message;
+            }
+        });
     }
 
     @Bean
@@ -93,6 +93,23 @@ public class ConversationController {
         }
     }
 
+    @GetMapping("/msg/history")
+    private ResponseEntity<?> getMsgHistory(
+            @RequestParam(value = "groupId") String groupId,
+            @RequestParam(value = "before", required = false) String before,
+            @RequestParam(value = "pageSize", defaultValue = "30") int pageSize
+    ) {
+        try {
+            return ResponseEntity.ok(chatService.getMessagesBefore(groupId, before, pageSize));
+        } catch (IllegalArgumentException ex) {
+            logger.info(ex.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (Exception ex) {
+            logger.info(ex.getMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     @PostMapping("/member/add")
     private ResponseEntity<?> addMemberToChat(@RequestParam String groupId, @RequestBody List<String> memberIds) {
         try {
@@ -2,11 +2,13 @@ package com.castify.backend.controller;
 
 import com.castify.backend.entity.UserEntity;
 import com.castify.backend.enums.Role;
+import com.castify.backend.exception.PermissionDeniedException;
 import com.castify.backend.models.PageDTO;
 import com.castify.backend.models.podcast.CreatePodcastModel;
 import com.castify.backend.models.podcast.EditPodcastDTO;
 import com.castify.backend.models.podcast.LikePodcastDTO;
 import com.castify.backend.models.podcast.PodcastModel;
+import com.castify.backend.models.podcast.TranscodeJobModel;
 import com.castify.backend.models.user.UserModel;
 import com.castify.backend.service.ffmpeg.IFFmpegService;
 import com.castify.backend.service.genre.IGenreService;
@@ -16,17 +18,21 @@ import com.castify.backend.service.podcast.*;
 
 import com.castify.backend.service.podcastLike.IPodcastLikeService;
 
+import com.castify.backend.service.streaming.IRenditionIndexService;
+import com.castify.backend.service.streaming.IVideoStreamService;
+import com.castify.backend.service.transcode.HlsPackagingService;
+import com.castify.backend.service.transcode.ITranscodeJobService;
+
 import com.castify.backend.service.uploadFile.IUploadFileService;
 import com.castify.backend.service.user.IUserService;
 import com.castify.backend.service.user.UserServiceImpl;
 import com.castify.backend.utils.FileUtils;
 import io.jsonwebtoken.MalformedJwtException;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -40,14 +46,13 @@ import java.io.File;
 
 import java.io.IOException;
 
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 @RestController
@@ -92,6 +97,18 @@ public class PodcastController {
     @Autowired
     private TrendingPodcastService trendingPodcastService;
 
+    @Autowired
+    private ITranscodeJobService transcodeJobService;
+
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+
+    @Autowired
+    private IVideoStreamService videoStreamService;
+
+    @Autowired
+    private IRenditionIndexService renditionIndexService;
+
     @PostMapping(value = "/create", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> createPodcast(
             @RequestPart("title") String title,
@@ -115,40 +132,32 @@ public class PodcastController {
             File realVideoFile = videoPath.toFile();
             videoFile.transferTo(realVideoFile);
 
-            // Xử lý thumbnail
-            String thumbnailUrl;
-            if (thumbnail != null && !thumbnail.isEmpty()) {
+            // Chỉ upload thumbnail do user gửi lên, việc capture frame để worker xử lý
+            String thumbnailUrl = null;
+            boolean captureThumbnail = thumbnail == null || thumbnail.isEmpty();
+            if (!captureThumbnail) {
                 // Resize & Upload thumbnail lên Cloudinary
                 thumbnailUrl = processAndUploadThumbnail(thumbnail, userThumbnailDir);
-            } else {
-                // Tạo đường dẫn lưu thumbnail tạm thời
-                String tempThumbnailFileName = "thumb_" + formattedVideoFileName.replace(".mp4", ".jpeg");
-                Path tempThumbnailPath = userThumbnailDir.resolve(tempThumbnailFileName);
-
-                // Sử dụng FFmpeg để capture frame đầu tiên
-                ffmpegService.captureFrameFromVideo(videoPath.toString(), tempThumbnailPath.toString());
-
-                // Resize về đúng tỉ lệ 16:9
-                Path resizedThumbnailPath = userThumbnailDir.resolve("resized_" + tempThumbnailFileName);
-                ffmpegService.resizeImageTo16by9(tempThumbnailPath.toString(), resizedThumbnailPath.toString());
-
-                // Upload frame đã capture lên Cloudinary
-                thumbnailUrl = uploadFileService.uploadImageBytes(FileUtils.encodeFileToBase64(resizedThumbnailPath.toFile()));
             }
 
-            long duration = ffmpegService.getVideoDuration(videoPath.toString());
-
+            // Duration sẽ được worker probe ở stage DURATION
             CreatePodcastModel createPodcastModel = new CreatePodcastModel(
-                    title, content, videoPath.toString(), thumbnailUrl, genreIds, duration
+                    title, content, videoPath.toString(), thumbnailUrl, genreIds, 0
             );
 
             PodcastModel podcastModel = podcastService.createPodcast(createPodcastModel, userModel.getId());
-            videoTranscodeService.transcodeVideo(podcastModel.getVideoUrl(),userPodcastDir.toString()+"/transcode", podcastModel.getId());
-            // ✅ Không xài lại MultipartFile nữa. Dùng video đã lưu
-            videoTranscribeService.transcribeVideo(realVideoFile, podcastModel.getId());
 
+            // Thumbnail, duration, transcode và transcribe chạy nền qua hàng đợi job
+            TranscodeJobModel job = transcodeJobService.enqueue(
+                    podcastModel.getId(),
+                    userModel.getId(),
+                    realVideoFile.getAbsolutePath(),
+                    userPodcastDir.resolve("transcode").toString(),
+                    userThumbnailDir.toString(),
+                    captureThumbnail
+            );
 
-            return ResponseEntity.ok(podcastModel);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error: " + e.getMessage());
@@ -210,7 +219,7 @@ public class PodcastController {
     }
 
     @GetMapping("/video")
-    public ResponseEntity<Resource> getVideo(@RequestParam String path, HttpServletRequest request, @RequestHeader(value = "Referer", required = false) String referer, @RequestHeader(value = "X-Mobile-App", required = false) String mobileApp) {
+    public void getVideo(@RequestParam String path, HttpServletRequest request, HttpServletResponse response, @RequestHeader(value = "Referer", required = false) String referer, @RequestHeader(value = "X-Mobile-App", required = false) String mobileApp) {
         try {
             // Kiểm tra nguồn gốc yêu cầu
 //            if ((referer == null || (!referer.startsWith("http://localhost:5000") && !referer.startsWith("https://castifyapp.vercel.app/")&& !referer.startsWith("http://14.225.198.232")&& !referer.startsWith("https://14.225.198.232"))) && mobileApp == null ) {
@@ -219,54 +228,40 @@ public class PodcastController {
 //            }
 
             Path filePath = Paths.get(videoBasePath).resolve(path).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-
-            long fileLength = resource.getFile().length();
-            String range = request.getHeader("Range");
-
-            if (range != null) {
-                // Parse Range Header
-                long start = 0, end = fileLength - 1;
-                String[] ranges = range.replace("bytes=", "").split("-");
-                if (!ranges[0].isEmpty()) start = Long.parseLong(ranges[0]);
-                if (ranges.length > 1 && !ranges[1].isEmpty()) end = Long.parseLong(ranges[1]);
-
-                if (start > end || end >= fileLength) {
-                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
-                            .header("Content-Range", "bytes */" + fileLength)
-                            .build();
-                }
-
-                long contentLength = end - start + 1;
-
-                // Trả về luồng dữ liệu
-                InputStream inputStream = Files.newInputStream(filePath);
-                inputStream.skip(start);
-
-                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                        .header(HttpHeaders.CONTENT_TYPE, "video/mp4")
-                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength)
-                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                        .contentLength(contentLength)
-                        .body(new InputStreamResource(inputStream));
-            } else {
-                // Trả về toàn bộ file nếu không có header "Range"
-                return ResponseEntity.ok()
-                        .header(HttpHeaders.CONTENT_TYPE, "video/mp4")
-                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                        .contentLength(fileLength)
-                        .body(resource);
-            }
+            videoStreamService.serve(filePath, "video/mp4", null, request, response);
+        } catch (IOException e) {
+            // Client đóng kết nối giữa chừng (seek, đóng tab) là bình thường khi stream video
+            logger.fine("Video stream aborted: " + e.getMessage());
         } catch (Exception e) {
             logger.severe("Error serving video: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
         }
     }
 
+    @GetMapping("/hls/{podcastId}/master.m3u8")
+    public void getHlsMasterPlaylist(@PathVariable String podcastId,
+                                     HttpServletRequest request, HttpServletResponse response) {
+        serveHlsFile(podcastId, null, null, HlsPackagingService.MASTER_PLAYLIST, request, response);
+    }
+
+    // URL cũ (đóng gói trước khi có phiên bản)
+    @GetMapping("/hls/{podcastId}/{rendition}/{fileName:.+}")
+    public void getHlsFile(@PathVariable String podcastId,
+                           @PathVariable String rendition,
+                           @PathVariable String fileName,
+                           HttpServletRequest request, HttpServletResponse response) {
+        serveHlsFile(podcastId, null, rendition, fileName, request, response);
+    }
+
+    @GetMapping("/hls/{podcastId}/{version}/{rendition}/{fileName:.+}")
+    public void getVersionedHlsFile(@PathVariable String podcastId,
+                                    @PathVariable String version,
+                                    @PathVariable String rendition,
+                                    @PathVariable String fileName,
+                                    HttpServletRequest request, HttpServletResponse response) {
+        serveHlsFile(podcastId, version, rendition, fileName, request, response);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<?> getPodcastByAuthUser(@PathVariable String id) {
         try {
@@ -458,6 +453,27 @@ public class PodcastController {
     public ResponseEntity<?> getTranscript(@RequestParam(value = "podcastId")String podcastId) {
         return ResponseEntity.ok(videoTranscribe.getTranscripts(podcastId));
     }
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getTranscodeJob(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(transcodeJobService.getJob(jobId));
+        } catch (PermissionDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{id}/job")
+    public ResponseEntity<?> getTranscodeJobByPodcast(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(transcodeJobService.getLatestJobByPodcast(id));
+        } catch (PermissionDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error: " + e.getMessage());
+        }
+    }
     @GetMapping("/next")
     public ResponseEntity<?> getNextPodcast(@RequestParam(value = "podcastId")String podcastId) {
         return ResponseEntity.ok(podcastService.getSuggestedPodcasts(podcastId));
@@ -485,87 +501,57 @@ public class PodcastController {
         }
     }
     @GetMapping("/video/by-quality")
-    public ResponseEntity<Resource> getVideoByQuality(
-            @RequestParam String basePath,
+    public void getVideoByQuality(
+            @RequestParam(required = false) String basePath, // Giữ lại cho client cũ, không còn dùng
             @RequestParam int quality,
             @RequestParam String podcastId,
-            HttpServletRequest request
+            HttpServletRequest request,
+            HttpServletResponse response
     ) {
         try {
-            Path videoFolderPath = Paths.get(videoBasePath).resolve(basePath).normalize();
-            File folder = videoFolderPath.toFile();
-
-            if (!folder.exists() || !folder.isDirectory()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            // Tìm chất lượng gần nhất thấp hơn hoặc bằng yêu cầu từ rendition index
+            Optional<Path> selectedFile = renditionIndexService.resolveRendition(podcastId, quality);
+            if (selectedFile.isEmpty()) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
 
-            // Lấy tất cả các file video_XXXp.mp4
-            File[] files = folder.listFiles((dir, name) -> name.matches(podcastId+"_\\d{3,4}p\\.mp4"));
-
-            if (files == null || files.length == 0) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-            }
-
-            // Parse các độ phân giải hiện có
-            TreeMap<Integer, File> qualityMap = new TreeMap<>();
-            for (File file : files) {
-                String name = file.getName(); // video_480p.mp4
-                try {
-                    int res = Integer.parseInt(name.replaceAll("video_(\\d{3,4})p\\.mp4", "$1"));
-                    qualityMap.put(res, file);
-                } catch (Exception ignored) {}
-            }
+            videoStreamService.serve(selectedFile.get(), "video/mp4", null, request, response);
+        } catch (IOException e) {
+            logger.fine("Video stream aborted: " + e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+        }
+    }
 
-            // Tìm chất lượng gần nhất thấp hơn hoặc bằng yêu cầu
-            Integer selectedQuality = qualityMap.floorKey(quality);
-            if (selectedQuality == null) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-            }
 
-            File selectedFile = qualityMap.get(selectedQuality);
-            Resource resource = new UrlResource(selectedFile.toURI());
-
-            // Xử lý header Range (giống như hàm getVideo cũ)
-            long fileLength = selectedFile.length();
-            String range = request.getHeader("Range");
-
-            if (range != null) {
-                long start = 0, end = fileLength - 1;
-                String[] ranges = range.replace("bytes=", "").split("-");
-                if (!ranges[0].isEmpty()) start = Long.parseLong(ranges[0]);
-                if (ranges.length > 1 && !ranges[1].isEmpty()) end = Long.parseLong(ranges[1]);
-
-                if (start > end || end >= fileLength) {
-                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
-                            .header("Content-Range", "bytes */" + fileLength)
-                            .build();
-                }
-
-                long contentLength = end - start + 1;
-                InputStream inputStream = Files.newInputStream(selectedFile.toPath());
-                inputStream.skip(start);
-
-                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                        .header(HttpHeaders.CONTENT_TYPE, "video/mp4")
-                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength)
-                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                        .contentLength(contentLength)
-                        .body(new InputStreamResource(inputStream));
-            } else {
-                return ResponseEntity.ok()
-                        .header(HttpHeaders.CONTENT_TYPE, "video/mp4")
-                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                        .contentLength(fileLength)
-                        .body(resource);
+    private void serveHlsFile(String podcastId, String version, String rendition, String fileName,
+                              HttpServletRequest request, HttpServletResponse response) {
+        try {
+            Optional<Path> file = hlsPackagingService.resolveFile(podcastId, version, rendition, fileName);
+            if (file.isEmpty()) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+            // Chỉ file trong thư mục phiên bản là không bao giờ bị ghi lại nên cache immutable.
+            // Master và URL cũ không có phiên bản trỏ tới bản đóng gói hiện tại (đổi sau khi transcode lại)
+            // nên playlist và segment cùng cache ngắn, hết hạn thì kiểm tra lại bằng ETag
+            boolean isPlaylist = fileName.endsWith(".m3u8");
+            CacheControl cacheControl = version != null
+                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                    : CacheControl.maxAge(1, TimeUnit.MINUTES).cachePublic();
+            String contentType = isPlaylist
+                    ? "application/vnd.apple.mpegurl"
+                    : fileName.endsWith(".m4s") ? "video/iso.segment" : "video/mp4";
+
+            videoStreamService.serve(file.get(), contentType, cacheControl, request, response);
+        } catch (IOException e) {
+            logger.fine("HLS stream aborted: " + e.getMessage());
         }
     }
 
-
     public String processAndUploadThumbnail(MultipartFile originalThumbnail, Path userDir) throws IOException, InterruptedException {
         // Save original to temp file
         Path originalPath = userDir.resolve("original_thumbnail.jpeg");
@@ -69,6 +69,7 @@ public class SearchController {
         } catch (Exception e) {
             // Anonymous user - continue without userId
         }
+        searchService.recordSearch(keyword, userId);
         SearchResultModel results = searchService.search(keyword, userId);
         return ResponseEntity.ok(results);
     }
@@ -4,6 +4,7 @@ import com.castify.backend.entity.UserEntity;
 import com.castify.backend.entity.watchParty.WatchPartyMessageEntity;
 import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
 import com.castify.backend.models.PageDTO;
+import com.castify.backend.models.paginated.CursorPaginatedResponse;
 import com.castify.backend.models.watchParty.BanUserRequest;
 import com.castify.backend.models.watchParty.CreateRoomRequest;
 import com.castify.backend.models.watchParty.EditWatchPartyRoomDTO;
@@ -148,6 +149,18 @@ public class WatchPartyController {
         }
     }
 
+    @GetMapping("/{roomId}/messages/history")
+    public ResponseEntity<CursorPaginatedResponse<WatchPartyMessageEntity>> getRoomMessageHistory(
+            @PathVariable String roomId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(watchPartyService.getRoomMessagesBefore(roomId, before, size));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PostMapping("/{roomId}/kick")
     public ResponseEntity<Void> kickUser(@PathVariable String roomId,
                                          @RequestBody KickUserRequest request) {
@@ -1,9 +1,8 @@
 package com.castify.backend.controller.watchParty;
 
+import com.castify.backend.config.SimpleUserDetails;
 import com.castify.backend.entity.watchParty.PlaybackSyncEvent;
 import com.castify.backend.entity.watchParty.WatchPartyMessageEntity;
-import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
-import com.castify.backend.enums.SyncEventType;
 import com.castify.backend.models.watchParty.ChatMessageRequest;
 import com.castify.backend.service.watchParty.IWatchPartyService;
 import lombok.RequiredArgsConstructor;
@@ -27,37 +26,30 @@ public class WatchPartyWebSocketController {
     private final SimpMessagingTemplate messagingTemplate;
 
     /**
-     * Handle playback sync messages
+     * Handle playback sync messages. Service tự broadcast (đã gộp event) nên không dùng @SendTo
      */
     @MessageMapping("/room/{roomId}/sync")
-    @SendTo("/topic/room/{roomId}/sync")
-    public PlaybackSyncEvent handlePlaybackSync(@DestinationVariable String roomId,
-                                                @Payload PlaybackSyncEvent syncEvent,
-                                                SimpMessageHeaderAccessor headerAccessor) {
+    public void handlePlaybackSync(@DestinationVariable String roomId,
+                                   @Payload PlaybackSyncEvent syncEvent,
+                                   SimpMessageHeaderAccessor headerAccessor) {
         try {
-            Principal user = headerAccessor.getUser();
-            if (user != null) {
-                String userId = user.getName();
-
-                syncEvent.setUserId(userId);
-                syncEvent.setRoomId(roomId);
-
-                watchPartyService.syncPlayback(
-                        roomId,
-                        syncEvent.getPosition(),
-                        syncEvent.isPlaying(),
-                        syncEvent.getEventType(),
-                        user.getName()
-                );
-                return syncEvent;
-            } else {
+            String userId = resolveUserId(headerAccessor.getUser());
+            if (userId == null) {
                 System.err.println("No authenticated user found in WebSocket session");
-                return null;
+                return;
             }
+
+            watchPartyService.syncPlayback(
+                    roomId,
+                    syncEvent.getPosition(),
+                    syncEvent.isPlaying(),
+                    syncEvent.getPlaybackRate(),
+                    syncEvent.getEventType(),
+                    userId
+            );
         } catch (Exception e) {
             // Handle error
             System.err.println("Error handling playback sync: " + e.getMessage());
-            return null;
         }
     }
 
@@ -71,10 +63,13 @@ public class WatchPartyWebSocketController {
                                                      SimpMessageHeaderAccessor headerAccessor) {
         try {
             // Get user information from security context
-            Principal user = headerAccessor.getUser();
-            System.out.println("Processing chat message from user: " + user);
+            String userId = resolveUserId(headerAccessor.getUser());
+            if (userId == null) {
+                System.err.println("No authenticated user found in WebSocket session");
+                return null;
+            }
 
-            return watchPartyService.sendMessage(roomId, request.getMessage(), user.getName());
+            return watchPartyService.sendMessage(roomId, request.getMessage(), headerAccessor.getSessionId(), userId);
         } catch (Exception e) {
             System.err.println("Error handling chat message: " + e.getMessage());
             e.printStackTrace();
@@ -83,10 +78,13 @@ public class WatchPartyWebSocketController {
     }
 
     /**
-     * Handle sync request - when client requests current room state
+     * Handle sync request - server trả lời trực tiếp bằng trạng thái phát hiện tại (kèm serverTime),
+     * không cần chờ client của host
      */
     @MessageMapping("/room/{roomId}/sync-request")
-    public void handleSyncRequest(@DestinationVariable String roomId, SimpMessageHeaderAccessor headerAccessor) {
+    public void handleSyncRequest(@DestinationVariable String roomId,
+                                  @Payload(required = false) PlaybackSyncEvent request,
+                                  SimpMessageHeaderAccessor headerAccessor) {
         try {
             Principal user = headerAccessor.getUser();
             if (user == null) {
@@ -94,32 +92,27 @@ public class WatchPartyWebSocketController {
                 return;
             }
 
-            System.out.println("Sync requested by user: " + user.getName());
-            WatchPartyRoomEntity room = watchPartyService.getRoomDetails(roomId);
-
-            if (room == null) {
-                System.err.println("Room not found with ID: " + roomId);
-                return;
-            }
-
-            // GỬI YÊU CẦU ĐẾN HOST để lấy position hiện tại
-            PlaybackSyncEvent hostSyncRequest = new PlaybackSyncEvent();
-            hostSyncRequest.setRoomId(roomId);
-            hostSyncRequest.setEventType(SyncEventType.SYNC_REQUEST);
-            hostSyncRequest.setUserId(user.getName());
-
-            // Gửi sync request đến riêng host qua user queue
-            messagingTemplate.convertAndSendToUser(
-                    room.getHostUserId(),
-                    "/queue/sync-request",
-                    hostSyncRequest
+            PlaybackSyncEvent syncState = watchPartyService.getSyncState(
+                    roomId,
+                    request != null ? request.getClientTime() : null
             );
 
-            System.out.println("Sync request sent to host: " + room.getHostUserId());
+            // Gửi riêng cho user yêu cầu qua user queue
+            messagingTemplate.convertAndSendToUser(user.getName(), "/queue/sync", syncState);
 
         } catch (Exception e) {
             System.err.println("Error handling sync request: " + e.getMessage());
-            e.printStackTrace();
         }
     }
+
+    /**
+     * Lấy userId từ principal đã xác thực lúc CONNECT, không cần query DB
+     */
+    private String resolveUserId(Principal user) {
+        if (user instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof SimpleUserDetails userDetails) {
+            return userDetails.getUserId();
+        }
+        return null;
+    }
 }
@@ -1,5 +1,6 @@
 package com.castify.backend.entity;
 
+import com.castify.backend.models.conversation.LastMessageSnapshot;
 import com.castify.backend.models.conversation.MemberInfor;
 import com.castify.backend.repository.ChatRepository;
 import com.castify.backend.repository.MessageRepository;
@@ -29,6 +30,8 @@ public class ChatEntity {
     private boolean isActive = true;
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
     private LocalDateTime createdAt = LocalDateTime.now();
+    // Cập nhật mỗi lần gửi tin nhắn, dùng để sắp xếp hộp thư
+    private LastMessageSnapshot lastMessage;
 
     public int getMemberSize() {
         return memberList.size();
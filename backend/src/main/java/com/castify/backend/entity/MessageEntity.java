@@ -1,5 +1,6 @@
 package com.castify.backend.entity;
 
+import com.castify.backend.models.user.ShortUser;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import org.springframework.data.annotation.Id; // Sửa dòng này
 import lombok.AllArgsConstructor;
@@ -20,8 +21,10 @@ public class MessageEntity {
     @Id
     private String id;
     private String chatId;
-    @DBRef
+    // Lazy: đọc tin nhắn dùng senderInfo, không resolve user cho từng tin nhắn
+    @DBRef(lazy = true)
     private UserEntity sender;
+    private ShortUser senderInfo; // Thông tin người gửi lúc gửi tin nhắn
 
     private String content;
     private LocalDateTime timestamp = LocalDateTime.now();
@@ -27,6 +27,7 @@ public class PodcastEntity {
     private long duration;
 //    private
     private List<SolutionModel> solutionModelList = new ArrayList<>();
+    private String hlsPath; // Thư mục chứa master playlist HLS (null nếu chưa đóng gói)
 
     private List<GenreEntity> genres;
 
@@ -52,5 +53,9 @@ public class PodcastEntity {
     public long getTotalComments() {
         return comments != null ? comments.size() : 0;
     }
+
+    public String getHlsUrl() {
+        return hlsPath != null ? "/api/v1/podcast/hls/" + id + "/master.m3u8" : null;
+    }
 }
 
@@ -0,0 +1,53 @@
+package com.castify.backend.entity;
+
+import com.castify.backend.enums.TranscodeJobStatus;
+import com.castify.backend.enums.TranscodeStage;
+import com.castify.backend.models.podcast.RenditionMetric;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Document(collection = "transcodeJob")
+@CompoundIndex(name = "status_next_attempt_idx", def = "{'status': 1, 'nextAttemptAt': 1}")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TranscodeJobEntity {
+    @Id
+    private String id;
+
+    @Indexed
+    private String podcastId;
+    private String userId;
+
+    private String videoPath;      // Video gốc đã lưu trên disk
+    private String outputDir;      // Thư mục chứa các bản transcode
+    private String thumbnailDir;   // Thư mục lưu thumbnail tạm
+    private boolean captureThumbnail; // true nếu user không upload thumbnail
+
+    private TranscodeJobStatus status = TranscodeJobStatus.PENDING;
+    private TranscodeStage stage = TranscodeStage.THUMBNAIL;
+    private int progress = 0; // 0 - 100
+
+    private int attempts = 0;
+    private int maxAttempts = 3;
+    private String errorMessage;
+    private String workerId;
+
+    // Thống kê thời gian transcode của lần chạy thành công gần nhất
+    private long transcodeElapsedMs;
+    private List<RenditionMetric> renditionMetrics = new ArrayList<>();
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime updatedAt = LocalDateTime.now();
+    private LocalDateTime nextAttemptAt = LocalDateTime.now();
+    private LocalDateTime completedAt;
+}
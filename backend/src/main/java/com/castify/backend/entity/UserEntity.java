@@ -7,10 +7,12 @@ import com.castify.backend.models.user.FollowInfo;
 import jakarta.validation.constraints.NotNull;
 import org.hibernate.validator.constraints.Length;
 import org.springframework.data.annotation.Id; // Sửa dòng này
+import org.springframework.data.annotation.ReadOnlyProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.security.core.GrantedAuthority;
@@ -24,8 +26,9 @@ import java.util.Collection;
 import java.util.List;
 
 @Document(collection = "user")
+@CompoundIndex(name = "following_user_id_idx", def = "{'following.userId': 1}") // multikey, dùng cho truy vấn follower
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class UserEntity implements UserDetails {
@@ -67,6 +70,10 @@ public class UserEntity implements UserDetails {
 //    @Enumerated(EnumType.STRING)
     private Role role;
     private List<FollowInfo> following = new ArrayList<>();
+    // Số người theo dõi, chỉ cập nhật bằng $inc khi follow/unfollow (đối soát định kỳ bởi FollowerCountReconcileService).
+    // Read-only: save cả user (sửa hồ sơ, frame, thanh toán...) không ghi lại giá trị cũ đang giữ trong bộ nhớ
+    @ReadOnlyProperty
+    private long totalFollower;
     private long coin;
     @DBRef(lazy = true)
     private FrameEntity usedFrame;
@@ -13,8 +13,14 @@ import java.time.LocalDateTime;
 public class PlaybackSyncEvent {
     private String roomId;
     private String userId; // Who triggered the event
-    private long position; // Current position in seconds
+    private double position; // Position in seconds at serverTime
     private boolean isPlaying;
     private LocalDateTime timestamp = LocalDateTime.now();
     private SyncEventType eventType;
+    private long version; // Version trạng thái phát của phòng, client bỏ qua event cũ hơn
+    private double playbackRate = 1.0;
+    // Mốc giờ server (epoch millis) ứng với position,
+    // client tính: expected = position + (serverNow - serverTime) / 1000 * playbackRate nếu đang phát
+    private long serverTime;
+    private Long clientTime; // Client gửi kèm sync request, server trả lại để client đo RTT / lệch đồng hồ
 }
\ No newline at end of file
@@ -1,14 +1,23 @@
 package com.castify.backend.entity.watchParty;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Document(collection = "watchPartyRoom")
 @Data
@@ -42,6 +51,32 @@ public class WatchPartyRoomEntity {
     private List<String> bannedUserIds = new ArrayList<>();
     private boolean isActive = true;
 
+    // Tăng 1 sau mỗi lần cập nhật từng phần, cache dùng để không ghi đè bản mới bằng bản cũ.
+    // Không dùng @Version: document cũ chưa có field này sẽ bị save() coi là document mới (insert)
+    private long revision;
+
+    // Index băm cho participants / bannedUserIds, không lưu DB, dựng lại khi load
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Map<String, WatchPartyParticipant> participantIndex;
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient Set<String> bannedIndex;
+
+    public void setParticipants(List<WatchPartyParticipant> participants) {
+        this.participants = participants;
+        this.participantIndex = null;
+    }
+
+    public void setBannedUserIds(List<String> bannedUserIds) {
+        this.bannedUserIds = bannedUserIds;
+        this.bannedIndex = null;
+    }
+
     public boolean isFull() {
         return participants.size() >= maxParticipants;
     }
@@ -51,21 +86,58 @@ public class WatchPartyRoomEntity {
     }
 
     public boolean hasParticipant(String userId) {
-        return participants.stream()
-                .anyMatch(p -> p.getUserId().equals(userId));
+        return participantIndex().containsKey(userId);
+    }
+
+    public WatchPartyParticipant findParticipant(String userId) {
+        return participantIndex().get(userId);
+    }
+
+    public void addParticipant(WatchPartyParticipant participant) {
+        participants.add(participant);
+        participantIndex().put(participant.getUserId(), participant);
+    }
+
+    public WatchPartyParticipant removeParticipant(String userId) {
+        WatchPartyParticipant removed = participantIndex().remove(userId);
+        if (removed != null) {
+            participants.remove(removed);
+        }
+        return removed;
     }
 
     public boolean isBanned(String userId) {
-        return bannedUserIds.contains(userId);
+        return bannedIndex().contains(userId);
     }
 
     public void banUser(String userId) {
-        if (!bannedUserIds.contains(userId)) {
+        if (bannedIndex().add(userId)) {
             bannedUserIds.add(userId);
         }
     }
 
     public void unbanUser(String userId) {
-        bannedUserIds.remove(userId);
+        if (bannedIndex().remove(userId)) {
+            bannedUserIds.remove(userId);
+        }
+    }
+
+    private Map<String, WatchPartyParticipant> participantIndex() {
+        // Dựng lại nếu chưa có hoặc list bị sửa trực tiếp
+        if (participantIndex == null || participantIndex.size() != participants.size()) {
+            Map<String, WatchPartyParticipant> index = new HashMap<>();
+            for (WatchPartyParticipant participant : participants) {
+                index.put(participant.getUserId(), participant);
+            }
+            participantIndex = index;
+        }
+        return participantIndex;
+    }
+
+    private Set<String> bannedIndex() {
+        if (bannedIndex == null || bannedIndex.size() != bannedUserIds.size()) {
+            bannedIndex = new HashSet<>(bannedUserIds);
+        }
+        return bannedIndex;
     }
 }
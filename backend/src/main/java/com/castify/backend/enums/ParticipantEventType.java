@@ -0,0 +1,9 @@
+package com.castify.backend.enums;
+
+public enum ParticipantEventType {
+    JOINED,
+    LEFT,
+    KICKED,
+    BANNED,
+    HOST_CHANGED
+}
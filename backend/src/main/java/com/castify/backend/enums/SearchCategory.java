@@ -0,0 +1,8 @@
+package com.castify.backend.enums;
+
+public enum SearchCategory {
+    PODCAST,
+    USER,
+    PLAYLIST,
+    WATCH_PARTY_ROOM
+}
@@ -4,5 +4,7 @@ public enum SyncEventType {
     PLAY,
     PAUSE,
     SEEK,
-    SYNC_REQUEST // When user requests current position
+    SYNC_REQUEST, // When user requests current position
+    SYNC_STATE, // Server trả lời sync request
+    HEARTBEAT // Server gửi định kỳ để client tự chỉnh lệch
 }
@@ -0,0 +1,7 @@
+package com.castify.backend.enums;
+
+public enum TokenStatus {
+    ACTIVE,      // Có trong bảng token, chưa hết hạn/thu hồi
+    INVALIDATED, // Đã hết hạn hoặc bị thu hồi (logout, refresh, đăng nhập lại)
+    NOT_FOUND    // Không có trong bảng token
+}
@@ -0,0 +1,8 @@
+package com.castify.backend.enums;
+
+public enum TranscodeJobStatus {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,10 @@
+package com.castify.backend.enums;
+
+public enum TranscodeStage {
+    THUMBNAIL,
+    DURATION,
+    RENDITIONS,
+    PACKAGING,
+    TRANSCRIPTION,
+    DONE
+}
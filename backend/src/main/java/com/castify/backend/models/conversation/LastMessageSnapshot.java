@@ -0,0 +1,21 @@
+package com.castify.backend.models.conversation;
+
+import com.castify.backend.models.user.ShortUser;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bản sao tin nhắn mới nhất lưu ngay trên chat, để hộp thư không phải truy vấn bảng message.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LastMessageSnapshot {
+    private String id;
+    private ShortUser sender;
+    private String content;
+    private LocalDateTime timestamp;
+}
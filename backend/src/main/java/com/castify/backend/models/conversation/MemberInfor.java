@@ -17,6 +17,7 @@ public class MemberInfor {
     private boolean isHide; //Ẩn nhóm hay không
     private LocalDateTime joinTime = LocalDateTime.now();
     private LastReadMessage lastReadMessage;
+    private int unreadCount; // Số tin nhắn chưa đọc, tăng khi có tin nhắn mới, về 0 khi đọc
     public void setIsAccepted(boolean isAccepted){
         this.isAccepted = isAccepted;
     }
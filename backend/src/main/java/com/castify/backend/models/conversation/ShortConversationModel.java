@@ -19,6 +19,7 @@ public class ShortConversationModel {
 //    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
 //    private LocalDateTime lastMessageTimestamp; // Thời gian tin nhắn mới nhất
     private MessageResponse lastMessage;
+    private int unreadCount;
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
     private LocalDateTime createdAt = LocalDateTime.now();
 }
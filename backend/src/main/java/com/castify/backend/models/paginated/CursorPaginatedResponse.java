@@ -0,0 +1,16 @@
+package com.castify.backend.models.paginated;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPaginatedResponse<T> {
+    private List<T> data;
+    private String nextCursor; // Truyền lại vào "before" để lấy trang cũ hơn
+    private boolean hasMore;
+}
@@ -0,0 +1,14 @@
+package com.castify.backend.models.podcast;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Kết quả aggregation đếm theo podcast
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PodcastCountModel {
+    private String podcastId;
+    private long count;
+}
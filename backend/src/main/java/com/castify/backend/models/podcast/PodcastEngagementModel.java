@@ -0,0 +1,14 @@
+package com.castify.backend.models.podcast;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PodcastEngagementModel {
+    private long totalLikes;
+    private long totalComments;
+    private boolean liked; // User hiện tại đã thích podcast hay chưa
+}
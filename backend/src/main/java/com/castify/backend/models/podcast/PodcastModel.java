@@ -39,6 +39,7 @@ public class PodcastModel {
 
     private UserSimple user;
     private List<SolutionModel> solutionModelList;
+    private String hlsUrl;
 
 
 }
@@ -0,0 +1,15 @@
+package com.castify.backend.models.podcast;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RenditionMetric {
+    private long solution;
+    private String url;
+    private long elapsedMs;  // Thời gian encode (wall time của pass tạo ra bản này)
+    private long sizeBytes;
+}
@@ -0,0 +1,31 @@
+package com.castify.backend.models.podcast;
+
+import com.castify.backend.enums.TranscodeJobStatus;
+import com.castify.backend.enums.TranscodeStage;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TranscodeJobModel {
+    private String jobId;
+    private String podcastId;
+    private TranscodeJobStatus status;
+    private TranscodeStage stage;
+    private int progress;
+    private int attempts;
+    private String errorMessage;
+    private long transcodeElapsedMs;
+    private List<RenditionMetric> renditionMetrics;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
+    private LocalDateTime createdAt;
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,17 @@
+package com.castify.backend.models.podcast;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TranscodeResult {
+    private int sourceHeight;
+    private long totalElapsedMs;
+    private List<RenditionMetric> renditions = new ArrayList<>();
+}
@@ -0,0 +1,17 @@
+package com.castify.backend.models.search;
+
+import com.castify.backend.enums.SearchCategory;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Báo cho các node khác biết 1 tài liệu đã thay đổi, node nhận sẽ đọc lại từ Mongo để cập nhật index.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchIndexChange {
+    private SearchCategory category;
+    private String id;
+}
@@ -8,7 +8,10 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @AllArgsConstructor
@@ -20,4 +23,9 @@ public class SearchResultModel {
     private List<PlaylistModel> playlists;
     private List<WatchPartyRoomModel> watchPartyRooms;
     private long searchDuration;
+    // Thời gian (ms) của từng nhóm: podcasts, users, playlists, watchPartyRooms
+    private Map<String, Long> categoryDurations = new HashMap<>();
+    // Nhóm bị quá thời gian hoặc lỗi, kết quả của nhóm đó để trống
+    private List<String> timedOutCategories = new ArrayList<>();
+    private boolean partial;
 }
\ No newline at end of file
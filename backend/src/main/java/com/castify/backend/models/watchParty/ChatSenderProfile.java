@@ -0,0 +1,18 @@
+package com.castify.backend.models.watchParty;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Thông tin hiển thị của người gửi chat, cache theo session WebSocket.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChatSenderProfile {
+    private String userId;
+    private String username;
+    private String avatarUrl;
+    private String userFrameUrl;
+}
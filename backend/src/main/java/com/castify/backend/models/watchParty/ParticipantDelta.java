@@ -0,0 +1,25 @@
+package com.castify.backend.models.watchParty;
+
+import com.castify.backend.entity.watchParty.WatchPartyParticipant;
+import com.castify.backend.enums.ParticipantEventType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Thay đổi về người tham gia, gửi thay cho cả document phòng.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ParticipantDelta {
+    private String roomId;
+    private ParticipantEventType type;
+    private String userId;
+    private WatchPartyParticipant participant; // Chỉ có với JOINED
+    private String hostUserId;
+    private int participantCount;
+    private LocalDateTime timestamp = LocalDateTime.now();
+}
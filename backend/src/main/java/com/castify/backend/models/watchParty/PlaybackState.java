@@ -0,0 +1,36 @@
+package com.castify.backend.models.watchParty;
+
+import com.castify.backend.enums.SyncEventType;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Trạng thái phát của 1 phòng watch party, giữ trong bộ nhớ.
+ * Mọi thao tác đọc/ghi phải synchronized trên chính object này.
+ */
+@Data
+@NoArgsConstructor
+public class PlaybackState {
+    private String roomId;
+    private double position; // Vị trí phát (giây) tại thời điểm updatedAt
+    private boolean playing;
+    private double playbackRate = 1.0;
+    private long version; // Tăng mỗi lần thay đổi
+    private long updatedAt; // Epoch millis
+    private String updatedBy;
+    private SyncEventType lastEventType;
+
+    private boolean owner; // Node này nhận event gần nhất: gửi heartbeat và ghi Mongo
+    private boolean dirty; // Chưa ghi xuống Mongo
+    private boolean broadcastPending; // Đang chờ gửi SEEK đã gộp
+
+    /**
+     * Vị trí dự kiến tại thời điểm now (epoch millis), suy ra từ mốc position + updatedAt.
+     */
+    public double expectedPosition(long now) {
+        if (!playing) {
+            return position;
+        }
+        return position + Math.max(0, now - updatedAt) / 1000.0 * playbackRate;
+    }
+}
@@ -0,0 +1,16 @@
+package com.castify.backend.models.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Event nội bộ giữa các node (ví dụ đồng bộ trạng thái phòng), payload là JSON.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ClusterEvent {
+    private String nodeId;
+    private String payload;
+}
@@ -0,0 +1,18 @@
+package com.castify.backend.models.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 1 message STOMP đã serialize, chuyển tiếp giữa các node qua Redis pub/sub.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RelayedBrokerMessage {
+    private String nodeId; // Node gửi, để bỏ qua message của chính mình
+    private String destination;
+    private String contentType;
+    private byte[] payload;
+}
@@ -1,6 +1,8 @@
 package com.castify.backend.repository;
 
 import com.castify.backend.entity.CommentEntity;
+import com.castify.backend.models.podcast.PodcastCountModel;
+import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.Aggregation;
@@ -27,6 +29,14 @@ public interface CommentRepository  extends MongoRepository<CommentEntity, Strin
 //    Page<CommentEntity> findByPodcastId(String podcastId, Pageable pageable);
     List<CommentEntity> findByPodcastId(String podcastId);
     long countByPodcastId(String podcastId);
+
+    // Đếm bình luận cho nhiều podcast trong 1 lần truy vấn ($id của DBRef lấy qua $objectToArray)
+    @Aggregation(pipeline = {
+            "{ $match: { 'podcast.$id': { $in: ?0 } } }",
+            "{ $group: { _id: { $arrayElemAt: [ { $objectToArray: '$podcast' }, 1 ] }, count: { $sum: 1 } } }",
+            "{ $project: { _id: 0, podcastId: { $toString: '$_id.v' }, count: 1 } }"
+    })
+    List<PodcastCountModel> countGroupByPodcastIds(List<ObjectId> podcastIds);
     Page<CommentEntity> findByPodcastIdAndParentIdIsNull(String podcastId, Pageable pageable);
     List<CommentEntity> findAllByParentId(String parentId);
 }
@@ -1,8 +1,11 @@
 package com.castify.backend.repository;
 
 import com.castify.backend.entity.PodcastLikeEntity;
+import com.castify.backend.models.podcast.PodcastCountModel;
+import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -15,5 +18,21 @@ public interface PodcastLikeRepository  extends MongoRepository<PodcastLikeEntit
     Optional<PodcastLikeEntity> findByUserEntityIdAndPodcastEntityId(String userId, String podcastId);
 //    List<PodcastLikeEntity> findByPodcastId(String podcastId);
     long countByPodcastEntityId(String podcastId);
+
+    // Đếm lượt thích cho nhiều podcast trong 1 lần truy vấn
+    @Aggregation(pipeline = {
+            "{ $match: { 'podcastEntity.$id': { $in: ?0 } } }",
+            "{ $group: { _id: { $arrayElemAt: [ { $objectToArray: '$podcastEntity' }, 1 ] }, count: { $sum: 1 } } }",
+            "{ $project: { _id: 0, podcastId: { $toString: '$_id.v' }, count: 1 } }"
+    })
+    List<PodcastCountModel> countGroupByPodcastIds(List<ObjectId> podcastIds);
+
+    // Những podcast trong danh sách mà user đã thích
+    @Aggregation(pipeline = {
+            "{ $match: { 'userEntity.$id': ?0, 'podcastEntity.$id': { $in: ?1 } } }",
+            "{ $group: { _id: { $arrayElemAt: [ { $objectToArray: '$podcastEntity' }, 1 ] }, count: { $sum: 1 } } }",
+            "{ $project: { _id: 0, podcastId: { $toString: '$_id.v' }, count: 1 } }"
+    })
+    List<PodcastCountModel> findLikedPodcastIds(ObjectId userId, List<ObjectId> podcastIds);
     Page<PodcastLikeEntity> findByUserEntityIdOrderByTimestampDesc(String userId, Pageable pageable);
 }
@@ -0,0 +1,16 @@
+package com.castify.backend.repository;
+
+import com.castify.backend.entity.TranscodeJobEntity;
+import com.castify.backend.enums.TranscodeJobStatus;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TranscodeJobRepository extends MongoRepository<TranscodeJobEntity, String> {
+    Optional<TranscodeJobEntity> findTopByPodcastIdOrderByCreatedAtDesc(String podcastId);
+    List<TranscodeJobEntity> findByStatusAndUpdatedAtBefore(TranscodeJobStatus status, LocalDateTime cutoff);
+}
@@ -9,5 +9,5 @@ import java.util.List;
 @Repository
 public interface TranscriptRepository extends MongoRepository<TranscriptEntity, String> {
     List<TranscriptEntity> findByPodcastId(String podcastId);
+    void deleteByPodcastId(String podcastId);
 }
-
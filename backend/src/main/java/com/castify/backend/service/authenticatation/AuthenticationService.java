@@ -33,6 +33,7 @@ import java.util.Optional;
 
 import com.castify.backend.repository.UserRepository;
 import com.castify.backend.repository.TokenRepository;
+import com.castify.backend.service.authenticatation.jwt.TokenStatusCache;
 
 @Service
 @RequiredArgsConstructor
@@ -49,6 +50,8 @@ public class AuthenticationService implements IAuthenticationService {
     @Autowired
     private TokenRepository tokenRepository;
     @Autowired
+    private TokenStatusCache tokenStatusCache;
+    @Autowired
     private PasswordEncoder passwordEncoder;
     @Autowired
     private UserRepository repository;
@@ -92,6 +95,7 @@ public class AuthenticationService implements IAuthenticationService {
             token.setRevoked(true);
         });
         tokenRepository.saveAll(validUserTokens);
+        validUserTokens.forEach(token -> tokenStatusCache.invalidate(token.getToken()));
     }
     @Override
     public void saveUserToken(UserEntity userEntity, String jwtToken, TokenType type) {
@@ -102,6 +106,7 @@ public class AuthenticationService implements IAuthenticationService {
         TokenEntity token = TokenEntity.builder().userId(userEntity.getId()).token(jwtToken).tokenType(type).expired(false).revoked(false).build();
 
         tokenRepository.save(token);
+        tokenStatusCache.markActive(jwtToken);
     }
     private void checkRegisterValid(RegisterRequest request) throws Exception{
         if(!request.getEmail().equals(request.getRepeatEmail()))
@@ -207,6 +212,7 @@ public class AuthenticationService implements IAuthenticationService {
         token.setExpired(true);
         token.setRevoked(true);
         tokenRepository.save(token);
+        tokenStatusCache.invalidate(validToken);
 //        revokeAllUserTokens(user);
         var accessToken = jwtService.generateToken(user);
         String refreshToken = jwtService.generateRefreshToken(user);
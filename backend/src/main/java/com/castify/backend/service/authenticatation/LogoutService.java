@@ -1,6 +1,7 @@
 package com.castify.backend.service.authenticatation;
 
 import com.castify.backend.repository.TokenRepository;
+import com.castify.backend.service.authenticatation.jwt.TokenStatusCache;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
@@ -14,6 +15,7 @@ import org.springframework.stereotype.Service;
 public class LogoutService implements LogoutHandler {
 
     private final TokenRepository tokenRepository;
+    private final TokenStatusCache tokenStatusCache;
 
     @Override
     public void logout(
@@ -33,6 +35,7 @@ public class LogoutService implements LogoutHandler {
             storedToken.setExpired(true);
             storedToken.setRevoked(true);
             tokenRepository.save(storedToken);
+            tokenStatusCache.invalidate(jwt);
             SecurityContextHolder.clearContext();
         }
     }
@@ -0,0 +1,126 @@
+package com.castify.backend.service.authenticatation;
+
+import com.castify.backend.entity.UserEntity;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache user đã xác thực theo subject của JWT, để filter không phải đọc user mỗi request.
+ * Mỗi lần lấy trả về bản sao, request không dùng chung 1 object có thể bị sửa.
+ * Xoá khi user được lưu/xoá (ban, đổi role, sửa hồ sơ...) hoặc khi service gọi invalidate sau các update trực tiếp;
+ * chạy nhiều node thì báo các node khác xoá qua relay. TTL ngắn cho các thay đổi còn lại.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PrincipalCache {
+    private static final String INVALIDATE_CHANNEL = "principal_invalidated";
+    private static final int MAX_CACHED_PRINCIPALS = 10_000;
+
+    private final UserDetailsService userDetailsService;
+    private final IBrokerRelayService brokerRelayService;
+
+    @Value("${application.security.principal-cache-ttl-ms:60000}")
+    private long ttlMs;
+
+    private final Map<String, CachedPrincipal> principalsBySubject = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribeInvalidations() {
+        brokerRelayService.subscribe(INVALIDATE_CHANNEL, String[].class, userIds -> {
+            for (String userId : userIds) {
+                evictUser(userId);
+            }
+        });
+    }
+
+    /**
+     * Ném UsernameNotFoundException như userDetailsService nếu user không tồn tại.
+     */
+    public UserDetails load(String subject) {
+        long now = System.currentTimeMillis();
+        CachedPrincipal cached = principalsBySubject.get(subject);
+        if (cached != null && cached.expiresAt() > now) {
+            return copyOf(cached.user());
+        }
+
+        UserDetails user = userDetailsService.loadUserByUsername(subject);
+        if (principalsBySubject.size() >= MAX_CACHED_PRINCIPALS) {
+            principalsBySubject.clear(); // Giới hạn bộ nhớ, user đang hoạt động sẽ được nạp lại
+        }
+        principalsBySubject.put(subject, new CachedPrincipal(user, now + ttlMs));
+        return copyOf(user);
+    }
+
+    /**
+     * Gọi sau khi update trực tiếp user bằng MongoTemplate (không phát AfterSaveEvent).
+     */
+    public void invalidate(String userId) {
+        invalidateAll(List.of(userId));
+    }
+
+    public void invalidateAll(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        userIds.forEach(this::evictUser);
+        brokerRelayService.publish(INVALIDATE_CHANNEL, userIds.toArray(new String[0]));
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        if (event.getSource() instanceof UserEntity user && user.getId() != null) {
+            invalidate(user.getId());
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        Object id = event.getSource().get("_id");
+        if (event.getType() != null && UserEntity.class.isAssignableFrom(event.getType())
+                && (id instanceof ObjectId || id instanceof String)) {
+            invalidate(id.toString());
+        }
+    }
+
+    private void evictUser(String userId) {
+        // Cùng 1 user có thể được cache theo cả email và username
+        principalsBySubject.values().removeIf(cached ->
+                cached.user() instanceof UserEntity user && userId.equals(user.getId()));
+    }
+
+    /**
+     * Mỗi request nhận 1 bản sao riêng: service có thể sửa principal (setX rồi save),
+     * không được làm thay đổi bản đang cache dùng chung cho các request khác.
+     */
+    private static UserDetails copyOf(UserDetails principal) {
+        if (!(principal instanceof UserEntity user)) {
+            return principal;
+        }
+        return user.toBuilder()
+                .following(user.getFollowing() != null ? new ArrayList<>(user.getFollowing()) : null)
+                .badgesId(user.getBadgesId() != null ? new ArrayList<>(user.getBadgesId()) : null)
+                .favoriteGenreIds(user.getFavoriteGenreIds() != null ? new ArrayList<>(user.getFavoriteGenreIds()) : null)
+                .suggestedGenreIds(user.getSuggestedGenreIds() != null ? new ArrayList<>(user.getSuggestedGenreIds()) : null)
+                .build();
+    }
+
+    private record CachedPrincipal(UserDetails user, long expiresAt) {
+    }
+}
@@ -1,5 +1,6 @@
 package com.castify.backend.service.authenticatation.jwt;
 
+import io.jsonwebtoken.Claims;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Map;
@@ -7,6 +8,9 @@ import java.util.Map;
 public interface IJwtService {
     String extractUsername(String token);
 
+    // Parse và kiểm tra chữ ký 1 lần, ném JwtException nếu token sai/hết hạn
+    Claims parseToken(String token);
+
 
 
     String generateToken(UserDetails userDetails);
@@ -29,5 +33,6 @@ public interface IJwtService {
     );
 
     boolean isTokenValid(String token, UserDetails userDetails);
+    boolean isTokenValid(Claims claims, UserDetails userDetails);
     boolean isTokenValid(String token);
 }
@@ -1,8 +1,8 @@
 package com.castify.backend.service.authenticatation.jwt;
 
-import com.castify.backend.entity.TokenEntity;
-import com.castify.backend.repository.TokenRepository;
+import com.castify.backend.enums.TokenStatus;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
@@ -11,7 +11,6 @@ import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,13 +31,22 @@ public class JwtServiceImpl implements IJwtService{
     private long validExpiration = 86400000;
 
     @Autowired
-    private TokenRepository tokenRepository;
+    private TokenStatusCache tokenStatusCache;
+
+    // Key và parser dựng 1 lần (lazy để secret sai chỉ lỗi khi dùng, như trước)
+    private volatile Key signInKey;
+    private volatile JwtParser jwtParser;
 
     @Override
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
 
+    @Override
+    public Claims parseToken(String token) {
+        return extractAllClaims(token);
+    }
+
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
         final Claims claims = extractAllClaims(token);
         return claimsResolver.apply(claims);
@@ -109,43 +117,53 @@ public class JwtServiceImpl implements IJwtService{
     }
     @Override
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        return isTokenValid(extractAllClaims(token), userDetails);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    @Override
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject().equals(userDetails.getUsername()) && !isTokenExpired(claims);
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parser()
-                .setSigningKey(getSignInKey())
-                .build()
+        return getJwtParser()
                 .parseClaimsJws(token)
                 .getBody();
     }
 
+    private JwtParser getJwtParser() {
+        JwtParser parser = jwtParser;
+        if (parser == null) {
+            parser = Jwts
+                    .parser()
+                    .setSigningKey(getSignInKey())
+                    .build();
+            jwtParser = parser;
+        }
+        return parser;
+    }
+
     private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        Key key = signInKey;
+        if (key == null) {
+            byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+            key = Keys.hmacShaKeyFor(keyBytes);
+            signInKey = key;
+        }
+        return key;
     }
 
     public boolean isTokenValid(String token) {
         try {
-            extractAllClaims(token);
-            return !isTokenExpired(token) && !isTokenExpiredFromDB(token);
+            Claims claims = extractAllClaims(token);
+            // Token không có trong bảng vẫn hợp lệ, chỉ từ chối token đã bị vô hiệu
+            return !isTokenExpired(claims) && tokenStatusCache.getStatus(token) != TokenStatus.INVALIDATED;
         } catch (Exception e) {
             return false;
         }
     }
-
-    private boolean isTokenExpiredFromDB(String token) {
-        Optional<TokenEntity> storedToken = tokenRepository.findByToken(token);
-        return storedToken.isPresent() && storedToken.get().isExpired();
-    }
 }
@@ -0,0 +1,99 @@
+package com.castify.backend.service.authenticatation.jwt;
+
+import com.castify.backend.entity.TokenEntity;
+import com.castify.backend.enums.TokenStatus;
+import com.castify.backend.repository.TokenRepository;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache trạng thái token trong bảng token, để filter JWT không phải findByToken mỗi request.
+ * Token bị thu hồi (logout, refresh, đăng nhập lại) thì xoá khỏi cache ngay và báo các node khác qua relay;
+ * TTL ngắn là lưới an toàn khi trạng thái bị đổi ở chỗ khác.
+ * Key là SHA-256 của token, không giữ/gửi token gốc.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TokenStatusCache {
+    private static final String INVALIDATE_CHANNEL = "token_status_invalidated";
+    private static final int MAX_CACHED_TOKENS = 100_000;
+
+    private final TokenRepository tokenRepository;
+    private final IBrokerRelayService brokerRelayService;
+
+    @Value("${application.security.jwt.token-status-ttl-ms:300000}")
+    private long ttlMs;
+
+    private final Map<String, CachedStatus> statusByToken = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribeInvalidations() {
+        brokerRelayService.subscribe(INVALIDATE_CHANNEL, String.class, statusByToken::remove);
+    }
+
+    public TokenStatus getStatus(String token) {
+        String key = keyOf(token);
+        long now = System.currentTimeMillis();
+        CachedStatus cached = statusByToken.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.status();
+        }
+
+        TokenStatus status = tokenRepository.findByToken(token)
+                .map(TokenStatusCache::statusOf)
+                .orElse(TokenStatus.NOT_FOUND);
+        put(key, status, now);
+        return status;
+    }
+
+    /**
+     * Gọi sau khi lưu token mới, request đầu tiên dùng token không cần đọc DB.
+     */
+    public void markActive(String token) {
+        put(keyOf(token), TokenStatus.ACTIVE, System.currentTimeMillis());
+    }
+
+    /**
+     * Gọi sau khi đã ghi expired/revoked xuống DB.
+     */
+    public void invalidate(String token) {
+        String key = keyOf(token);
+        statusByToken.put(key, new CachedStatus(TokenStatus.INVALIDATED, System.currentTimeMillis() + ttlMs));
+        brokerRelayService.publish(INVALIDATE_CHANNEL, key);
+    }
+
+    private void put(String key, TokenStatus status, long now) {
+        if (statusByToken.size() >= MAX_CACHED_TOKENS) {
+            statusByToken.clear(); // Giới hạn bộ nhớ, token đang dùng sẽ được nạp lại
+        }
+        statusByToken.put(key, new CachedStatus(status, now + ttlMs));
+    }
+
+    private static TokenStatus statusOf(TokenEntity token) {
+        return token.isExpired() || token.isRevoked() ? TokenStatus.INVALIDATED : TokenStatus.ACTIVE;
+    }
+
+    private static String keyOf(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record CachedStatus(TokenStatus status, long expiresAt) {
+    }
+}
@@ -10,6 +10,7 @@ import com.castify.backend.repository.*;
 import com.castify.backend.service.blacklist.IBlacklistService;
 import com.castify.backend.service.notification.INotificationService;
 import com.castify.backend.service.notification.NotificationServiceImpl;
+import com.castify.backend.service.podcast.TrendingPodcastService;
 import com.castify.backend.service.user.IUserService;
 import com.castify.backend.utils.SecurityUtils;
 import org.modelmapper.ModelMapper;
@@ -48,6 +49,8 @@ public class CommentServiceImpl implements ICommentService {
     private INotificationService notificationService;
     @Autowired
     private IBlacklistService blacklistService;
+    @Autowired
+    private TrendingPodcastService trendingPodcastService;
     @Override
     public CommentModel addComment(CommentRequestDTO commentRequestDTO) {
         try {
@@ -112,6 +115,7 @@ public class CommentServiceImpl implements ICommentService {
             }
             podcast.getComments().add(savedComment);
             podcastRepository.save(podcast);
+            trendingPodcastService.recordComment(podcast.getId());
 
             // Gửi thông báo đến chủ podcast nếu có
             if (podcast.getUser() != null) {
@@ -0,0 +1,126 @@
+package com.castify.backend.service.conversation;
+
+import com.castify.backend.entity.ChatEntity;
+import com.castify.backend.entity.MessageEntity;
+import com.castify.backend.models.conversation.LastMessageSnapshot;
+import com.castify.backend.models.conversation.MemberInfor;
+import com.castify.backend.models.user.ShortUser;
+import com.castify.backend.repository.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.modelmapper.ModelMapper;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Điền lastMessage và bộ đếm chưa đọc cho các chat tạo trước khi hộp thư được denormalize.
+ * Chỉ xử lý chat chưa có lastMessage, các lần khởi động sau gần như không tốn gì.
+ * Đồng thời tạo index cho hộp thư và lịch sử tin nhắn.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ChatInboxBackfillService {
+    private static final int BATCH_SIZE = 200;
+
+    private final MongoTemplate mongoTemplate;
+    private final MessageRepository messageRepository;
+    private final ModelMapper modelMapper;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onStartup() {
+        // Index cho truy vấn hộp thư (auto-index-creation đang tắt)
+        mongoTemplate.indexOps(ChatEntity.class).ensureIndex(new Index()
+                .on("memberList.memberId", Sort.Direction.ASC)
+                .on("lastMessage.timestamp", Sort.Direction.DESC)
+                .on("createdAt", Sort.Direction.DESC)
+                .named("member_inbox_idx"));
+        // Index cho phân trang tin nhắn theo cursor (timestamp, _id)
+        mongoTemplate.indexOps(MessageEntity.class).ensureIndex(new Index()
+                .on("chatId", Sort.Direction.ASC)
+                .on("timestamp", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("chat_timestamp_id_idx"));
+        backfill();
+    }
+
+    public void backfill() {
+        try {
+            Query query = new Query(Criteria.where("lastMessage").exists(false));
+
+            BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatEntity.class);
+            int pending = 0;
+            int filled = 0;
+            try (Stream<ChatEntity> stream = mongoTemplate.stream(query, ChatEntity.class)) {
+                Iterator<ChatEntity> chats = stream.iterator();
+                while (chats.hasNext()) {
+                    ChatEntity chat = chats.next();
+                    MessageEntity lastMessage = messageRepository.findTopByChatIdOrderByTimestampDesc(chat.getId());
+                    if (lastMessage == null) {
+                        continue; // Chat chưa có tin nhắn, không cần điền
+                    }
+
+                    Update update = new Update().set("lastMessage", new LastMessageSnapshot(
+                            lastMessage.getId(),
+                            senderOf(lastMessage),
+                            lastMessage.getContent(),
+                            lastMessage.getTimestamp()
+                    ));
+                    List<MemberInfor> members = chat.getMemberList();
+                    for (int i = 0; i < members.size(); i++) {
+                        update.set("memberList." + i + ".unreadCount", countUnread(chat.getId(), members.get(i)));
+                    }
+
+                    bulkOps.updateOne(new Query(Criteria.where("_id").is(chat.getId())
+                            .and("lastMessage").exists(false)), update);
+                    pending++;
+                    filled++;
+                    if (pending == BATCH_SIZE) {
+                        bulkOps.execute();
+                        bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatEntity.class);
+                        pending = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                bulkOps.execute();
+            }
+
+            if (filled > 0) {
+                log.info("Backfilled inbox data for {} chats", filled);
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling chat inbox data", e);
+        }
+    }
+
+    private ShortUser senderOf(MessageEntity message) {
+        if (message.getSenderInfo() != null) {
+            return message.getSenderInfo();
+        }
+        return message.getSender() != null ? modelMapper.map(message.getSender(), ShortUser.class) : null;
+    }
+
+    private int countUnread(String chatId, MemberInfor member) {
+        if (member.getLastReadMessage() == null || member.getLastReadMessage().getLastReadTime() == null) {
+            return (int) mongoTemplate.count(new Query(Criteria.where("chatId").is(chatId)), MessageEntity.class);
+        }
+        return messageRepository.countUnreadMessages(chatId, member.getLastReadMessage().getLastReadTime())
+                .orElse(0L)
+                .intValue();
+    }
+}
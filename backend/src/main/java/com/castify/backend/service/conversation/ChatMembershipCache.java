@@ -0,0 +1,79 @@
+package com.castify.backend.service.conversation;
+
+import com.castify.backend.entity.ChatEntity;
+import com.castify.backend.models.conversation.MemberInfor;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Cache danh sách id thành viên của từng chat, để kiểm tra quyền gửi tin nhắn chỉ là 1 lần tra Set.
+ * Xoá khi thêm/xoá thành viên; chạy nhiều node thì báo các node khác xoá qua relay.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatMembershipCache {
+    private static final String INVALIDATE_CHANNEL = "chat_membership_invalidated";
+    private static final int MAX_CACHED_CHATS = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final IBrokerRelayService brokerRelayService;
+
+    private final Map<String, Set<String>> membersByChat = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribeInvalidations() {
+        brokerRelayService.subscribe(INVALIDATE_CHANNEL, String.class, membersByChat::remove);
+    }
+
+    /**
+     * Id thành viên của chat, null nếu chat không tồn tại.
+     */
+    public Set<String> getMemberIds(String chatId) {
+        Set<String> cached = membersByChat.get(chatId);
+        if (cached != null) {
+            return cached;
+        }
+        if (membersByChat.size() >= MAX_CACHED_CHATS) {
+            membersByChat.clear(); // Giới hạn bộ nhớ, các chat đang hoạt động sẽ được nạp lại
+        }
+        // computeIfAbsent khoá theo key: invalidate chạy song song sẽ đợi và xoá sau khi nạp xong
+        return membersByChat.computeIfAbsent(chatId, this::loadMemberIds);
+    }
+
+    public boolean isMember(String chatId, String userId) {
+        Set<String> memberIds = getMemberIds(chatId);
+        return memberIds != null && memberIds.contains(userId);
+    }
+
+    /**
+     * Gọi sau khi đã ghi thay đổi thành viên xuống DB.
+     */
+    public void invalidate(String chatId) {
+        membersByChat.remove(chatId);
+        brokerRelayService.publish(INVALIDATE_CHANNEL, chatId);
+    }
+
+    private Set<String> loadMemberIds(String chatId) {
+        Query query = new Query(Criteria.where("_id").is(chatId));
+        query.fields().include("memberList.memberId");
+        ChatEntity chat = mongoTemplate.findOne(query, ChatEntity.class);
+        if (chat == null) {
+            return null; // Không cache chat không tồn tại
+        }
+        return chat.getMemberList().stream()
+                .map(MemberInfor::getMemberId)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
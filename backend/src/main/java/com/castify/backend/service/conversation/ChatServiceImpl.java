@@ -6,22 +6,32 @@ import com.castify.backend.entity.UserEntity;
 import com.castify.backend.enums.MemberRole;
 import com.castify.backend.enums.NotiType;
 import com.castify.backend.models.conversation.*;
+import com.castify.backend.models.frame.UserFrameModel;
+import com.castify.backend.models.paginated.CursorPaginatedResponse;
 import com.castify.backend.models.paginated.PaginatedResponse;
 import com.castify.backend.models.user.ShortUser;
 import com.castify.backend.repository.ChatRepository;
+import com.castify.backend.repository.FrameRepository;
 import com.castify.backend.repository.MessageRepository;
-import com.castify.backend.repository.UserRepository;
 import com.castify.backend.service.blacklist.IBlacklistService;
 import com.castify.backend.service.notification.INotificationService;
 import com.castify.backend.service.uploadFile.IUploadFileService;
 import com.castify.backend.service.user.IUserService;
 import com.castify.backend.service.user.UserServiceImpl;
+import com.castify.backend.utils.MessageCursorUtil;
+import org.bson.Document;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -29,7 +39,11 @@ import org.springframework.web.multipart.MultipartFile;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -45,8 +59,6 @@ public class ChatServiceImpl implements IChatService {
 //    private ChatCustomRepository chatCustomRepository;
     @Autowired
     private IUserService userService = new UserServiceImpl();
-    @Autowired
-    private UserRepository userRepository;
     private static final Logger logger = Logger.getLogger(ChatServiceImpl.class.getName());
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
@@ -56,6 +68,12 @@ public class ChatServiceImpl implements IChatService {
     private INotificationService notificationService;
     @Autowired
     private IBlacklistService blacklistService;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private ChatMembershipCache chatMembershipCache;
+    @Autowired
+    private FrameRepository frameRepository;
     @Override
     public ShortConversationModel createConversation(CreateChatRequest request) throws Exception {
         ChatEntity chatEntity = modelMapper.map(request, ChatEntity.class);
@@ -82,9 +100,12 @@ public class ChatServiceImpl implements IChatService {
 
     @Override
     public List<FullMemberInfor> addMemberToGroup(String groupId, List<String> memberIds) throws Exception {
-        ChatEntity chat = chatRepository.findChatEntityById(groupId);
-        for (MemberInfor member : chat.getMemberList()) {
-            if(memberIds.contains(member.getMemberId()))
+        Set<String> existingMemberIds = chatMembershipCache.getMemberIds(groupId);
+        if (existingMemberIds == null) {
+            throw new IllegalArgumentException("Group with ID " + groupId + " not found.");
+        }
+        for (String memberId : memberIds) {
+            if (existingMemberIds.contains(memberId))
                 throw new Exception("This member joined group, please try again!");
         }
         // Tạo danh sách MemberInfor từ memberIds
@@ -99,36 +120,15 @@ public class ChatServiceImpl implements IChatService {
                 })
                 .toList();
 
-        // Lấy ChatEntity từ repository
-        ChatEntity chatEntity = chatRepository.findChatEntityById(groupId);
-        if (chatEntity == null) {
-            throw new IllegalArgumentException("Group with ID " + groupId + " not found.");
-        }
-
-        // Thêm thành viên mới vào danh sách hiện có
-        List<MemberInfor> existingMembers = chatEntity.getMemberList();
-        existingMembers.addAll(memberList);
-        chatEntity.setMemberList(existingMembers);
-
-        // Lưu lại vào database
-        chatRepository.save(chatEntity);
-        List<FullMemberInfor> newMemberAdded = new ArrayList<>();
-
-        for (MemberInfor member : memberList) {
-            // Lấy thông tin người dùng
-            UserEntity user = userRepository.findById(member.getMemberId())
-                    .orElseThrow(() -> new IllegalArgumentException("User not found"));
-
-            // Map ShortUser từ UserEntity
-            ShortUser shortUser = modelMapper.map(user, ShortUser.class);
-
-            // Map FullMemberInfor từ MemberInfor
-            FullMemberInfor fullMember = modelMapper.map(member, FullMemberInfor.class);
-            fullMember.setMembers(shortUser);
+        // Thêm thành viên mới vào danh sách hiện có ($push để không ghi đè tin nhắn mới nhất/bộ đếm chưa đọc)
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(groupId)),
+                new Update().push("memberList").each(memberList.toArray()),
+                ChatEntity.class
+        );
+        chatMembershipCache.invalidate(groupId);
 
-            newMemberAdded.add(fullMember);
-        }
-        return newMemberAdded;
+        return toFullMembers(memberList);
     }
     @Override
     public void deleteUser(String groupId, String userId) throws Exception {
@@ -140,10 +140,12 @@ public class ChatServiceImpl implements IChatService {
                 .orElse(null);
         assert memberInfor != null;
         if(memberInfor.getRole().equals(MemberRole.LEADER) || memberInfor.getRole().equals(MemberRole.DEPUTY)) {
-            List<MemberInfor> memberList = chat.getMemberList();
-            memberList.removeIf(member -> member.getMemberId().equals(userId));
-            chat.setMemberList(memberList);
-            chatRepository.save(chat);
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(groupId)),
+                    new Update().pull("memberList", new Document("memberId", userId)),
+                    ChatEntity.class
+            );
+            chatMembershipCache.invalidate(groupId);
         } else {
             throw new Exception("You don't have permission!");
         }
@@ -157,67 +159,67 @@ public class ChatServiceImpl implements IChatService {
     public PaginatedResponse<ShortConversationModel> getConversationByUser(int pageNumber, int pageSize) throws Exception {
         UserEntity user = userService.getUserByAuthentication();
 
-        // Lấy toàn bộ danh sách conversations theo user ID
-        List<ChatEntity> conversations = chatRepository.findAllByMemberIdOrderByLastMessage(user.getId());
-        // Ánh xạ từ ChatEntity sang ShortConversationModel và gắn thêm lastMessageTimestamp
-        List<ShortConversationModel> conversationModels = new java.util.ArrayList<>(conversations.stream().map(chat -> {
-            ShortConversationModel model = modelMapper.map(chat, ShortConversationModel.class);
-
-            // Lấy lastMessage cho mỗi conversation
-            MessageEntity lastMessage = messageRepository.findTopByChatIdOrderByTimestampDesc(chat.getId());
-            if (lastMessage != null) {
-                MessageResponse messageResponse = modelMapper.map(lastMessage, MessageResponse.class);
-                ChatEntity conver = chatRepository.findChatEntityById(messageResponse.getChatId());
-                for (MemberInfor props : conver.getMemberList()) {
-                    if (props.getMemberId().equals(user.getId())) {
-                        LastReadMessage lastRead = props.getLastReadMessage();
-                        if (lastRead != null) {
-                            messageResponse.setRead(lastRead.getLastMessageId().equals(lastMessage.getId()));
-                        } else {
-                            messageResponse.setRead(false); // hoặc true tùy vào logic
-                        }
-                        break;
-                    }
+        // 1 aggregation: lọc chat của user, sắp theo tin nhắn mới nhất (chat chưa có tin nhắn xếp sau theo createdAt),
+        // phân trang và đếm tổng ngay trên DB.
+        // $sort đặt trước $facet để dùng được member_inbox_idx (pipeline con trong $facet không dùng index)
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(acceptedMemberCriteria(user.getId())),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "lastMessage.timestamp", "createdAt")),
+                Aggregation.facet(
+                                Aggregation.skip((long) pageNumber * pageSize),
+                                Aggregation.limit(pageSize)
+                        ).as("data")
+                        .and(Aggregation.count().as("total")).as("total")
+        );
+        Document result = mongoTemplate.aggregate(aggregation, ChatEntity.class, Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return new PaginatedResponse<>(Collections.emptyList(), 0);
+        }
 
-                }
-                model.setLastMessage(messageResponse);
-            } else {
-                model.setLastMessage(null);
-//                model.setLastMessageTimestamp(null); // Xử lý trường hợp không có lastMessage
-            }
-            return model;
-        }).toList());
-
-        // Sắp xếp danh sách theo lastMessageTimestamp giảm dần
-        // Sắp xếp danh sách theo lastMessageTimestamp giảm dần, nếu null thì sắp xếp theo createdAt
-        conversationModels.sort((a, b) -> {
-                if (a.getLastMessage() == null && b.getLastMessage() == null) {
-                    return b.getCreatedAt().compareTo(a.getCreatedAt()); // So sánh createdAt nếu cả hai đều không có lastMessage
-                }
-                if (a.getLastMessage() == null) return 1; // a không có lastMessage -> đưa xuống
-                if (b.getLastMessage() == null) return -1; // b không có lastMessage -> đưa xuống
-                return b.getLastMessage().getTimestamp().compareTo(a.getLastMessage().getTimestamp()); // So sánh lastMessage timestamp
-        });
+        List<Document> totals = result.getList("total", Document.class);
+        int totalConversations = totals.isEmpty() ? 0 : ((Number) totals.get(0).get("total")).intValue();
 
+        List<ShortConversationModel> conversationModels = result.getList("data", Document.class).stream()
+                .map(doc -> toShortConversation(mongoTemplate.getConverter().read(ChatEntity.class, doc), user.getId()))
+                .toList();
 
-        // Tổng số conversations
-        int totalConversations = conversationModels.size();
+        int totalPages = (int) Math.ceil((double) totalConversations / pageSize);
+        return new PaginatedResponse<>(conversationModels, totalPages);
+    }
 
-        // Tính toán vị trí bắt đầu và kết thúc của trang
-        int startIndex = pageNumber * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, totalConversations);
+    private ShortConversationModel toShortConversation(ChatEntity chat, String userId) {
+        ShortConversationModel model = new ShortConversationModel();
+        model.setId(chat.getId());
+        model.setTitle(chat.getTitle());
+        model.setImageUrl(chat.getImageUrl());
+        model.setMemberSize(chat.getMemberSize());
+        model.setCreatedAt(chat.getCreatedAt());
 
-        // Kiểm tra nếu startIndex vượt quá số lượng conversations
-        if (startIndex > totalConversations) {
-            return new PaginatedResponse<>(Collections.emptyList(), 0);
+        MemberInfor member = chat.getMemberList().stream()
+                .filter(m -> m.getMemberId().equals(userId))
+                .findFirst()
+                .orElse(null);
+        int unreadCount = member != null ? member.getUnreadCount() : 0;
+        model.setUnreadCount(unreadCount);
+
+        LastMessageSnapshot lastMessage = chat.getLastMessage();
+        if (lastMessage != null) {
+            MessageResponse messageResponse = new MessageResponse();
+            messageResponse.setId(lastMessage.getId());
+            messageResponse.setSender(lastMessage.getSender());
+            messageResponse.setContent(lastMessage.getContent());
+            messageResponse.setTimestamp(lastMessage.getTimestamp());
+            messageResponse.setChatId(chat.getId());
+            messageResponse.setRead(unreadCount == 0);
+            model.setLastMessage(messageResponse);
+        } else {
+            model.setLastMessage(null);
         }
+        return model;
+    }
 
-        // Lấy danh sách con cho trang hiện tại
-        List<ShortConversationModel> paginatedConversations = conversationModels.subList(startIndex, endIndex);
-
-        // Trả về response với dữ liệu phân trang
-        int totalPages = (int) Math.ceil((double) totalConversations / pageSize);
-        return new PaginatedResponse<>(paginatedConversations, totalPages);
+    private Criteria acceptedMemberCriteria(String userId) {
+        return Criteria.where("memberList").elemMatch(Criteria.where("memberId").is(userId).and("isAccepted").is(true));
     }
 
     @Override
@@ -230,6 +232,7 @@ public class ChatServiceImpl implements IChatService {
         // Tạo đối tượng tin nhắn
         MessageEntity messageEntity = new MessageEntity();
         messageEntity.setSender(sender);
+        messageEntity.setSenderInfo(modelMapper.map(sender, ShortUser.class));
         messageEntity.setContent(message);
         messageEntity.setChatId(groupId);
 
@@ -252,19 +255,47 @@ public class ChatServiceImpl implements IChatService {
 
         // Lưu tin nhắn và trả về phản hồi
         MessageEntity savedMessage = messageRepository.save(messageEntity);
-        return modelMapper.map(savedMessage, MessageResponse.class);
+        MessageResponse response = toMessageResponses(List.of(savedMessage)).get(0);
+        updateInboxOnSend(groupId, sender.getId(), response);
+        return response;
     }
 
 
+    /**
+     * Cập nhật bộ đếm chưa đọc trên chat, người gửi coi như đã đọc tới tin nhắn của mình.
+     * lastMessage chỉ được thay khi tin nhắn đang lưu cũ hơn, để 2 lần gửi song song ghi xong
+     * không theo thứ tự không làm lastMessage lùi về tin cũ.
+     */
+    private void updateInboxOnSend(String groupId, String senderId, MessageResponse message) {
+        LastMessageSnapshot snapshot = new LastMessageSnapshot(
+                message.getId(), message.getSender(), message.getContent(), message.getTimestamp());
+
+        Query olderLastMessage = new Query(Criteria.where("_id").is(groupId).orOperator(
+                Criteria.where("lastMessage").is(null),
+                Criteria.where("lastMessage.timestamp").lt(message.getTimestamp()),
+                Criteria.where("lastMessage.timestamp").is(message.getTimestamp())
+                        .and("lastMessage.id").lt(message.getId())
+        ));
+        mongoTemplate.updateFirst(olderLastMessage, new Update().set("lastMessage", snapshot), ChatEntity.class);
+
+        Update update = new Update()
+                .inc("memberList.$[other].unreadCount", 1)
+                .set("memberList.$[sender].unreadCount", 0)
+                .set("memberList.$[sender].lastReadMessage", new LastReadMessage(message.getId(), message.getTimestamp()))
+                .filterArray(Criteria.where("other.memberId").ne(senderId))
+                .filterArray(Criteria.where("sender.memberId").is(senderId));
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(groupId)), update, ChatEntity.class);
+    }
+
     private void checkValidMessage(String groupId, String userId) {
-        ChatEntity chatEntity = chatRepository.findChatEntityById(groupId);
-        if (chatEntity == null) {
+        Set<String> memberIds = chatMembershipCache.getMemberIds(groupId);
+        if (memberIds == null) {
             throw new IllegalArgumentException("Group with ID " + groupId + " not found.");
         }
-        if (chatEntity.getMemberList().isEmpty()) {
+        if (memberIds.isEmpty()) {
             throw new IllegalArgumentException("Group with ID " + groupId + " has no member list.");
         }
-        if (chatEntity.getMemberList().stream().noneMatch(member -> member.getMemberId().equals(userId))) {
+        if (!memberIds.contains(userId)) {
             throw new IllegalArgumentException("Group with ID " + groupId + " has no member list.");
         }
     }
@@ -273,46 +304,111 @@ public class ChatServiceImpl implements IChatService {
     public PaginatedResponse<MessageResponse> getMessageByGroupId(String groupId, int pageNumber, int pageSize) throws Exception {
         UserEntity user = userService.getUserByAuthentication();
         checkValidMessage(groupId, user.getId());
-        Pageable pageable = PageRequest.of(pageNumber, pageSize, Sort.by(Sort.Direction.DESC, "timestamp"));
+        Pageable pageable = PageRequest.of(pageNumber, pageSize, Sort.by(Sort.Direction.DESC, "timestamp", "_id"));
         Page<MessageEntity> msgs = messageRepository.findMessageEntitiesByChatId(groupId, pageable);
-        List<MessageResponse> responses = msgs.getContent().stream().map(msg -> modelMapper.map(msg, MessageResponse.class)).toList();
-        logger.info(msgs.toString());
+        List<MessageResponse> responses = toMessageResponses(msgs.getContent());
         return new PaginatedResponse<>(responses, msgs.getTotalPages());
     }
 
+    @Override
+    public CursorPaginatedResponse<MessageResponse> getMessagesBefore(String groupId, String before, int pageSize) throws Exception {
+        MessageCursorUtil.checkPageSize(pageSize);
+        UserEntity user = userService.getUserByAuthentication();
+        checkValidMessage(groupId, user.getId());
+
+        // Keyset theo (timestamp, _id) giảm dần, đi thẳng trên index chatId_timestamp_id, không skip
+        Criteria criteria = Criteria.where("chatId").is(groupId);
+        if (before != null && !before.isBlank()) {
+            criteria = new Criteria().andOperator(criteria, MessageCursorUtil.olderThan(before));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "timestamp", "_id"))
+                .limit(pageSize + 1); // Lấy dư 1 để biết còn trang sau không
+        List<MessageEntity> msgs = new ArrayList<>(mongoTemplate.find(query, MessageEntity.class));
+
+        boolean hasMore = msgs.size() > pageSize;
+        if (hasMore) {
+            msgs = msgs.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            MessageEntity oldest = msgs.get(msgs.size() - 1);
+            nextCursor = MessageCursorUtil.encode(oldest.getTimestamp(), oldest.getId());
+        }
+        return new CursorPaginatedResponse<>(toMessageResponses(msgs), nextCursor, hasMore);
+    }
+
+    /**
+     * Map tin nhắn sang response dùng senderInfo đã lưu kèm.
+     * Tin nhắn cũ chưa có senderInfo thì nạp người gửi 1 lần cho cả trang.
+     */
+    private List<MessageResponse> toMessageResponses(List<MessageEntity> messages) {
+        Set<String> legacySenderIds = new HashSet<>();
+        for (MessageEntity message : messages) {
+            if (message.getSenderInfo() == null) {
+                String senderId = senderIdOf(message);
+                if (senderId != null) {
+                    legacySenderIds.add(senderId);
+                }
+            }
+        }
+        Map<String, ShortUser> legacySenders = loadShortUsers(legacySenderIds);
+
+        return messages.stream().map(message -> {
+            MessageResponse response = new MessageResponse();
+            response.setId(message.getId());
+            response.setChatId(message.getChatId());
+            response.setContent(message.getContent());
+            response.setTimestamp(message.getTimestamp());
+            response.setSender(message.getSenderInfo() != null
+                    ? message.getSenderInfo()
+                    : legacySenders.get(senderIdOf(message)));
+            return response;
+        }).toList();
+    }
+
+    private String senderIdOf(MessageEntity message) {
+        // Lấy id từ DBRef mà không nạp user
+        if (message.getSender() instanceof LazyLoadingProxy proxy) {
+            return proxy.toDBRef() != null ? proxy.toDBRef().getId().toString() : null;
+        }
+        return message.getSender() != null ? message.getSender().getId() : null;
+    }
+
     @Override
     public List<String> getUserIdsInGroup(String groupId) {
-        return chatRepository.findChatEntityById(groupId)
-                .getMemberList()
-                .stream()
-                .map(MemberInfor::getMemberId) // Lấy memberId từ mỗi MemberInfor
-                .collect(Collectors.toList()); // Thu thập thành List
+        Set<String> memberIds = chatMembershipCache.getMemberIds(groupId);
+        if (memberIds == null) {
+            throw new IllegalArgumentException("Group with ID " + groupId + " not found.");
+        }
+        return new ArrayList<>(memberIds);
     }
     @Override
     public void readLastedMessage(String groupId) throws Exception {
         UserEntity currentUser = userService.getUserByAuthentication();
 
-        MessageEntity lastMessage = messageRepository
-                .findTopByChatIdOrderByTimestampDesc(groupId);
+        // Chỉ lấy tin nhắn mới nhất đã lưu trên chat
+        Query chatQuery = new Query(Criteria.where("_id").is(groupId));
+        chatQuery.fields().include("lastMessage");
+        ChatEntity conver = mongoTemplate.findOne(chatQuery, ChatEntity.class);
 
-        if (lastMessage == null) {
+        if (conver == null || conver.getLastMessage() == null) {
             return;
         }
 
-        ChatEntity conver = chatRepository.findChatEntityById(groupId);
-
-
-        conver.getMemberList().forEach(p -> {
-            if (p.getMemberId().equals(currentUser.getId())) {
-                LastReadMessage lastReadMessage = new LastReadMessage();
-                    // Cập nhật nếu đã tồn tại
-                lastReadMessage.setLastMessageId(lastMessage.getId());
-                lastReadMessage.setLastReadTime(LocalDateTime.now());
-                p.setLastReadMessage(lastReadMessage);
-            }
-        });
-
-        chatRepository.save(conver);
+        // Cập nhật riêng thành viên hiện tại, không ghi đè cả chat.
+        // Chỉ về 0 khi lastMessage vẫn là tin vừa đọc: có tin mới chen vào thì giữ nguyên bộ đếm của tin đó
+        String lastMessageId = conver.getLastMessage().getId();
+        Update update = new Update()
+                .set("memberList.$.lastReadMessage", new LastReadMessage(lastMessageId, LocalDateTime.now()))
+                .set("memberList.$.unreadCount", 0);
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(groupId)
+                        .and("lastMessage.id").is(lastMessageId)
+                        .and("memberList.memberId").is(currentUser.getId())),
+                update,
+                ChatEntity.class
+        );
 
         ShortUser user = modelMapper.map(currentUser, ShortUser.class);
         messagingTemplate.convertAndSend(
@@ -334,15 +430,23 @@ public class ChatServiceImpl implements IChatService {
             throw new IllegalArgumentException("Group not found");
         }
 
-        List<FullMemberInfor> memberList = new ArrayList<>();
+        return toFullMembers(chat.getMemberList());
+    }
 
-        for (MemberInfor member : chat.getMemberList()) {
-            // Lấy thông tin người dùng
-            UserEntity user = userRepository.findById(member.getMemberId())
-                    .orElseThrow(() -> new IllegalArgumentException("User not found"));
+    /**
+     * Gắn thông tin user cho danh sách thành viên, nạp tất cả user trong 1 truy vấn.
+     */
+    private List<FullMemberInfor> toFullMembers(List<MemberInfor> members) {
+        Map<String, ShortUser> usersById = loadShortUsers(members.stream()
+                .map(MemberInfor::getMemberId)
+                .collect(Collectors.toSet()));
 
-            // Map ShortUser từ UserEntity
-            ShortUser shortUser = modelMapper.map(user, ShortUser.class);
+        List<FullMemberInfor> memberList = new ArrayList<>();
+        for (MemberInfor member : members) {
+            ShortUser shortUser = usersById.get(member.getMemberId());
+            if (shortUser == null) {
+                throw new IllegalArgumentException("User not found");
+            }
 
             // Map FullMemberInfor từ MemberInfor
             FullMemberInfor fullMember = modelMapper.map(member, FullMemberInfor.class);
@@ -350,37 +454,54 @@ public class ChatServiceImpl implements IChatService {
 
             memberList.add(fullMember);
         }
-
         return memberList;
     }
-    @Override
-    public boolean hasUnreadMessages() throws Exception {
-        // Lấy danh sách các nhóm mà người dùng tham gia
-        UserEntity user = userService.getUserByAuthentication();
-        List<ChatEntity> chats = chatRepository.findAllByMemberIdOrderByLastMessage(user.getId());
-    logger.info(String.valueOf(chats.size()));
-        for (ChatEntity chat : chats) {
-            // Lấy thông tin thành viên trong nhóm
-            MemberInfor member = chat.getMemberList().stream()
-                    .filter(m -> m.getMemberId().equals(user.getId()))
-                    .findFirst()
-                    .orElse(null);
-
-            // Nếu thành viên không tồn tại hoặc chưa có thời gian đọc tin nhắn
-            if (member == null || member.getLastReadMessage() == null) {
-                return true; // Nếu chưa có thời gian đọc tin nhắn, cho là chưa đọc
-            }
 
-            LocalDateTime lastReadTime = member.getLastReadMessage().getLastReadTime();
+    /**
+     * Nạp ShortUser theo id: 1 truy vấn user (chỉ lấy field cần) và 1 truy vấn frame.
+     */
+    private Map<String, ShortUser> loadShortUsers(Set<String> userIds) {
+        Map<String, ShortUser> usersById = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return usersById;
+        }
 
-            // Kiểm tra xem có tin nhắn nào trong nhóm mà người dùng chưa đọc
-            long unreadCount = messageRepository.countUnreadMessages(chat.getId(), lastReadTime).orElse(0L);
-            if (unreadCount > 0) {
-                return true; // Nếu có tin nhắn chưa đọc, trả về true
+        Query userQuery = new Query(Criteria.where("_id").in(userIds));
+        userQuery.fields().include("firstName", "middleName", "lastName", "username", "avatarUrl", "usedFrame");
+        List<UserEntity> users = mongoTemplate.find(userQuery, UserEntity.class);
+
+        // Frame là lazy DBRef: gom id rồi load 1 lần thay vì resolve từng user
+        Map<String, String> frameIdByUserId = new HashMap<>();
+        for (UserEntity user : users) {
+            if (user.getUsedFrame() instanceof LazyLoadingProxy proxy && proxy.toDBRef() != null) {
+                frameIdByUserId.put(user.getId(), proxy.toDBRef().getId().toString());
             }
         }
-
-        return false; // Nếu không có nhóm nào có tin nhắn chưa đọc
+        Map<String, UserFrameModel> framesById = new HashMap<>();
+        frameRepository.findAllById(new HashSet<>(frameIdByUserId.values()))
+                .forEach(frame -> framesById.put(frame.getId(), modelMapper.map(frame, UserFrameModel.class)));
+
+        for (UserEntity user : users) {
+            usersById.put(user.getId(), new ShortUser(
+                    user.getId(),
+                    user.getFullname(),
+                    user.getUsername(),
+                    user.getAvatarUrl(),
+                    framesById.get(frameIdByUserId.get(user.getId()))
+            ));
+        }
+        return usersById;
+    }
+    @Override
+    public boolean hasUnreadMessages() throws Exception {
+        UserEntity user = userService.getUserByAuthentication();
+        // Dựa vào bộ đếm chưa đọc trên chat, 1 truy vấn cho tất cả các nhóm
+        Query query = new Query(Criteria.where("memberList").elemMatch(
+                Criteria.where("memberId").is(user.getId())
+                        .and("isAccepted").is(true)
+                        .and("unreadCount").gt(0)
+        ));
+        return mongoTemplate.exists(query, ChatEntity.class);
     }
     @Override
     public String updateGroupImage(MultipartFile imageFile, String groupId) throws Exception {
@@ -394,7 +515,7 @@ public class ChatServiceImpl implements IChatService {
         if(memberInfor.getRole().equals(MemberRole.LEADER) || memberInfor.getRole().equals(MemberRole.DEPUTY)) {
             String imageUrl = uploadFileService.uploadImage(imageFile);
             chat.setImageUrl(imageUrl);
-            chatRepository.save(chat);
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(groupId)), new Update().set("imageUrl", imageUrl), ChatEntity.class);
             return imageUrl;
         } else {
             throw new Exception("You don't have permission!");
@@ -411,7 +532,7 @@ public class ChatServiceImpl implements IChatService {
         assert memberInfor != null;
         if(memberInfor.getRole().equals(MemberRole.LEADER) || memberInfor.getRole().equals(MemberRole.DEPUTY)) {
             chat.setTitle(newName);
-            chatRepository.save(chat);
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(groupId)), new Update().set("title", newName), ChatEntity.class);
             return chat.getTitle();
         }
         else {
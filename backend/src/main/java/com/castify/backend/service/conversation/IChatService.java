@@ -5,6 +5,7 @@ import com.castify.backend.models.conversation.CreateChatRequest;
 import com.castify.backend.models.conversation.FullMemberInfor;
 import com.castify.backend.models.conversation.MessageResponse;
 import com.castify.backend.models.conversation.ShortConversationModel;
+import com.castify.backend.models.paginated.CursorPaginatedResponse;
 import com.castify.backend.models.paginated.PaginatedResponse;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -26,6 +27,8 @@ public interface IChatService {
 
     PaginatedResponse<MessageResponse> getMessageByGroupId(String groupId, int pageNumber, int pageSize) throws Exception;
 
+    CursorPaginatedResponse<MessageResponse> getMessagesBefore(String groupId, String before, int pageSize) throws Exception;
+
     List<String> getUserIdsInGroup(String groupId);
 
     void readLastedMessage(String groupId) throws Exception;
@@ -57,7 +57,7 @@ public class DashboardServiceImpl implements IDashboardService{
         UserEntity currentUser = userService.getUserByAuthentication();
 
         // Tổng số follower
-        long totalFollowers = userRepository.findUsersFollowers(currentUser.getId()).size();
+        long totalFollowers = currentUser.getTotalFollower();
 
         // Lấy tất cả video của creator
         List<PodcastEntity> videos = podcastRepository.findByUserId(currentUser.getId());
@@ -1,31 +1,59 @@
 package com.castify.backend.service.notification;
 
 import com.castify.backend.entity.PodcastEntity;
+import com.castify.backend.models.podcast.RenditionMetric;
 import com.castify.backend.models.podcast.SolutionModel;
+import com.castify.backend.models.podcast.TranscodeResult;
 import com.castify.backend.repository.PodcastRepository;
+import com.castify.backend.service.streaming.IRenditionIndexService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
-import java.text.Normalizer;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.IntConsumer;
 
 @Service
+@Slf4j
 public class VideoTranscodeService {
     private final List<Integer> availableResolutions = Arrays.asList(360, 480, 720, 1080);
     @Autowired
     private PodcastRepository podcastRepository;
-    public void transcodeVideo(String inputPath, String outputDir, String podcastId) throws IOException, InterruptedException {
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private IRenditionIndexService renditionIndexService;
+
+    public TranscodeResult transcodeVideo(String inputPath, String outputDir, String podcastId) throws IOException, InterruptedException {
+        return transcodeVideo(inputPath, outputDir, podcastId, percent -> {});
+    }
+
+    /**
+     * Decode video gốc 1 lần duy nhất rồi tách (split) và scale ra tất cả các bản thấp hơn
+     * trong cùng 1 tiến trình ffmpeg, thay vì decode lại cho từng độ phân giải.
+     *
+     * @param progressListener nhận % tiến độ (0 - 100) của pass transcode
+     */
+    public TranscodeResult transcodeVideo(String inputPath, String outputDir, String podcastId,
+                                          IntConsumer progressListener) throws IOException, InterruptedException {
         // 1. Lấy độ phân giải gốc
         int sourceHeight = getVideoHeight(inputPath);
         if (sourceHeight == -1) throw new RuntimeException("Không lấy được độ phân giải video.");
         PodcastEntity podcast = podcastRepository.findPodcastEntityById(podcastId);
-        SolutionModel defaultSolution = new SolutionModel();
-        defaultSolution.setSolution(sourceHeight);
-        defaultSolution.setUrl(inputPath);
-        podcast.getSolutionModelList().add(defaultSolution);
+        if (podcast == null) throw new RuntimeException("Podcast not found");
+
+        // Job có thể được retry nên luôn tạo lại danh sách từ đầu
+        List<SolutionModel> solutions = new ArrayList<>();
+        solutions.add(new SolutionModel(sourceHeight, inputPath));
+
+        TranscodeResult result = new TranscodeResult();
+        result.setSourceHeight(sourceHeight);
+
         // 2. Lọc danh sách cần tạo
         List<Integer> resolutionsToCreate = new ArrayList<>();
         for (int res : availableResolutions) {
@@ -34,49 +62,108 @@ public class VideoTranscodeService {
             }
         }
 
-        // 3. Tạo folder nếu chưa có
-        File outDir = new File(outputDir);
-        if (!outDir.exists()) outDir.mkdirs();
-
-        // 4. Transcode từng bản
-        for (int res : resolutionsToCreate) {
-//            String formattedFileName = fileName.substring(lastDotIndex);
-            String outputPath = outputDir + podcastId + "_" + res + "p.mp4";
-            String scale = "-2:" + res;
-            ProcessBuilder builder = new ProcessBuilder(
-                    "ffmpeg",
-                    "-i", inputPath,
-                    "-vf", "scale=" + scale,
+        if (!resolutionsToCreate.isEmpty()) {
+            // 3. Tạo folder nếu chưa có
+            File outDir = new File(outputDir);
+            if (!outDir.exists()) outDir.mkdirs();
+
+            Map<Integer, String> outputPaths = new LinkedHashMap<>();
+            for (int res : resolutionsToCreate) {
+                outputPaths.put(res, new File(outDir, podcastId + "_" + res + "p.mp4").getPath());
+            }
+
+            // 4. Transcode tất cả các bản trong 1 pass
+            long startedAt = System.currentTimeMillis();
+            runSinglePass(inputPath, outputPaths, podcast.getDuration(), progressListener);
+            long elapsedMs = System.currentTimeMillis() - startedAt;
+
+            result.setTotalElapsedMs(elapsedMs);
+            for (Map.Entry<Integer, String> entry : outputPaths.entrySet()) {
+                File outputFile = new File(entry.getValue());
+                solutions.add(new SolutionModel(entry.getKey(), entry.getValue()));
+                result.getRenditions().add(new RenditionMetric(entry.getKey(), entry.getValue(), elapsedMs, outputFile.length()));
+                log.info("[Transcode] podcast {} - {}p: {} bytes, {} ms", podcastId, entry.getKey(), outputFile.length(), elapsedMs);
+            }
+        }
+
+        // Chỉ cập nhật solutionModelList để không ghi đè các chỉnh sửa khác của podcast trong lúc transcode
+        Query query = new Query(Criteria.where("_id").is(podcastId));
+        mongoTemplate.updateFirst(query, new Update().set("solutionModelList", solutions), PodcastEntity.class);
+        renditionIndexService.index(podcastId, solutions, podcast.getHlsPath());
+
+        progressListener.accept(100);
+        return result;
+    }
+
+    private void runSinglePass(String inputPath, Map<Integer, String> outputPaths, long durationSeconds,
+                               IntConsumer progressListener) throws IOException, InterruptedException {
+        // [0:v]split=N[v0][v1]...;[v0]scale=-2:360[o0];[v1]scale=-2:480[o1];...
+        StringBuilder filterGraph = new StringBuilder("[0:v]split=").append(outputPaths.size());
+        for (int i = 0; i < outputPaths.size(); i++) {
+            filterGraph.append("[v").append(i).append("]");
+        }
+        int index = 0;
+        for (int res : outputPaths.keySet()) {
+            filterGraph.append(";[v").append(index).append("]scale=-2:").append(res).append("[o").append(index).append("]");
+            index++;
+        }
+
+        List<String> command = new ArrayList<>(Arrays.asList(
+                "ffmpeg",
+                "-y",
+                "-i", inputPath,
+                "-filter_complex", filterGraph.toString(),
+                "-progress", "pipe:1",
+                "-nostats"
+        ));
+        index = 0;
+        for (String outputPath : outputPaths.values()) {
+            command.addAll(Arrays.asList(
+                    "-map", "[o" + index + "]",
+                    "-map", "0:a?",
                     "-c:v", "libx264",
                     "-crf", "23",
                     "-preset", "veryfast",
                     "-c:a", "aac",
-                    "-strict", "experimental",
+                    "-movflags", "+faststart",
                     outputPath
-            );
+            ));
+            index++;
+        }
 
-            builder.redirectErrorStream(true);
-            Process process = builder.start();
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
 
-            // In log FFmpeg nếu muốn
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    System.out.println("[FFmpeg] " + line);
+        // Đọc output -progress (key=value) để báo tiến độ
+        long durationUs = durationSeconds * 1_000_000L;
+        int lastReported = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (durationUs > 0 && line.startsWith("out_time_us=")) {
+                    try {
+                        long outTimeUs = Long.parseLong(line.substring("out_time_us=".length()).trim());
+                        int percent = (int) Math.min(99, outTimeUs * 100 / durationUs);
+                        if (percent >= lastReported + 5) {
+                            lastReported = percent;
+                            progressListener.accept(percent);
+                        }
+                    } catch (NumberFormatException ignored) {}
+                } else if (!line.contains("=")) {
+                    log.debug("[FFmpeg] {}", line);
                 }
             }
+        } catch (RuntimeException e) {
+            // progressListener có thể hủy job giữa chừng: dừng luôn tiến trình ffmpeg
+            process.destroyForcibly();
+            throw e;
+        }
 
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new RuntimeException("FFmpeg thất bại ở " + res + "p");
-            }
-            SolutionModel newSolution = new SolutionModel();
-            newSolution.setUrl(outputPath);
-            newSolution.setSolution(res);
-            podcast.getSolutionModelList().add(newSolution);
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new RuntimeException("FFmpeg thất bại khi transcode " + outputPaths.keySet());
         }
-        podcastRepository.save(podcast);
     }
 
     private int getVideoHeight(String inputPath) throws IOException, InterruptedException {
@@ -105,4 +192,3 @@ public class VideoTranscodeService {
         }
     }
 }
-
@@ -5,12 +5,14 @@ import com.castify.backend.entity.PlaylistItem;
 import com.castify.backend.entity.PodcastEntity;
 import com.castify.backend.entity.UserEntity;
 import com.castify.backend.enums.PlaylistType;
+import com.castify.backend.enums.SearchCategory;
 import com.castify.backend.exception.PermissionDeniedException;
 import com.castify.backend.exception.ResourceAlreadyExistsException;
 import com.castify.backend.models.playlist.CreatePlaylistDTO;
 import com.castify.backend.models.playlist.PlaylistModel;
 import com.castify.backend.repository.PlaylistRepository;
 import com.castify.backend.repository.PodcastRepository;
+import com.castify.backend.service.search.SearchIndexService;
 import com.castify.backend.utils.SecurityUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -39,6 +42,7 @@ public class PlaylistServiceImpl implements IPlaylistService {
     private final ModelMapper modelMapper;
     private final PodcastRepository podcastRepository;
     private final MongoTemplate mongoTemplate;
+    private final SearchIndexService searchIndexService;
 
     @Override
     public void createDefaultWatchLaterPlaylist(UserEntity user) {
@@ -328,8 +332,19 @@ public class PlaylistServiceImpl implements IPlaylistService {
                     .and("publish").is(true) // Chỉ search public playlists
                     .and("items").exists(true).not().size(0);
 
+            // Có index thì chỉ đọc các playlist khớp, theo thứ tự liên quan
+            Optional<List<String>> hits = searchIndexService.search(SearchCategory.PLAYLIST, keyword);
+            if (hits.isPresent()) {
+                criteria = Criteria.where("_id").in(hits.get())
+                        .and("publish").is(true)
+                        .and("items").exists(true).not().size(0);
+            }
+
             Query query = new Query(criteria);
             List<PlaylistEntity> playlistEntities = mongoTemplate.find(query, PlaylistEntity.class);
+            if (hits.isPresent()) {
+                playlistEntities = SearchIndexService.inRankOrder(hits.get(), playlistEntities, PlaylistEntity::getId);
+            }
 
             // Filter và convert to models - loại bỏ playlist không có active items
             List<PlaylistModel> playlistModels = playlistEntities.stream()
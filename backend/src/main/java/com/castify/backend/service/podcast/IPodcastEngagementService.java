@@ -0,0 +1,20 @@
+package com.castify.backend.service.podcast;
+
+import com.castify.backend.models.podcast.PodcastEngagementModel;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+public interface IPodcastEngagementService {
+    /**
+     * Lấy số like, số bình luận và trạng thái đã thích của cả 1 trang podcast.
+     * userId = null nghĩa là người xem ẩn danh (liked luôn là false).
+     */
+    Map<String, PodcastEngagementModel> getEngagement(Collection<String> podcastIds, String userId);
+
+    PodcastEngagementModel getEngagement(String podcastId, String userId);
+
+    // Chỉ lấy những podcast trong danh sách mà user đã thích (1 truy vấn)
+    Set<String> getLikedPodcastIds(Collection<String> podcastIds, String userId);
+}
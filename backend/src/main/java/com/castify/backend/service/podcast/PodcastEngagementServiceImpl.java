@@ -0,0 +1,82 @@
+package com.castify.backend.service.podcast;
+
+import com.castify.backend.models.podcast.PodcastCountModel;
+import com.castify.backend.models.podcast.PodcastEngagementModel;
+import com.castify.backend.repository.CommentRepository;
+import com.castify.backend.repository.PodcastLikeRepository;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Gom số like / bình luận / liked-by-me của nhiều podcast vào 1 aggregation cho mỗi collection,
+ * thay vì 3 truy vấn count/exists cho từng podcast trong trang.
+ */
+@Service
+@RequiredArgsConstructor
+public class PodcastEngagementServiceImpl implements IPodcastEngagementService {
+    private final CommentRepository commentRepository;
+    private final PodcastLikeRepository podcastLikeRepository;
+
+    @Override
+    public Map<String, PodcastEngagementModel> getEngagement(Collection<String> podcastIds, String userId) {
+        Map<String, PodcastEngagementModel> result = new HashMap<>();
+        List<ObjectId> objectIds = new ArrayList<>();
+        for (String podcastId : podcastIds) {
+            if (podcastId != null && result.putIfAbsent(podcastId, new PodcastEngagementModel()) == null
+                    && ObjectId.isValid(podcastId)) {
+                objectIds.add(new ObjectId(podcastId));
+            }
+        }
+        if (objectIds.isEmpty()) {
+            return result;
+        }
+
+        for (PodcastCountModel count : commentRepository.countGroupByPodcastIds(objectIds)) {
+            PodcastEngagementModel engagement = result.get(count.getPodcastId());
+            if (engagement != null) {
+                engagement.setTotalComments(count.getCount());
+            }
+        }
+
+        for (PodcastCountModel count : podcastLikeRepository.countGroupByPodcastIds(objectIds)) {
+            PodcastEngagementModel engagement = result.get(count.getPodcastId());
+            if (engagement != null) {
+                engagement.setTotalLikes(count.getCount());
+            }
+        }
+
+        for (String likedId : getLikedPodcastIds(result.keySet(), userId)) {
+            result.get(likedId).setLiked(true);
+        }
+
+        return result;
+    }
+
+    @Override
+    public PodcastEngagementModel getEngagement(String podcastId, String userId) {
+        return getEngagement(List.of(podcastId), userId).get(podcastId);
+    }
+
+    @Override
+    public Set<String> getLikedPodcastIds(Collection<String> podcastIds, String userId) {
+        if (userId == null || !ObjectId.isValid(userId)) {
+            return Set.of();
+        }
+        List<ObjectId> objectIds = podcastIds.stream()
+                .filter(ObjectId::isValid)
+                .map(ObjectId::new)
+                .toList();
+        if (objectIds.isEmpty()) {
+            return Set.of();
+        }
+
+        Set<String> likedIds = new HashSet<>();
+        for (PodcastCountModel liked : podcastLikeRepository.findLikedPodcastIds(new ObjectId(userId), objectIds)) {
+            likedIds.add(liked.getPodcastId());
+        }
+        return likedIds;
+    }
+}
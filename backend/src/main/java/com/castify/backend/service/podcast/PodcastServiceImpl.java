@@ -3,17 +3,21 @@ package com.castify.backend.service.podcast;
 import com.castify.backend.entity.*;
 import com.castify.backend.enums.ActivityType;
 import com.castify.backend.enums.NotiType;
+import com.castify.backend.enums.SearchCategory;
 import com.castify.backend.exception.PermissionDeniedException;
 import com.castify.backend.models.PageDTO;
 import com.castify.backend.models.genre.GenreSimple;
 import com.castify.backend.models.podcast.CreatePodcastModel;
 import com.castify.backend.models.podcast.EditPodcastDTO;
+import com.castify.backend.models.podcast.PodcastEngagementModel;
 import com.castify.backend.models.podcast.PodcastModel;
 import com.castify.backend.models.user.FollowInfo;
 import com.castify.backend.models.user.UserSimple;
 import com.castify.backend.models.userActivity.AddActivityRequestDTO;
 import com.castify.backend.repository.*;
 import com.castify.backend.service.notification.INotificationService;
+import com.castify.backend.service.search.SearchIndexService;
+import com.castify.backend.service.streaming.IRenditionIndexService;
 import com.castify.backend.service.uploadFile.UploadFileServiceImpl;
 import com.castify.backend.service.user.IUserService;
 import com.castify.backend.service.userActivity.UserActivityServiceImpl;
@@ -77,6 +81,16 @@ public class PodcastServiceImpl implements IPodcastService {
     private INotificationService notificationService;
     @Autowired
     private IVideoTranscribe videoTranscribe;
+    @Autowired
+    private IRenditionIndexService renditionIndexService;
+    @Autowired
+    private IPodcastEngagementService podcastEngagementService;
+    @Autowired
+    private PodcastViewBuffer podcastViewBuffer;
+    @Autowired
+    private TrendingPodcastService trendingPodcastService;
+    @Autowired
+    private SearchIndexService searchIndexService;
     @Override
     public PodcastModel createPodcast(CreatePodcastModel createPodcastModel, String userId) {
         PodcastEntity podcastEntity = modelMapper.map(createPodcastModel, PodcastEntity.class);
@@ -143,21 +157,13 @@ public class PodcastServiceImpl implements IPodcastService {
         );
 
         // Xử lý thêm logic filter minComments và ánh xạ sang PodcastModel
-        // Ánh xạ trực tiếp và lọc theo minComments
+        // Lấy engagement của cả trang 1 lần rồi lọc theo minComments
+        Map<String, PodcastEngagementModel> engagements = podcastEngagementService.getEngagement(
+                podcastEntities.map(PodcastEntity::getId).getContent(), userEntity.getId());
         List<PodcastModel> podcastModels = podcastEntities.stream()
-                .map(podcast -> {
-                    long totalComments = commentRepository.countByPodcastId(podcast.getId());
-                    if (totalComments >= minCommentsValue) { // Lọc tại đây
-                        PodcastModel podcastModel = modelMapper.map(podcast, PodcastModel.class);
-                        podcastModel.setTotalComments(totalComments);
-                        podcastModel.setTotalLikes(podcastLikeRepository.countByPodcastEntityId(podcast.getId()));
-                        podcastModel.setUsername(podcast.getUser().getUsername());
+                .filter(podcast -> engagements.get(podcast.getId()).getTotalComments() >= minCommentsValue) // Lọc tại đây
+                .map(podcast -> mapToModel(podcast, engagements.get(podcast.getId())))
 //                    podcastModel.setVideoUrl("/api/v1/podcast/video?path=" + podcast.getVideoUrl());
-                        return podcastModel;
-                    }
-                    return null;
-                })
-                .filter(Objects::nonNull)
                 .toList();
 
         PageDTO<PodcastModel> pageDTO = new PageDTO<>();
@@ -203,24 +209,16 @@ public class PodcastServiceImpl implements IPodcastService {
         activityDTO.setPodcastId(podcastId);
         userActivityService.addActivity(activityDTO);
 
-        long totalComments = commentRepository.countByPodcastId(podcastId);
-        long totalLikes = podcastLikeRepository.countByPodcastEntityId(podcastId);
-
-        PodcastModel podcastModel = modelMapper.map(podcastEntity, PodcastModel.class);
-        podcastModel.setTotalComments(totalComments);
-        podcastModel.setTotalLikes(totalLikes);
-        podcastModel.setUsername(podcastEntity.getUser().getUsername());
-
-        boolean isLiked = podcastLikeRepository.existsByUserEntityIdAndPodcastEntityId(userEntity.getId(), podcastId);
-        podcastModel.setLiked(isLiked);
+        // Số bình luận, lượt thích và trạng thái đã thích
+        PodcastEngagementModel engagement = podcastEngagementService.getEngagement(podcastId, userEntity.getId());
+        PodcastModel podcastModel = mapToModel(podcastEntity, engagement);
 
         // Ánh xạ UserSimple
         UserEntity podcastUser = podcastEntity.getUser();
         UserSimple userSimple = modelMapper.map(podcastUser, UserSimple.class);
 
         // Tính tổng follower
-        long followerSize = userRepository.findUsersFollowers(podcastUser.getId()).size();
-        userSimple.setTotalFollower(followerSize);
+        userSimple.setTotalFollower(podcastUser.getTotalFollower());
 
         // Tính tổng following
         long followingCount = podcastUser.getFollowing().size();
@@ -253,27 +251,18 @@ public class PodcastServiceImpl implements IPodcastService {
             throw new RuntimeException("Access denied");
         }
 
-        // Tính tổng số bình luận và lượt thích
-        long totalComments = commentRepository.countByPodcastId(podcastId);
-        long totalLikes = podcastLikeRepository.countByPodcastEntityId(podcastId);
+        // Tính tổng số bình luận, lượt thích và kiểm tra người dùng hiện tại đã thích chưa
+        PodcastEngagementModel engagement = podcastEngagementService.getEngagement(podcastId, userEntity.getId());
 
         // Ánh xạ PodcastEntity sang PodcastModel
-        PodcastModel podcastModel = modelMapper.map(podcastEntity, PodcastModel.class);
-        podcastModel.setTotalComments(totalComments);
-        podcastModel.setTotalLikes(totalLikes);
-        podcastModel.setUsername(podcastEntity.getUser().getUsername());
-
-        // Kiểm tra xem người dùng hiện tại có thích podcast này không
-        boolean isLiked = podcastLikeRepository.existsByUserEntityIdAndPodcastEntityId(userEntity.getId(), podcastId);
-        podcastModel.setLiked(isLiked);
+        PodcastModel podcastModel = mapToModel(podcastEntity, engagement);
 
         // Ánh xạ thông tin user của podcast
         UserEntity podcastUser = podcastEntity.getUser();
         UserSimple userSimple = modelMapper.map(podcastUser, UserSimple.class);
 
         // Tính tổng follower
-        long followerSize = userRepository.findUsersFollowers(podcastUser.getId()).size();
-        userSimple.setTotalFollower(followerSize);
+        userSimple.setTotalFollower(podcastUser.getTotalFollower());
 
         // Tính tổng số người đang theo dõi
         long followingCount = podcastUser.getFollowing().size();
@@ -299,24 +288,16 @@ public class PodcastServiceImpl implements IPodcastService {
         PodcastEntity podcastEntity = podcastRepository.findByIdAndIsActiveTrue(id)
                 .orElseThrow(() -> new RuntimeException("Podcast not found"));
 
-        long totalComments = commentRepository.countByPodcastId(id);
-        long totalLikes = podcastLikeRepository.countByPodcastEntityId(id);
-
-        PodcastModel podcastModel = modelMapper.map(podcastEntity, PodcastModel.class);
-        podcastModel.setTotalComments(totalComments);
-        podcastModel.setTotalLikes(totalLikes);
-        podcastModel.setUsername(podcastEntity.getUser().getUsername());
-
-        podcastModel.setLiked(false);
+        // Người xem ẩn danh nên liked luôn là false
+        PodcastEngagementModel engagement = podcastEngagementService.getEngagement(id, null);
+        PodcastModel podcastModel = mapToModel(podcastEntity, engagement);
 
         // Ánh xạ UserSimple
         UserEntity podcastUser = podcastEntity.getUser();
         UserSimple userSimple = modelMapper.map(podcastUser, UserSimple.class);
 
         // Tính tổng follower
-        long followerSize = userRepository.findUsersFollowers(podcastUser.getId()).size();
-        System.out.println("followerSize " + followerSize);
-        userSimple.setTotalFollower(followerSize);
+        userSimple.setTotalFollower(podcastUser.getTotalFollower());
 
         podcastModel.setUser(userSimple);
 
@@ -348,6 +329,7 @@ public class PodcastServiceImpl implements IPodcastService {
             newLike.setPodcastEntity(podcastEntity);
             newLike.setTimestamp(LocalDateTime.now());
             podcastLikeRepository.save(newLike);
+            trendingPodcastService.recordLike(podcastEntity.getId());
             notificationService.saveNotification(
                     podcastEntity.getUser().getId(),
                     NotiType.LIKE,
@@ -372,10 +354,7 @@ public class PodcastServiceImpl implements IPodcastService {
                 .and(Sort.by(Sort.Direction.DESC, "views")));
         Page<PodcastEntity> podcastPage = podcastRepository.findByIsActiveTrue(pageable);
 
-        List<PodcastModel> podcastModels = podcastPage.getContent()
-                .stream()
-                .map(podcastEntity -> modelMapper.map(podcastEntity, PodcastModel.class))
-                .toList();
+        List<PodcastModel> podcastModels = mapToModels(podcastPage.getContent());
 
         return new PageDTO<>(
                 podcastModels,
@@ -395,10 +374,7 @@ public class PodcastServiceImpl implements IPodcastService {
         Page<PodcastEntity> podcastPage = podcastRepository.findByIsActiveTrue(pageable);
 
         // Chuyển đổi dữ liệu từ PodcastEntity sang PodcastModel
-        List<PodcastModel> podcastModels = podcastPage.getContent()
-                .stream()
-                .map(podcastEntity -> modelMapper.map(podcastEntity, PodcastModel.class))
-                .toList();
+        List<PodcastModel> podcastModels = mapToModels(podcastPage.getContent());
 
         // Trả về PageDTO chứa thông tin paginated
         return new PageDTO<>(
@@ -419,10 +395,7 @@ public class PodcastServiceImpl implements IPodcastService {
         Page<PodcastEntity> podcastPage = podcastRepository.findByGenres_IdAndIsActiveTrue(genreId, pageable);
 
         // Ánh xạ từ PodcastEntity sang PodcastModel
-        List<PodcastModel> podcastModels = podcastPage.getContent()
-                .stream()
-                .map(podcastEntity -> modelMapper.map(podcastEntity, PodcastModel.class))
-                .toList();
+        List<PodcastModel> podcastModels = mapToModels(podcastPage.getContent());
 
         // Tạo PageDTO
         return new PageDTO<>(
@@ -470,34 +443,9 @@ public class PodcastServiceImpl implements IPodcastService {
 
     @Override
     public void incrementPodcastViews(String podcastId) {
-        try {
-            // Tăng view count
-            Query query = new Query(Criteria.where("_id").is(podcastId));
-            Update update = new Update().inc("views", 1);
-            mongoTemplate.updateFirst(query, update, PodcastEntity.class);
-
-            log.info("isAuthenticated: " + SecurityUtils.isAuthenticated());
-            // Cập nhật suggested genres cho user hiện tại (nếu đã đăng nhập)
-            if (SecurityUtils.isAuthenticated()) {
-                UserEntity currentUser = SecurityUtils.getCurrentUser();
-
-                // Lấy thông tin podcast để có được genres
-                PodcastEntity podcast = podcastRepository.findById(podcastId)
-                        .orElse(null);
-
-                if (podcast != null && podcast.getGenres() != null && !podcast.getGenres().isEmpty()) {
-                    List<String> genreIds = podcast.getGenres().stream()
-                            .map(GenreEntity::getId)
-                            .collect(Collectors.toList());
-
-                    log.info(genreIds.toString());
-                    // Cập nhật suggested genres
-                    userService.updateSuggestedGenres(currentUser.getId(), genreIds);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error incrementing podcast views for podcast {}: {}", podcastId, e.getMessage());
-        }
+        // Chỉ ghi vào buffer, view và suggested genres được ghi xuống Mongo theo lô
+        String userId = SecurityUtils.isAuthenticated() ? SecurityUtils.getCurrentUser().getId() : null;
+        podcastViewBuffer.recordView(podcastId, userId);
     }
 
     @Override
@@ -549,10 +497,7 @@ public class PodcastServiceImpl implements IPodcastService {
         // Lấy danh sách podcast theo danh sách ID
         Page<PodcastEntity> podcastPage = podcastRepository.findByUserIdInAndIsActiveTrue(followingObjectIds, pageable);
         // Chuyển đổi dữ liệu từ PodcastEntity sang PodcastModel
-        List<PodcastModel> podcastModels = podcastPage.getContent()
-                .stream()
-                .map(podcastEntity -> modelMapper.map(podcastEntity, PodcastModel.class))
-                .toList();
+        List<PodcastModel> podcastModels = mapToModels(podcastPage.getContent());
 
         return new PageDTO<>(
                 podcastModels,
@@ -590,6 +535,11 @@ public class PodcastServiceImpl implements IPodcastService {
         }
 
         podcastRepository.saveAll(podcasts);
+        // Podcast bị ẩn thì gỡ khỏi trending
+        trendingPodcastService.remove(podcasts.stream()
+                .filter(podcast -> !podcast.isActive())
+                .map(PodcastEntity::getId)
+                .toList());
     }
 
     @Override
@@ -617,6 +567,7 @@ public class PodcastServiceImpl implements IPodcastService {
         podcast.setLastEdited(LocalDateTime.now());
 
         podcastRepository.save(podcast);
+        renditionIndexService.evict(podcastId);
 
         return modelMapper.map(podcast, PodcastModel.class);
     }
@@ -672,47 +623,14 @@ public class PodcastServiceImpl implements IPodcastService {
             }
 
             podcastRepository.delete(podcast);
+            renditionIndexService.evict(podcast.getId());
         }
+        trendingPodcastService.remove(podcastIds);
     }
 
     @Override
     public PageDTO<PodcastModel> getTrendingPodcasts(int page, int size) {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime last24Hours = now.minusHours(24);
-
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("views")));
-
-        Page<PodcastEntity> podcastPage = podcastRepository.findAllByIsActiveTrue(pageable);
-
-        List<Map.Entry<PodcastEntity, Double>> scored = podcastPage.getContent().stream().map(podcast -> {
-                    long views = podcast.getViews();
-                    long likes24h = podcast.getLikes() == null ? 0 :
-                            podcast.getLikes().stream()
-                                    .filter(like -> like.getTimestamp().isAfter(last24Hours))
-                                    .count();
-
-                    long comments24h = podcast.getComments() == null ? 0 :
-                            podcast.getComments().stream()
-                                    .filter(comment -> comment.getTimestamp().isAfter(last24Hours))
-                                    .count();
-
-                    double score = views * 1.0 + likes24h * 2.0 + comments24h * 3.0;
-
-                    return new AbstractMap.SimpleEntry<>(podcast, score);
-                }).sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-                .collect(Collectors.toList());
-
-        List<PodcastModel> models = scored.stream()
-                .map(entry -> mapToModel(entry.getKey()))
-                .collect(Collectors.toList());
-
-        return new PageDTO<>(
-                models,
-                size,
-                page,
-                podcastPage.getTotalPages(),
-                (int) podcastPage.getTotalElements()
-        );
+        return trendingPodcastService.getTrendingPodcasts(page, size);
     }
 
     @Override
@@ -731,9 +649,7 @@ public class PodcastServiceImpl implements IPodcastService {
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Order.desc("createdDay")));
         Page<PodcastEntity> podcastPage = podcastRepository.findAllByUserIdAndIsActiveTrue(followingUser.getId(), pageable);
 
-        List<PodcastModel> podcastModels = podcastPage.getContent().stream()
-                .map(podcast -> modelMapper.map(podcast, PodcastModel.class))
-                .collect(Collectors.toList());
+        List<PodcastModel> podcastModels = mapToModels(podcastPage.getContent());
 
         return new PageDTO<>(
                 podcastModels,
@@ -745,15 +661,7 @@ public class PodcastServiceImpl implements IPodcastService {
     }
 
     private PageDTO<PodcastModel> convertPodcastEntitiesToPageDTO(Page<PodcastEntity> podcastEntities) {
-        List<PodcastModel> podcastModels = podcastEntities.getContent().stream()
-                .map(podcast -> {
-                    PodcastModel podcastModel = modelMapper.map(podcast, PodcastModel.class);
-                    podcastModel.setTotalComments(commentRepository.countByPodcastId(podcast.getId()));
-                    podcastModel.setTotalLikes(podcastLikeRepository.countByPodcastEntityId(podcast.getId()));
-                    podcastModel.setUsername(podcast.getUser().getUsername());
-                    return podcastModel;
-                })
-                .toList();
+        List<PodcastModel> podcastModels = mapToModels(podcastEntities.getContent());
 
         PageDTO<PodcastModel> pageDTO = new PageDTO<>();
         pageDTO.setContent(podcastModels);
@@ -764,13 +672,24 @@ public class PodcastServiceImpl implements IPodcastService {
         return pageDTO;
     }
 
-    private PodcastModel mapToModel(PodcastEntity podcast) {
-        UserSimple userSimple = modelMapper.map(podcast.getUser(), UserSimple.class);
-        boolean isLiked = false;
+    // Ánh xạ cả trang với engagement lấy trong 1 lần (không count/exists cho từng podcast)
+    private List<PodcastModel> mapToModels(List<PodcastEntity> podcasts) {
+        Map<String, PodcastEngagementModel> engagements = podcastEngagementService.getEngagement(
+                podcasts.stream().map(PodcastEntity::getId).toList(), currentUserId());
+        return podcasts.stream()
+                .map(podcast -> mapToModel(podcast, engagements.get(podcast.getId())))
+                .toList();
+    }
+
+    private String currentUserId() {
+        return SecurityUtils.isAuthenticated() ? SecurityUtils.getCurrentUser().getId() : null;
+    }
 
-        if (SecurityUtils.isAuthenticated()) {
-            UserEntity auth = SecurityUtils.getCurrentUser();
-            isLiked = podcastLikeRepository.existsByUserEntityIdAndPodcastEntityId(auth.getId(), podcast.getId());
+    // Không dùng podcast.getTotalLikes()/getTotalComments() vì sẽ load toàn bộ DBRef likes/comments
+    private PodcastModel mapToModel(PodcastEntity podcast, PodcastEngagementModel engagement) {
+        UserSimple userSimple = podcast.getUser() != null ? modelMapper.map(podcast.getUser(), UserSimple.class) : null;
+        if (engagement == null) {
+            engagement = new PodcastEngagementModel();
         }
 
         return new PodcastModel(
@@ -785,15 +704,16 @@ public class PodcastServiceImpl implements IPodcastService {
                 podcast.getViews(),
                 podcast.getDuration(),
 
-                podcast.getTotalLikes(),
-                podcast.getTotalComments(),
+                engagement.getTotalLikes(),
+                engagement.getTotalComments(),
                 podcast.getUser() != null ? podcast.getUser().getUsername() : null,
                 podcast.getCreatedDay(),
                 podcast.getLastEdited(),
                 podcast.isActive(),
-                isLiked,
-                podcast.getUser() != null ? userSimple : null,
-                podcast.getSolutionModelList()
+                engagement.isLiked(),
+                userSimple,
+                podcast.getSolutionModelList(),
+                podcast.getHlsUrl()
         );
     }
     @Override
@@ -820,19 +740,21 @@ public class PodcastServiceImpl implements IPodcastService {
     @Override
     public Page<PodcastModel> searchPodcasts(String keyword, Pageable pageable) {
         try {
-            // Sử dụng method có sẵn từ repository
+            // Lấy id đã xếp hạng từ index, chỉ đọc DB cho trang hiện tại
+            Optional<List<String>> hits = searchIndexService.search(SearchCategory.PODCAST, keyword);
+            if (hits.isPresent()) {
+                List<String> pageIds = pageOf(hits.get(), pageable);
+                List<PodcastEntity> podcasts = SearchIndexService.inRankOrder(pageIds,
+                        mongoTemplate.find(new Query(Criteria.where("_id").in(pageIds).and("isActive").is(true)), PodcastEntity.class),
+                        PodcastEntity::getId);
+                return new PageImpl<>(mapToModels(podcasts), pageable, hits.get().size());
+            }
+
+            // Index chưa dựng xong: dùng truy vấn regex cũ
             Page<PodcastEntity> podcastEntities = podcastRepository.searchPodcastByFields(keyword, pageable);
 
             // Convert entities to models
-            List<PodcastModel> podcastModels = podcastEntities.getContent().stream()
-                    .map(podcast -> {
-                        PodcastModel podcastModel = modelMapper.map(podcast, PodcastModel.class);
-                        podcastModel.setTotalComments(commentRepository.countByPodcastId(podcast.getId()));
-                        podcastModel.setTotalLikes(podcastLikeRepository.countByPodcastEntityId(podcast.getId()));
-                        podcastModel.setUsername(podcast.getUser().getUsername());
-                        return podcastModel;
-                    })
-                    .collect(Collectors.toList());
+            List<PodcastModel> podcastModels = mapToModels(podcastEntities.getContent());
 
             // Create new Page with converted content
             return new PageImpl<>(podcastModels, pageable, podcastEntities.getTotalElements());
@@ -843,6 +765,12 @@ public class PodcastServiceImpl implements IPodcastService {
         }
     }
 
+    private List<String> pageOf(List<String> ids, Pageable pageable) {
+        int start = (int) Math.min(pageable.getOffset(), ids.size());
+        int end = Math.min(start + pageable.getPageSize(), ids.size());
+        return ids.subList(start, end);
+    }
+
     private PodcastModel convertToPodcastModel(PodcastEntity entity) {
         PodcastModel model = new PodcastModel();
         model.setId(entity.getId());
@@ -856,6 +784,7 @@ public class PodcastServiceImpl implements IPodcastService {
         model.setTotalComments(entity.getTotalComments());
         model.setCreatedDay(entity.getCreatedDay());
         model.setLastEdited(entity.getLastEdited());
+        model.setHlsUrl(entity.getHlsUrl());
 
         // Nếu có UserEntity → UserSimple
         if (entity.getUser() != null) {
@@ -0,0 +1,158 @@
+package com.castify.backend.service.podcast;
+
+import com.castify.backend.entity.GenreEntity;
+import com.castify.backend.entity.PodcastEntity;
+import com.castify.backend.entity.UserEntity;
+import com.castify.backend.service.authenticatation.PrincipalCache;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gom lượt xem trong bộ nhớ rồi ghi xuống Mongo theo lô (bulkWrite) vài giây 1 lần,
+ * cập nhật suggested genres của người xem trong cùng lô thay vì 2 truy vấn cho mỗi lượt xem.
+ * Lượt xem chưa flush sẽ mất nếu process chết đột ngột (chấp nhận được với view count).
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PodcastViewBuffer {
+    private final MongoTemplate mongoTemplate;
+    private final TrendingPodcastService trendingPodcastService;
+    private final PrincipalCache principalCache;
+
+    // podcastId -> số lượt xem chưa ghi. merge/remove của ConcurrentHashMap khoá theo bin nên không mất lượt
+    private final ConcurrentHashMap<String, Long> pendingViews = new ConcurrentHashMap<>();
+    // userId -> các podcast đã xem trong lô hiện tại, để cập nhật suggested genres
+    private final ConcurrentHashMap<String, Set<String>> pendingUserViews = new ConcurrentHashMap<>();
+
+    public void recordView(String podcastId, String userId) {
+        pendingViews.merge(podcastId, 1L, Long::sum);
+        if (userId != null) {
+            pendingUserViews.compute(userId, (key, podcastIds) -> {
+                Set<String> result = podcastIds != null ? podcastIds : new HashSet<>();
+                result.add(podcastId);
+                return result;
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${podcast.views.flush-interval-ms:5000}")
+    public void flush() {
+        try {
+            flushViews();
+        } catch (Exception e) {
+            log.error("Error flushing podcast views", e);
+        }
+        try {
+            flushSuggestedGenres();
+        } catch (Exception e) {
+            log.error("Error flushing suggested genres", e);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void flushViews() {
+        Map<String, Long> batch = new HashMap<>();
+        for (String podcastId : pendingViews.keySet()) {
+            Long count = pendingViews.remove(podcastId);
+            if (count != null) {
+                batch.put(podcastId, count);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PodcastEntity.class);
+        batch.forEach((podcastId, count) -> bulkOps.updateOne(
+                new Query(Criteria.where("_id").is(podcastId)), new Update().inc("views", count)));
+        try {
+            bulkOps.execute();
+        } catch (Exception e) {
+            // Trả lại lượt xem để lần flush sau ghi tiếp
+            batch.forEach((podcastId, count) -> pendingViews.merge(podcastId, count, Long::sum));
+            throw e;
+        }
+        // 1 ZINCRBY cho mỗi podcast trong lô thay vì cho mỗi lượt xem
+        batch.forEach(trendingPodcastService::recordView);
+    }
+
+    private void flushSuggestedGenres() {
+        Map<String, Set<String>> batch = new HashMap<>();
+        for (String userId : pendingUserViews.keySet()) {
+            Set<String> podcastIds = pendingUserViews.remove(userId);
+            if (podcastIds != null) {
+                batch.put(userId, podcastIds);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // 1 truy vấn lấy genres của tất cả podcast trong lô
+        Set<String> podcastIds = new HashSet<>();
+        batch.values().forEach(podcastIds::addAll);
+        Query podcastQuery = new Query(Criteria.where("_id").in(podcastIds));
+        podcastQuery.fields().include("genres");
+        Map<String, List<String>> genresByPodcast = new HashMap<>();
+        for (PodcastEntity podcast : mongoTemplate.find(podcastQuery, PodcastEntity.class)) {
+            if (podcast.getGenres() != null) {
+                genresByPodcast.put(podcast.getId(), podcast.getGenres().stream().map(GenreEntity::getId).toList());
+            }
+        }
+
+        // 1 truy vấn lấy favoriteGenreIds của tất cả người xem
+        Query userQuery = new Query(Criteria.where("_id").in(batch.keySet()));
+        userQuery.fields().include("favoriteGenreIds");
+        Map<String, List<String>> favoritesByUser = new HashMap<>();
+        for (UserEntity user : mongoTemplate.find(userQuery, UserEntity.class)) {
+            favoritesByUser.put(user.getId(), user.getFavoriteGenreIds() != null ? user.getFavoriteGenreIds() : List.of());
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserEntity.class);
+        List<String> updatedUserIds = new ArrayList<>();
+        int operations = 0;
+        for (Map.Entry<String, Set<String>> entry : batch.entrySet()) {
+            List<String> favorites = favoritesByUser.get(entry.getKey());
+            if (favorites == null) {
+                continue;
+            }
+
+            // Bỏ những genre đã nằm trong favoriteGenreIds, $addToSet lo phần trùng với suggestedGenreIds
+            Set<String> newSuggestedGenres = new LinkedHashSet<>();
+            for (String podcastId : entry.getValue()) {
+                for (String genreId : genresByPodcast.getOrDefault(podcastId, List.of())) {
+                    if (!favorites.contains(genreId)) {
+                        newSuggestedGenres.add(genreId);
+                    }
+                }
+            }
+
+            if (!newSuggestedGenres.isEmpty()) {
+                bulkOps.updateOne(new Query(Criteria.where("_id").is(entry.getKey())),
+                        new Update().addToSet("suggestedGenreIds").each(newSuggestedGenres.toArray()));
+                updatedUserIds.add(entry.getKey());
+                operations++;
+            }
+        }
+        if (operations > 0) {
+            bulkOps.execute();
+            principalCache.invalidateAll(updatedUserIds);
+        }
+    }
+}
@@ -4,246 +4,320 @@ import com.castify.backend.entity.PodcastEntity;
 import com.castify.backend.entity.UserEntity;
 import com.castify.backend.models.PageDTO;
 import com.castify.backend.models.genre.GenreSimple;
+import com.castify.backend.models.podcast.PodcastEngagementModel;
 import com.castify.backend.models.podcast.PodcastModel;
 import com.castify.backend.models.user.UserSimple;
-import com.castify.backend.repository.PodcastLikeRepository;
 import com.castify.backend.repository.PodcastRepository;
 import com.castify.backend.utils.SecurityUtils;
+import com.mongodb.DBRef;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-
+import java.util.stream.Stream;
+
+/**
+ * Trending tính theo sự kiện: mỗi view/like/comment cộng điểm đã nhân hệ số suy giảm mũ
+ * vào 1 Redis sorted set (ZINCRBY, O(log n)), trang trending đọc bằng ZREVRANGE.
+ *
+ * Thay vì giảm điểm của mọi podcast theo thời gian, điểm của sự kiện mới được nhân 2^(t / halfLife)
+ * (forward decay). Để số mũ không tăng mãi, mỗi "generation" (7 ngày) dùng 1 key riêng và
+ * được khởi tạo từ key trước bằng ZUNIONSTORE với trọng số 2^(-7 ngày / halfLife).
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class TrendingPodcastService {
     private final PodcastRepository podcastRepository;
-    private final PodcastLikeRepository podcastLikeRepository;
+    private final IPodcastEngagementService podcastEngagementService;
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MongoTemplate mongoTemplate;
     private final ModelMapper modelMapper;
 
-    private static final String TRENDING_CACHE_KEY = "trending_podcasts";
-    private static final String TRENDING_LOCK_KEY = "trending_podcasts_lock";
-    private static final int TRENDING_LIMIT = 100;
+    private static final String TRENDING_KEY_PREFIX = "trending_podcasts:";
+    private static final String TRENDING_MODEL_KEY_PREFIX = "trending_podcast_model:";
+    private static final String TRENDING_MIGRATE_LOCK_PREFIX = "trending_podcasts_migrate:";
+    private static final String TRENDING_BACKFILL_LOCK_KEY = "trending_podcasts_backfill_lock";
+    private static final long GENERATION_MILLIS = Duration.ofDays(7).toMillis();
+    private static final int MAX_GENERATION_LOOKBACK = 4;
+    private static final Duration MODEL_CACHE_TTL = Duration.ofMinutes(1);
+
+    private static final double VIEW_WEIGHT = 1.0;
+    private static final double LIKE_WEIGHT = 5.0;
+    private static final double COMMENT_WEIGHT = 8.0;
+    private static final double MIN_SCORE = 0.01; // Dưới ngưỡng này coi như đã hết trending
+
+    @Value("${trending.half-life-hours:24}")
+    private double halfLifeHours;
+
+    private volatile long preparedGeneration = -1;
 
     public PageDTO<PodcastModel> getTrendingPodcasts(int page, int size) {
-        // Kiểm tra cache trước
-        List<PodcastModel> cachedTrending = getCachedTrendingPodcasts();
+        String key = currentKey();
+        ZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
 
-        if (cachedTrending == null || cachedTrending.isEmpty()) {
-            log.info("Cache miss - calculating trending podcasts");
-            cachedTrending = calculateAndCacheTrendingPodcasts();
+        long start = (long) page * size;
+        Set<String> podcastIds = zSet.reverseRange(key, start, start + size - 1);
+        Long total = zSet.zCard(key);
+        long totalElements = total != null ? total : 0;
+        int totalPages = (int) ((totalElements + size - 1) / size);
+
+        if (podcastIds == null || podcastIds.isEmpty()) {
+            return new PageDTO<>(Collections.emptyList(), size, page, totalPages, totalElements);
         }
 
-        // Phân trang từ cache
-        return paginateResults(cachedTrending, page, size);
+        List<PodcastModel> pageContent = loadModels(new ArrayList<>(podcastIds));
+        applyLikedOverlay(pageContent);
+        return new PageDTO<>(pageContent, size, page, totalPages, totalElements);
     }
 
-    @SuppressWarnings("unchecked")
-    private List<PodcastModel> getCachedTrendingPodcasts() {
-        try {
-            Object cached = redisTemplate.opsForValue().get(TRENDING_CACHE_KEY);
-            return cached != null ? (List<PodcastModel>) cached : null;
-        } catch (Exception e) {
-            log.error("Error getting cached trending podcasts: {}", e.getMessage());
-            // Xóa cache bị lỗi
-            try {
-                redisTemplate.delete(TRENDING_CACHE_KEY);
-            } catch (Exception deleteError) {
-                log.error("Error deleting corrupted cache", deleteError);
-            }
-            return null;
+    /**
+     * Cache chỉ chứa dữ liệu dùng chung, isLiked của người đang xem được điền riêng cho từng request
+     * bằng 1 truy vấn cho cả trang.
+     */
+    private void applyLikedOverlay(List<PodcastModel> pageContent) {
+        if (pageContent.isEmpty() || !SecurityUtils.isAuthenticated()) {
+            return;
+        }
+        UserEntity auth = SecurityUtils.getCurrentUser();
+        Set<String> likedIds = podcastEngagementService.getLikedPodcastIds(
+                pageContent.stream().map(PodcastModel::getId).toList(), auth.getId());
+        for (PodcastModel model : pageContent) {
+            model.setLiked(likedIds.contains(model.getId()));
         }
     }
 
-    private List<PodcastModel> calculateAndCacheTrendingPodcasts() {
-        // Lấy 100 podcast có tương tác gần đây nhất
-        List<PodcastEntity> recentPodcasts = getRecentInteractivePodcasts();
+    public void recordView(String podcastId, long count) {
+        increment(podcastId, VIEW_WEIGHT * count, System.currentTimeMillis());
+    }
 
-        // Tính score và sắp xếp
-        List<PodcastModel> trendingPodcasts = calculateTrendingScores(recentPodcasts);
+    public void recordLike(String podcastId) {
+        increment(podcastId, LIKE_WEIGHT, System.currentTimeMillis());
+    }
 
-        // Cache kết quả
-        cacheTrendingPodcasts(trendingPodcasts);
+    public void recordComment(String podcastId) {
+        increment(podcastId, COMMENT_WEIGHT, System.currentTimeMillis());
+    }
 
-        return trendingPodcasts;
+    // Gỡ podcast bị ẩn/xoá khỏi trending
+    public void remove(Collection<String> podcastIds) {
+        if (podcastIds.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().remove(currentKey(), podcastIds.toArray());
+            redisTemplate.delete(podcastIds.stream().map(id -> TRENDING_MODEL_KEY_PREFIX + id).toList());
+        } catch (Exception e) {
+            log.error("Error removing podcasts from trending: {}", e.getMessage());
+        }
     }
 
-    private List<PodcastEntity> getRecentInteractivePodcasts() {
-        LocalDateTime last7Days = LocalDateTime.now().minusDays(7);
+    private void increment(String podcastId, double weight, long timestamp) {
+        try {
+            long generation = timestamp / GENERATION_MILLIS;
+            prepareGeneration(generation);
+            stringRedisTemplate.opsForZSet().incrementScore(keyOf(generation), podcastId, weight * boost(timestamp, generation));
+        } catch (Exception e) {
+            // Trending không được làm hỏng thao tác chính (xem, like, comment)
+            log.error("Error updating trending score for podcast {}: {}", podcastId, e.getMessage());
+        }
+    }
 
-        // Đơn giản hơn: lấy podcast theo views và created date
-        Pageable pageable = PageRequest.of(0, TRENDING_LIMIT,
-                Sort.by(Sort.Direction.DESC, "views", "createdDay"));
+    // Hệ số 2^(thời gian từ đầu generation / halfLife)
+    private double boost(long timestamp, long generation) {
+        double halfLifeMillis = halfLifeHours * 3_600_000d;
+        return Math.pow(2, (timestamp - generation * GENERATION_MILLIS) / halfLifeMillis);
+    }
 
-        Page<PodcastEntity> podcasts = podcastRepository.findAllByIsActiveTrue(pageable);
+    private String currentKey() {
+        long generation = System.currentTimeMillis() / GENERATION_MILLIS;
+        prepareGeneration(generation);
+        return keyOf(generation);
+    }
 
-        // Filter podcasts có tương tác gần đây
-        return podcasts.getContent().stream()
-                .filter(podcast -> hasRecentInteraction(podcast, last7Days))
-                .collect(Collectors.toList());
+    private String keyOf(long generation) {
+        return TRENDING_KEY_PREFIX + generation;
     }
 
-    private boolean hasRecentInteraction(PodcastEntity podcast, LocalDateTime since) {
-        // Check likes gần đây
-        boolean hasRecentLikes = podcast.getLikes() != null &&
-                podcast.getLikes().stream()
-                        .anyMatch(like -> like.getTimestamp().isAfter(since));
+    /**
+     * Chuyển điểm từ generation cũ sang generation mới (chỉ 1 instance làm nhờ SETNX).
+     * Sự kiện ghi vào key mới trước khi chuyển vẫn được giữ vì ZUNIONSTORE cộng cả key đích.
+     */
+    private void prepareGeneration(long generation) {
+        if (generation <= preparedGeneration) {
+            return;
+        }
 
-        // Check comments gần đây
-        boolean hasRecentComments = podcast.getComments() != null &&
-                podcast.getComments().stream()
-                        .anyMatch(comment -> comment.getTimestamp().isAfter(since));
+        Boolean acquired = stringRedisTemplate.opsForValue()
+                .setIfAbsent(TRENDING_MIGRATE_LOCK_PREFIX + generation, "1", Duration.ofMillis(GENERATION_MILLIS * 2));
+        if (Boolean.TRUE.equals(acquired)) {
+            String key = keyOf(generation);
+            for (int back = 1; back <= MAX_GENERATION_LOOKBACK; back++) {
+                String previousKey = keyOf(generation - back);
+                if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(previousKey))) {
+                    double factor = 1 / boost(generation * GENERATION_MILLIS, generation - back);
+                    stringRedisTemplate.opsForZSet().unionAndStore(key, List.of(previousKey), key,
+                            Aggregate.SUM, Weights.of(1, factor));
+                    stringRedisTemplate.opsForZSet().removeRangeByScore(key, Double.NEGATIVE_INFINITY, MIN_SCORE);
+                    stringRedisTemplate.delete(previousKey);
+                    log.info("Moved trending scores from generation {} to {}", generation - back, generation);
+                    break;
+                }
+            }
+        }
+        preparedGeneration = generation;
+    }
 
-        // Hoặc podcast được tạo gần đây
-        boolean isRecentlyCreated = podcast.getCreatedDay().isAfter(since);
+    // Lấy model đã cache cho từng podcast, chỉ load từ Mongo những podcast chưa có trong cache
+    private List<PodcastModel> loadModels(List<String> podcastIds) {
+        List<Object> cached = redisTemplate.opsForValue()
+                .multiGet(podcastIds.stream().map(id -> TRENDING_MODEL_KEY_PREFIX + id).toList());
+
+        Map<String, PodcastModel> models = new HashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        for (int i = 0; i < podcastIds.size(); i++) {
+            Object model = cached != null ? cached.get(i) : null;
+            if (model instanceof PodcastModel podcastModel) {
+                models.put(podcastIds.get(i), podcastModel);
+            } else {
+                missingIds.add(podcastIds.get(i));
+            }
+        }
 
-        return hasRecentLikes || hasRecentComments || isRecentlyCreated;
-    }
+        if (!missingIds.isEmpty()) {
+            Set<String> staleIds = new HashSet<>(missingIds);
+            // Số like/comment lấy 1 lần cho các podcast còn thiếu, không phụ thuộc người xem
+            Map<String, PodcastEngagementModel> engagements = podcastEngagementService.getEngagement(missingIds, null);
+            for (PodcastEntity podcast : podcastRepository.findAllById(missingIds)) {
+                if (!podcast.isActive()) {
+                    continue;
+                }
+                PodcastModel model = mapToModel(podcast, engagements.get(podcast.getId()));
+                models.put(podcast.getId(), model);
+                staleIds.remove(podcast.getId());
+                try {
+                    redisTemplate.opsForValue().set(TRENDING_MODEL_KEY_PREFIX + podcast.getId(), model, MODEL_CACHE_TTL);
+                } catch (Exception e) {
+                    log.error("Error caching trending podcast {}: {}", podcast.getId(), e.getMessage());
+                }
+            }
+            // Podcast đã bị xoá hoặc ẩn thì gỡ khỏi trending
+            remove(staleIds);
+        }
 
-    private List<PodcastModel> calculateTrendingScores(List<PodcastEntity> podcasts) {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime last24Hours = now.minusHours(24);
-        LocalDateTime last7Days = now.minusDays(7);
-
-        return podcasts.stream()
-                .map(podcast -> {
-                    // Tính các metrics
-                    long views = podcast.getViews();
-
-                    long likes24h = podcast.getLikes() == null ? 0 :
-                            podcast.getLikes().stream()
-                                    .filter(like -> like.getTimestamp().isAfter(last24Hours))
-                                    .count();
-
-                    long comments24h = podcast.getComments() == null ? 0 :
-                            podcast.getComments().stream()
-                                    .filter(comment -> comment.getTimestamp().isAfter(last24Hours))
-                                    .count();
-
-                    long likes7d = podcast.getLikes() == null ? 0 :
-                            podcast.getLikes().stream()
-                                    .filter(like -> like.getTimestamp().isAfter(last7Days))
-                                    .count();
-
-                    long comments7d = podcast.getComments() == null ? 0 :
-                            podcast.getComments().stream()
-                                    .filter(comment -> comment.getTimestamp().isAfter(last7Days))
-                                    .count();
-
-                    // Tính score với trọng số khác nhau
-                    double score = calculateTrendingScore(views, likes24h, comments24h, likes7d, comments7d);
-
-                    PodcastModel model = mapToModel(podcast);
-
-                    return new AbstractMap.SimpleEntry<>(model, score);
-                })
-                .sorted((a, b) -> Double.compare(b.getValue(), a.getValue()))
-                .map(Map.Entry::getKey)
+        return podcastIds.stream()
+                .map(models::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
-    private double calculateTrendingScore(long views, long likes24h, long comments24h,
-                                          long likes7d, long comments7d) {
-        // Weighted scoring algorithm
-        double viewsWeight = 1.0;
-        double likes24hWeight = 5.0;
-        double comments24hWeight = 8.0;
-        double likes7dWeight = 2.0;
-        double comments7dWeight = 3.0;
-
-        // Time decay factor (newer interactions có trọng số cao hơn)
-        double timeDecayFactor = 1.2;
-
-        return (views * viewsWeight) +
-                (likes24h * likes24hWeight * timeDecayFactor) +
-                (comments24h * comments24hWeight * timeDecayFactor) +
-                (likes7d * likes7dWeight) +
-                (comments7d * comments7dWeight);
-    }
-
-    private void cacheTrendingPodcasts(List<PodcastModel> trendingPodcasts) {
+    /**
+     * Lần đầu chạy (chưa có sorted set) thì dựng điểm ban đầu từ Mongo:
+     * views tính tại thời điểm tạo podcast, like/comment 7 ngày gần đây tính tại thời điểm của chúng.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void backfillIfEmpty() {
         try {
-            redisTemplate.opsForValue().set(
-                    TRENDING_CACHE_KEY,
-                    trendingPodcasts,
-                    Duration.ofMinutes(1)
-            );
-            log.info("Cached {} trending podcasts", trendingPodcasts.size());
+            long generation = System.currentTimeMillis() / GENERATION_MILLIS;
+            for (int back = 0; back <= MAX_GENERATION_LOOKBACK; back++) {
+                if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(keyOf(generation - back)))) {
+                    return;
+                }
+            }
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(TRENDING_BACKFILL_LOCK_KEY, "1", Duration.ofMinutes(30));
+            if (!Boolean.TRUE.equals(acquired)) {
+                return;
+            }
+
+            log.info("Backfilling trending scores from Mongo");
+            Map<String, Double> scores = new HashMap<>();
+
+            Query podcastQuery = new Query(Criteria.where("isActive").is(true));
+            podcastQuery.fields().include("views").include("createdDay");
+            streamDocuments(podcastQuery, mongoTemplate.getCollectionName(PodcastEntity.class), podcast -> {
+                Date createdDay = podcast.getDate("createdDay");
+                long timestamp = createdDay != null ? createdDay.getTime() : 0;
+                Number views = (Number) podcast.get("views");
+                if (views != null) {
+                    scores.merge(podcast.get("_id").toString(),
+                            views.longValue() * VIEW_WEIGHT * boost(timestamp, generation), Double::sum);
+                }
+            });
+
+            Date since = Date.from(LocalDateTime.now().minusDays(7).atZone(ZoneId.systemDefault()).toInstant());
+            backfillEvents("podcastLike", "podcastEntity", LIKE_WEIGHT, since, generation, scores);
+            backfillEvents("comment", "podcast", COMMENT_WEIGHT, since, generation, scores);
+
+            ZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
+            String key = keyOf(generation);
+            scores.forEach((podcastId, score) -> {
+                if (score >= MIN_SCORE) {
+                    zSet.incrementScore(key, podcastId, score);
+                }
+            });
+            log.info("Backfilled trending scores for {} podcasts", scores.size());
         } catch (Exception e) {
-            log.error("Error caching trending podcasts", e);
+            log.error("Error backfilling trending scores", e);
         }
     }
 
-    private PageDTO<PodcastModel> paginateResults(List<PodcastModel> allResults, int page, int size) {
-        int startIndex = page * size;
-        int endIndex = Math.min(startIndex + size, allResults.size());
+    private void backfillEvents(String collection, String podcastField, double weight, Date since,
+                                long generation, Map<String, Double> scores) {
+        Query query = new Query(Criteria.where("timestamp").gte(since));
+        query.fields().include(podcastField).include("timestamp");
+        streamDocuments(query, collection, event -> {
+            String podcastId = refId(event.get(podcastField));
+            Date timestamp = event.getDate("timestamp");
+            if (podcastId != null && timestamp != null) {
+                scores.merge(podcastId, weight * boost(timestamp.getTime(), generation), Double::sum);
+            }
+        });
+    }
 
-        if (startIndex >= allResults.size()) {
-            return new PageDTO<>(
-                    Collections.emptyList(), size, page,
-                    (allResults.size() + size - 1) / size, allResults.size()
-            );
+    private void streamDocuments(Query query, String collection, Consumer<Document> consumer) {
+        try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+            documents.forEach(consumer);
         }
-
-        List<PodcastModel> pageContent = allResults.subList(startIndex, endIndex);
-        int totalPages = (allResults.size() + size - 1) / size;
-
-        return new PageDTO<>(
-                pageContent, size, page, totalPages, allResults.size()
-        );
     }
 
-    // Scheduled method để update cache
-    @Scheduled(fixedRate = 60000) // 1 phút
-    @Async
-    public void updateTrendingPodcastsCache() {
-        // Sử dụng distributed lock để tránh multiple instances chạy cùng lúc
-        String lockValue = UUID.randomUUID().toString();
-        Boolean lockAcquired = redisTemplate.opsForValue()
-                .setIfAbsent(TRENDING_LOCK_KEY, lockValue, Duration.ofMinutes(5));
-
-        if (Boolean.TRUE.equals(lockAcquired)) {
-            try {
-//                log.info("Starting scheduled trending podcasts cache update");
-                calculateAndCacheTrendingPodcasts();
-//                log.info("Completed scheduled trending podcasts cache update");
-            } catch (Exception e) {
-                log.error("Error updating trending podcasts cache", e);
-            } finally {
-                // Release lock
-                String currentLock = (String) redisTemplate.opsForValue().get(TRENDING_LOCK_KEY);
-                if (lockValue.equals(currentLock)) {
-                    redisTemplate.delete(TRENDING_LOCK_KEY);
-                }
-            }
-        } else {
-            log.info("Trending cache update already in progress, skipping");
+    private String refId(Object ref) {
+        if (ref instanceof DBRef dbRef) {
+            return dbRef.getId().toString();
+        }
+        if (ref instanceof Document document && document.get("$id") != null) {
+            return document.get("$id").toString();
         }
+        return null;
     }
 
-    private PodcastModel mapToModel(PodcastEntity podcast) {
-        UserSimple userSimple = modelMapper.map(podcast.getUser(), UserSimple.class);
-        boolean isLiked = false;
-
-        if (SecurityUtils.isAuthenticated()) {
-            UserEntity auth = SecurityUtils.getCurrentUser();
-            isLiked = podcastLikeRepository.existsByUserEntityIdAndPodcastEntityId(
-                    auth.getId(), podcast.getId());
+    // Chỉ chứa dữ liệu dùng chung cho mọi người xem (isLiked luôn false, được overlay sau)
+    private PodcastModel mapToModel(PodcastEntity podcast, PodcastEngagementModel engagement) {
+        UserSimple userSimple = podcast.getUser() != null ? modelMapper.map(podcast.getUser(), UserSimple.class) : null;
+        if (engagement == null) {
+            engagement = new PodcastEngagementModel();
         }
 
         return new PodcastModel(
@@ -257,15 +331,16 @@ public class TrendingPodcastService {
                         .collect(Collectors.toList()) : new ArrayList<>(),
                 podcast.getViews(),
                 podcast.getDuration(),
-                podcast.getTotalLikes(),
-                podcast.getTotalComments(),
+                engagement.getTotalLikes(),
+                engagement.getTotalComments(),
                 podcast.getUser() != null ? podcast.getUser().getUsername() : null,
                 podcast.getCreatedDay(),
                 podcast.getLastEdited(),
                 podcast.isActive(),
-                isLiked,
-                podcast.getUser() != null ? userSimple : null,
-                podcast.getSolutionModelList()
+                false,
+                userSimple,
+                podcast.getSolutionModelList(),
+                podcast.getHlsUrl()
         );
     }
 }
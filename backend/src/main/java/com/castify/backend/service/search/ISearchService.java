@@ -11,6 +11,9 @@ public interface ISearchService {
     // Main search
     SearchResultModel search(String keyword, String userId);
 
+    // Ghi lịch sử tìm kiếm (không cache, gọi cả khi kết quả search lấy từ cache)
+    void recordSearch(String keyword, String userId);
+
     // Get recent search history & trending
     List<SearchKeywordModel> getRecentHistory(String userId);
     List<SearchKeywordModel> getTrendingKeywords();
@@ -0,0 +1,223 @@
+package com.castify.backend.service.search;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index trong bộ nhớ cho 1 loại tài liệu, xếp hạng BM25.
+ * Mỗi từ trong câu tìm kiếm được mở rộng sang các từ có cùng tiền tố và các từ gõ sai 1-2 ký tự.
+ */
+class InvertedIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_WEIGHT = 0.7;
+    private static final double FUZZY_WEIGHT = 0.5;
+    private static final int MAX_PREFIX_EXPANSIONS = 50;
+    private static final int MAX_FUZZY_EXPANSIONS = 50;
+
+    // term -> (docId -> tần suất đã nhân boost của field), sắp theo term để tra tiền tố
+    private final TreeMap<String, Map<String, Double>> postings = new TreeMap<>();
+    private final Map<String, Map<String, Double>> termsByDoc = new HashMap<>();
+    private final Map<String, Double> lengthByDoc = new HashMap<>();
+    // (ký tự đầu, độ dài) -> các term, để tìm từ gõ sai chỉ duyệt các term có độ dài gần với từ cần tìm
+    private final Map<Long, Set<String>> termsByBucket = new HashMap<>();
+    private double totalLength;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void upsert(String docId, Map<String, Double> terms) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(docId);
+            if (terms.isEmpty()) {
+                return;
+            }
+
+            double length = 0;
+            for (Map.Entry<String, Double> term : terms.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), t -> {
+                    termsByBucket.computeIfAbsent(bucketKey(t.charAt(0), t.length()), key -> new HashSet<>()).add(t);
+                    return new HashMap<>();
+                }).put(docId, term.getValue());
+                length += term.getValue();
+            }
+            termsByDoc.put(docId, terms);
+            lengthByDoc.put(docId, length);
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String docId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(docId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return termsByDoc.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Trả về id tài liệu theo điểm giảm dần. Tài liệu khớp nhiều từ hơn được ưu tiên.
+     */
+    List<String> search(List<String> queryTerms, int limit) {
+        lock.readLock().lock();
+        try {
+            int docCount = termsByDoc.size();
+            Set<String> distinctTerms = new LinkedHashSet<>(queryTerms);
+            if (docCount == 0 || distinctTerms.isEmpty()) {
+                return List.of();
+            }
+
+            double avgLength = totalLength / docCount;
+            Map<String, Double> scores = new HashMap<>();
+            Map<String, Integer> matchedTerms = new HashMap<>();
+            for (String queryTerm : distinctTerms) {
+                // Mỗi tài liệu chỉ lấy điểm cao nhất trong các biến thể của cùng 1 từ
+                Map<String, Double> termScores = new HashMap<>();
+                for (Map.Entry<String, Double> expansion : expand(queryTerm).entrySet()) {
+                    Map<String, Double> docs = postings.get(expansion.getKey());
+                    double idf = Math.log(1 + (docCount - docs.size() + 0.5) / (docs.size() + 0.5));
+                    for (Map.Entry<String, Double> doc : docs.entrySet()) {
+                        double tf = doc.getValue();
+                        double lengthNorm = 1 - B + B * lengthByDoc.get(doc.getKey()) / avgLength;
+                        double score = expansion.getValue() * idf * tf * (K1 + 1) / (tf + K1 * lengthNorm);
+                        termScores.merge(doc.getKey(), score, Math::max);
+                    }
+                }
+                termScores.forEach((docId, score) -> {
+                    scores.merge(docId, score, Double::sum);
+                    matchedTerms.merge(docId, 1, Integer::sum);
+                });
+            }
+
+            int termCount = distinctTerms.size();
+            return scores.entrySet().stream()
+                    .sorted(Comparator.comparingDouble(
+                            (Map.Entry<String, Double> entry) -> entry.getValue() * matchedTerms.get(entry.getKey()) / termCount
+                    ).reversed())
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(String docId) {
+        Map<String, Double> terms = termsByDoc.remove(docId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms.keySet()) {
+            Map<String, Double> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(docId);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                    removeFromBucket(term);
+                }
+            }
+        }
+        totalLength -= lengthByDoc.remove(docId);
+    }
+
+    private void removeFromBucket(String term) {
+        long key = bucketKey(term.charAt(0), term.length());
+        Set<String> bucket = termsByBucket.get(key);
+        if (bucket != null) {
+            bucket.remove(term);
+            if (bucket.isEmpty()) {
+                termsByBucket.remove(key);
+            }
+        }
+    }
+
+    private static long bucketKey(char first, int length) {
+        return ((long) first << 32) | length;
+    }
+
+    // Từ khớp chính xác, các từ bắt đầu bằng queryTerm và các từ sai ít ký tự, kèm trọng số
+    private Map<String, Double> expand(String queryTerm) {
+        Map<String, Double> expansions = new LinkedHashMap<>();
+        if (postings.containsKey(queryTerm)) {
+            expansions.put(queryTerm, 1.0);
+        }
+
+        if (queryTerm.length() >= 2) {
+            int added = 0;
+            for (String term : postings.subMap(queryTerm, false, queryTerm + Character.MAX_VALUE, false).keySet()) {
+                if (added++ >= MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                expansions.put(term, PREFIX_WEIGHT);
+            }
+        }
+
+        int maxEdits = queryTerm.length() >= 8 ? 2 : queryTerm.length() >= 4 ? 1 : 0;
+        if (maxEdits > 0) {
+            // Chỉ so với các từ cùng ký tự đầu và độ dài lệch không quá maxEdits để giới hạn số từ phải tính khoảng cách
+            char first = queryTerm.charAt(0);
+            int added = 0;
+            for (int length = queryTerm.length() - maxEdits; length <= queryTerm.length() + maxEdits; length++) {
+                Set<String> bucket = termsByBucket.get(bucketKey(first, length));
+                if (bucket == null) {
+                    continue;
+                }
+                for (String term : bucket) {
+                    if (added >= MAX_FUZZY_EXPANSIONS) {
+                        return expansions;
+                    }
+                    if (!expansions.containsKey(term) && withinEditDistance(queryTerm, term, maxEdits)) {
+                        expansions.put(term, FUZZY_WEIGHT);
+                        added++;
+                    }
+                }
+            }
+        }
+        return expansions;
+    }
+
+    // Levenshtein dừng sớm khi cả hàng đã vượt maxEdits
+    private static boolean withinEditDistance(String a, String b, int maxEdits) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= maxEdits;
+    }
+}
@@ -0,0 +1,221 @@
+package com.castify.backend.service.search;
+
+import com.castify.backend.entity.SearchHistoryEntity;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ghi lịch sử tìm kiếm ngoài luồng request: mỗi lần tìm chỉ đưa vào hàng đợi,
+ * flusher chạy nền gộp theo (userId, normalizedKeyword) rồi upsert theo lô bằng $inc/$set.
+ * Sau khi ghi xong mới cộng vào gợi ý và trending.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SearchHistoryRecorder {
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final String UNIQUE_INDEX_NAME = "user_keyword_unique_idx";
+
+    private final MongoTemplate mongoTemplate;
+    private final CacheManager cacheManager;
+    private final SearchSuggestionService suggestionService;
+    private final TrendingKeywordService trendingKeywordService;
+
+    @Value("${search.history.max-pending:100000}")
+    private int maxPending;
+
+    private final Queue<SearchEvent> pendingEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    public void record(String userId, String keyword, String normalizedKeyword) {
+        if (userId == null || normalizedKeyword == null || normalizedKeyword.isEmpty()) {
+            return;
+        }
+        // Mongo chậm/lỗi lâu thì bỏ bớt, không để hàng đợi chiếm hết bộ nhớ
+        if (pendingCount.get() >= maxPending) {
+            log.warn("Search history queue is full, dropping search of user {}", userId);
+            return;
+        }
+        enqueue(new SearchEvent(userId, keyword, normalizedKeyword, 1, LocalDateTime.now()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void ensureIndexes() {
+        try {
+            mergeDuplicates();
+            // Bỏ qua bản ghi cũ không có normalizedKeyword (saveKeyword trước đây)
+            mongoTemplate.indexOps(SearchHistoryEntity.class).ensureIndex(new Index()
+                    .on("userId", Sort.Direction.ASC)
+                    .on("normalizedKeyword", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("normalizedKeyword").exists(true)))
+                    .named(UNIQUE_INDEX_NAME));
+        } catch (Exception e) {
+            log.error("Error ensuring search history indexes", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.history.flush-interval-ms:1000}")
+    public void flush() {
+        // Gộp các lần tìm trùng (userId, normalizedKeyword) thành 1 upsert
+        Map<String, SearchEvent> merged = new LinkedHashMap<>();
+        SearchEvent event;
+        int polled = 0;
+        while (merged.size() < MAX_BATCH_SIZE && (event = pendingEvents.poll()) != null) {
+            pendingCount.decrementAndGet();
+            polled++;
+            merged.merge(event.userId() + '|' + event.normalizedKeyword(), event, SearchEvent::merge);
+        }
+
+        if (!merged.isEmpty()) {
+            upsert(new ArrayList<>(merged.values()), polled);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        while (pendingCount.get() > 0) {
+            int before = pendingCount.get();
+            flush();
+            if (pendingCount.get() >= before) {
+                break; // Mongo lỗi, không lặp vô hạn khi tắt
+            }
+        }
+    }
+
+    private void upsert(List<SearchEvent> batch, int searches) {
+        List<SearchEvent> applied = new ArrayList<>(batch);
+        try {
+            BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SearchHistoryEntity.class);
+            for (SearchEvent event : batch) {
+                Query query = new Query(Criteria.where("userId").is(event.userId())
+                        .and("normalizedKeyword").is(event.normalizedKeyword()));
+                Update update = new Update()
+                        .inc("searchCount", event.count())
+                        .set("keyword", event.keyword())
+                        .max("lastSearched", event.lastSearched())
+                        .setOnInsert("timeStamp", event.lastSearched());
+                bulkOps.upsert(query, update);
+            }
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // Chỉ ghi lại các upsert lỗi (vd. trùng key khi 2 node cùng insert, lần sau sẽ thành update),
+            // upsert đã áp dụng thì không ghi lại vì $inc không idempotent
+            e.getErrors().forEach(error -> {
+                SearchEvent failed = batch.get(error.getIndex());
+                applied.remove(failed);
+                enqueue(failed);
+            });
+            log.error("Failed to upsert {} of {} search history entries", e.getErrors().size(), batch.size());
+        } catch (Exception e) {
+            batch.forEach(this::enqueue);
+            log.error("Failed to upsert {} search history entries, will retry", batch.size(), e);
+            return;
+        }
+
+        Set<String> userIds = new HashSet<>();
+        Map<String, SearchEvent> byKeyword = new LinkedHashMap<>();
+        for (SearchEvent event : applied) {
+            userIds.add(event.userId());
+            byKeyword.merge(event.normalizedKeyword(), event, SearchEvent::merge);
+        }
+        byKeyword.values().forEach(event -> {
+            suggestionService.recordSearch(event.normalizedKeyword(), event.keyword(), event.count());
+            trendingKeywordService.record(event.normalizedKeyword(), event.keyword(), event.count());
+        });
+
+        // Lịch sử gần đây của các user vừa tìm đã thay đổi
+        Cache recentHistory = cacheManager.getCache("recentHistory");
+        if (recentHistory != null) {
+            try {
+                userIds.forEach(recentHistory::evict);
+            } catch (Exception e) {
+                log.warn("Failed to evict recent history cache: {}", e.getMessage());
+            }
+        }
+        log.debug("Recorded {} searches as {} search history upserts", searches, applied.size());
+    }
+
+    private void enqueue(SearchEvent event) {
+        pendingEvents.add(event);
+        pendingCount.incrementAndGet();
+    }
+
+    /**
+     * Dữ liệu cũ có thể có nhiều bản ghi cho cùng (userId, normalizedKeyword): gộp lại trước khi tạo unique index.
+     */
+    private void mergeDuplicates() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("normalizedKeyword").exists(true)),
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "lastSearched")),
+                Aggregation.group("userId", "normalizedKeyword")
+                        .push("_id").as("ids")
+                        .sum("searchCount").as("count")
+                        .last("keyword").as("keyword")
+                        .max("lastSearched").as("lastSearched")
+                        .min("timeStamp").as("timeStamp"),
+                Aggregation.match(Criteria.where("ids.1").exists(true))
+        ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+        int merged = 0;
+        for (Document duplicate : mongoTemplate.aggregate(aggregation, SearchHistoryEntity.class, Document.class)) {
+            List<?> ids = duplicate.getList("ids", Object.class);
+            Number count = (Number) duplicate.get("count");
+            Object keep = ids.get(ids.size() - 1);
+
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(keep)), new Update()
+                    .set("searchCount", count != null ? count.intValue() : 1)
+                    .set("keyword", duplicate.get("keyword"))
+                    .set("lastSearched", duplicate.get("lastSearched"))
+                    .set("timeStamp", duplicate.get("timeStamp")), SearchHistoryEntity.class);
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(ids.subList(0, ids.size() - 1))),
+                    SearchHistoryEntity.class);
+            merged++;
+        }
+        if (merged > 0) {
+            log.info("Merged {} duplicated search history keywords", merged);
+        }
+    }
+
+    private record SearchEvent(String userId, String keyword, String normalizedKeyword, long count,
+                               LocalDateTime lastSearched) {
+        // Giữ cách viết của lần tìm gần nhất
+        SearchEvent merge(SearchEvent other) {
+            SearchEvent latest = other.lastSearched().isBefore(lastSearched) ? this : other;
+            return new SearchEvent(userId, latest.keyword(), normalizedKeyword, count + other.count(),
+                    latest.lastSearched());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.castify.backend.service.search;
+
+import com.castify.backend.entity.PlaylistEntity;
+import com.castify.backend.entity.PodcastEntity;
+import com.castify.backend.entity.UserEntity;
+import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
+import com.castify.backend.enums.SearchCategory;
+import com.castify.backend.models.search.SearchIndexChange;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Index tìm kiếm full-text trong bộ nhớ cho podcast, user, playlist và phòng watch party.
+ * Dựng lại toàn bộ khi khởi động và định kỳ; giữa các lần dựng thì cập nhật theo event save/delete của Mongo.
+ * Ghi từng phần (updateFirst/findAndModify) không sinh event, nơi ghi field được index phải gọi {@link #refresh}.
+ * Khi index của 1 loại chưa dựng xong, search trả về empty để service dùng truy vấn cũ.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SearchIndexService {
+    private static final String CHANGE_CHANNEL = "search_index_changed";
+    private static final int MAX_HITS = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final IBrokerRelayService brokerRelayService;
+
+    private final Map<SearchCategory, InvertedIndex> indexes = new ConcurrentHashMap<>();
+    // Index đang dựng lại, thay đổi trong lúc dựng được ghi vào cả 2
+    private final Map<SearchCategory, InvertedIndex> rebuilding = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribeChanges() {
+        brokerRelayService.subscribe(CHANGE_CHANNEL, SearchIndexChange.class, this::onRemoteChange);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onStartup() {
+        rebuildAll();
+    }
+
+    @Scheduled(cron = "${search.index.rebuild-cron:0 15 4 * * *}")
+    public void rebuildAll() {
+        for (SearchCategory category : SearchCategory.values()) {
+            rebuild(category);
+        }
+    }
+
+    /**
+     * Id tài liệu khớp keyword theo thứ tự liên quan, empty nếu index chưa sẵn sàng.
+     */
+    public Optional<List<String>> search(SearchCategory category, String keyword) {
+        InvertedIndex index = indexes.get(category);
+        if (index == null) {
+            return Optional.empty();
+        }
+        return Optional.of(index.search(SearchTextAnalyzer.tokenize(keyword), MAX_HITS));
+    }
+
+    /**
+     * Sắp lại kết quả đọc từ DB theo thứ tự của index, bỏ các id không còn trong DB.
+     */
+    public static <T> List<T> inRankOrder(List<String> rankedIds, Collection<T> items, Function<T, String> idOf) {
+        Map<String, T> itemsById = new HashMap<>();
+        for (T item : items) {
+            itemsById.put(idOf.apply(item), item);
+        }
+        return rankedIds.stream()
+                .map(itemsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        Object entity = event.getSource();
+        SearchCategory category = categoryOf(entity.getClass());
+        if (category == null) {
+            return;
+        }
+        String id = idOf(entity);
+        apply(category, id, entity);
+        brokerRelayService.publish(CHANGE_CHANNEL, new SearchIndexChange(category, id));
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        SearchCategory category = categoryOf(event.getType());
+        Object id = event.getSource().get("_id");
+        // Chỉ xử lý xoá theo 1 id, xoá hàng loạt sẽ được sửa ở lần dựng lại
+        if (category == null || !(id instanceof ObjectId || id instanceof String)) {
+            return;
+        }
+        apply(category, id.toString(), null);
+        brokerRelayService.publish(CHANGE_CHANNEL, new SearchIndexChange(category, id.toString()));
+    }
+
+    /**
+     * Đọc lại tài liệu từ Mongo và cập nhật index trên mọi node, dùng sau khi cập nhật từng phần các field được index.
+     */
+    public void refresh(SearchCategory category, String id) {
+        try {
+            reload(category, id);
+            brokerRelayService.publish(CHANGE_CHANNEL, new SearchIndexChange(category, id));
+        } catch (Exception e) {
+            // Lần dựng lại định kỳ sẽ sửa
+            log.warn("Failed to refresh search index {} for {}: {}", category, id, e.getMessage());
+        }
+    }
+
+    private void onRemoteChange(SearchIndexChange change) {
+        reload(change.getCategory(), change.getId());
+    }
+
+    private void reload(SearchCategory category, String id) {
+        Query query = projection(category);
+        query.addCriteria(Criteria.where("_id").is(id));
+        Object entity = mongoTemplate.findOne(query, entityClass(category));
+        apply(category, id, entity);
+    }
+
+    private void rebuild(SearchCategory category) {
+        InvertedIndex fresh = new InvertedIndex();
+        rebuilding.put(category, fresh);
+        try (Stream<?> entities = mongoTemplate.stream(projection(category), entityClass(category))) {
+            entities.forEach(entity -> {
+                Map<String, Double> terms = termsOf(entity);
+                if (terms != null) {
+                    fresh.upsert(idOf(entity), terms);
+                }
+            });
+            indexes.put(category, fresh);
+            log.info("Rebuilt search index {} with {} documents", category, fresh.size());
+        } catch (Exception e) {
+            log.error("Error rebuilding search index {}", category, e);
+        } finally {
+            rebuilding.remove(category);
+        }
+    }
+
+    private void apply(SearchCategory category, String id, Object entity) {
+        Map<String, Double> terms = entity != null ? termsOf(entity) : null;
+        for (InvertedIndex index : new InvertedIndex[]{indexes.get(category), rebuilding.get(category)}) {
+            if (index == null) {
+                continue;
+            }
+            if (terms == null) {
+                index.remove(id);
+            } else {
+                index.upsert(id, terms);
+            }
+        }
+    }
+
+    /**
+     * Từ của tài liệu kèm trọng số theo field, null nếu tài liệu không được phép xuất hiện trong kết quả tìm kiếm.
+     */
+    private Map<String, Double> termsOf(Object entity) {
+        Map<String, Double> terms = new HashMap<>();
+        if (entity instanceof PodcastEntity podcast) {
+            if (!podcast.isActive()) {
+                return null;
+            }
+            SearchTextAnalyzer.addField(terms, podcast.getTitle(), 2.0);
+            SearchTextAnalyzer.addField(terms, podcast.getContent(), 1.0);
+        } else if (entity instanceof UserEntity user) {
+            SearchTextAnalyzer.addField(terms, user.getUsername(), 3.0);
+            SearchTextAnalyzer.addField(terms, user.getFirstName(), 2.0);
+            SearchTextAnalyzer.addField(terms, user.getMiddleName(), 2.0);
+            SearchTextAnalyzer.addField(terms, user.getLastName(), 2.0);
+        } else if (entity instanceof PlaylistEntity playlist) {
+            if (!playlist.isPublish() || playlist.getItems() == null || playlist.getItems().isEmpty()) {
+                return null;
+            }
+            SearchTextAnalyzer.addField(terms, playlist.getName(), 2.0);
+            SearchTextAnalyzer.addField(terms, playlist.getDescription(), 1.0);
+        } else if (entity instanceof WatchPartyRoomEntity room) {
+            if (!room.isActive() || !room.isPublish()) {
+                return null;
+            }
+            SearchTextAnalyzer.addField(terms, room.getRoomName(), 2.0);
+            SearchTextAnalyzer.addField(terms, room.getRoomCode(), 1.0);
+        } else {
+            return null;
+        }
+        return terms;
+    }
+
+    // Chỉ đọc các field cần cho index
+    private Query projection(SearchCategory category) {
+        Query query = new Query();
+        switch (category) {
+            case PODCAST -> query.fields().include("title", "content", "isActive");
+            case USER -> query.fields().include("username", "firstName", "middleName", "lastName");
+            case PLAYLIST -> query.fields().include("name", "description", "publish").slice("items", 1);
+            case WATCH_PARTY_ROOM -> query.fields().include("roomName", "roomCode", "isActive", "publish");
+        }
+        return query;
+    }
+
+    private Class<?> entityClass(SearchCategory category) {
+        return switch (category) {
+            case PODCAST -> PodcastEntity.class;
+            case USER -> UserEntity.class;
+            case PLAYLIST -> PlaylistEntity.class;
+            case WATCH_PARTY_ROOM -> WatchPartyRoomEntity.class;
+        };
+    }
+
+    private SearchCategory categoryOf(Class<?> type) {
+        if (PodcastEntity.class.isAssignableFrom(type)) {
+            return SearchCategory.PODCAST;
+        }
+        if (UserEntity.class.isAssignableFrom(type)) {
+            return SearchCategory.USER;
+        }
+        if (PlaylistEntity.class.isAssignableFrom(type)) {
+            return SearchCategory.PLAYLIST;
+        }
+        if (WatchPartyRoomEntity.class.isAssignableFrom(type)) {
+            return SearchCategory.WATCH_PARTY_ROOM;
+        }
+        return null;
+    }
+
+    private String idOf(Object entity) {
+        if (entity instanceof PodcastEntity podcast) {
+            return podcast.getId();
+        }
+        if (entity instanceof UserEntity user) {
+            return user.getId();
+        }
+        if (entity instanceof PlaylistEntity playlist) {
+            return playlist.getId();
+        }
+        return ((WatchPartyRoomEntity) entity).getId();
+    }
+}
@@ -2,8 +2,12 @@ package com.castify.backend.service.search;
 
 import com.castify.backend.entity.SearchHistoryEntity;
 import com.castify.backend.entity.UserEntity;
+import com.castify.backend.models.playlist.PlaylistModel;
+import com.castify.backend.models.podcast.PodcastModel;
 import com.castify.backend.models.search.SearchKeywordModel;
 import com.castify.backend.models.search.SearchResultModel;
+import com.castify.backend.models.user.UserSimple;
+import com.castify.backend.models.watchParty.WatchPartyRoomModel;
 import com.castify.backend.repository.SearchHistoryRepository;
 import com.castify.backend.service.playlist.IPlaylistService;
 import com.castify.backend.service.podcast.IPodcastService;
@@ -13,18 +17,29 @@ import com.castify.backend.service.watchParty.IWatchPartyService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
 import org.springframework.stereotype.Service;
 
 import java.text.Normalizer;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -36,48 +51,63 @@ public class SearchServiceImpl implements ISearchService {
     private final IUserService userService;
     private final IPlaylistService playlistService;
     private final IWatchPartyService watchPartyService;
+    private final SearchSuggestionService suggestionService;
+    private final TrendingKeywordService trendingKeywordService;
+    private final SearchHistoryRecorder searchHistoryRecorder;
+
+    @Autowired
+    @Qualifier("searchExecutor")
+    private ThreadPoolTaskExecutor searchExecutor;
+    @Value("${search.category-timeout-ms:800}")
+    private long categoryTimeoutMs;
 
     @Override
     public void saveKeyword(String keyword) throws Exception {
         try {
             UserEntity currentUser = userService.getUserByAuthentication();
-            SearchHistoryEntity newSearch = new SearchHistoryEntity();
-            newSearch.setKeyword(keyword);
-            newSearch.setUserId(currentUser.getId());
-            searchHistoryRepository.save(newSearch);
+            recordSearch(keyword, currentUser.getId());
         } catch (Exception ignored){
 
         }
     }
 
     @Override
-    @Cacheable(value = "searchResults", key = "#keyword + '_' + #userId")
+    public void recordSearch(String keyword, String userId) {
+        // Chỉ đưa vào hàng đợi, lịch sử được upsert theo lô ở nền
+        if (userId != null) {
+            searchHistoryRecorder.record(userId, keyword, normalizeKeyword(keyword));
+        }
+    }
+
+    @Override
+    // Không cache kết quả thiếu nhóm (quá thời gian), lần sau tìm lại đầy đủ
+    @Cacheable(value = "searchResults", key = "#keyword + '_' + #userId", unless = "#result.partial")
     public SearchResultModel search(String keyword, String userId) {
         long startTime = System.currentTimeMillis();
 
         try {
-            // Record search history only if user is authenticated
-            if (userId != null) {
-                recordSearchHistory(keyword, userId);
-            }
-
             SearchResultModel result = new SearchResultModel();
             result.setKeyword(keyword);
 
             // Search each category with limit 20
             Pageable limit20 = PageRequest.of(0, 20);
 
-            // Search podcasts
-            result.setPodcasts(podcastService.searchPodcasts(keyword, limit20).getContent());
-
-            // Search users
-            result.setUsers(userService.searchUsers(keyword, limit20).getContent());
-
-            // Search playlists
-            result.setPlaylists(playlistService.searchPlaylists(keyword, limit20).getContent());
-
-            // Search watch party rooms
-            result.setWatchPartyRooms(watchPartyService.searchRooms(keyword, limit20).getContent());
+            // Chạy 4 nhóm song song, tổng thời gian bằng nhóm chậm nhất thay vì cộng dồn
+            Map<String, Long> durations = new ConcurrentHashMap<>();
+            CompletableFuture<List<PodcastModel>> podcasts = searchCategory("podcasts", durations,
+                    () -> podcastService.searchPodcasts(keyword, limit20).getContent());
+            CompletableFuture<List<UserSimple>> users = searchCategory("users", durations,
+                    () -> userService.searchUsers(keyword, limit20).getContent());
+            CompletableFuture<List<PlaylistModel>> playlists = searchCategory("playlists", durations,
+                    () -> playlistService.searchPlaylists(keyword, limit20).getContent());
+            CompletableFuture<List<WatchPartyRoomModel>> rooms = searchCategory("watchPartyRooms", durations,
+                    () -> watchPartyService.searchRooms(keyword, limit20).getContent());
+
+            result.setPodcasts(awaitCategory("podcasts", podcasts, result));
+            result.setUsers(awaitCategory("users", users, result));
+            result.setPlaylists(awaitCategory("playlists", playlists, result));
+            result.setWatchPartyRooms(awaitCategory("watchPartyRooms", rooms, result));
+            result.setCategoryDurations(new HashMap<>(durations));
 
             long endTime = System.currentTimeMillis();
             result.setSearchDuration(endTime - startTime);
@@ -92,11 +122,50 @@ public class SearchServiceImpl implements ISearchService {
             errorResult.setUsers(new ArrayList<>());
             errorResult.setPlaylists(new ArrayList<>());
             errorResult.setWatchPartyRooms(new ArrayList<>());
+            errorResult.setPartial(true);
             errorResult.setSearchDuration(System.currentTimeMillis() - startTime);
             return errorResult;
         }
     }
 
+    // Chạy 1 nhóm trên searchExecutor (mang theo SecurityContext để các service biết user hiện tại)
+    private <T> CompletableFuture<List<T>> searchCategory(String category, Map<String, Long> durations,
+                                                          Supplier<List<T>> search) {
+        long start = System.nanoTime();
+        Executor executor = new DelegatingSecurityContextExecutor(searchExecutor);
+        CompletableFuture<List<T>> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return search.get();
+                } finally {
+                    durations.put(category, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            // Pool và hàng đợi đã đầy: bỏ qua nhóm này (kết quả thiếu) thay vì chạy trên thread request
+            log.warn("Search executor saturated, skip {}", category);
+            return CompletableFuture.completedFuture(null);
+        }
+        return future
+                .exceptionally(e -> {
+                    log.error("Error searching {}", category, e);
+                    return null;
+                })
+                .completeOnTimeout(null, categoryTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Nhóm lỗi hoặc quá thời gian thì trả danh sách rỗng và đánh dấu kết quả thiếu
+    private <T> List<T> awaitCategory(String category, CompletableFuture<List<T>> future, SearchResultModel result) {
+        List<T> items = future.join();
+        if (items == null) {
+            result.getTimedOutCategories().add(category);
+            result.setPartial(true);
+            return new ArrayList<>();
+        }
+        return items;
+    }
+
     @Override
     @Cacheable(value = "recentHistory", key = "#userId")
     public List<SearchKeywordModel> getRecentHistory(String userId) {
@@ -122,30 +191,10 @@ public class SearchServiceImpl implements ISearchService {
     }
 
     @Override
-    @Cacheable(value = "trendingKeywords")
     public List<SearchKeywordModel> getTrendingKeywords() {
         try {
-            LocalDateTime sevenDaysAgo = LocalDateTime.now().minusDays(7);
-            Pageable pageable = PageRequest.of(0, 50, Sort.by("searchCount").descending());
-
-            List<SearchHistoryEntity> allTrending = searchHistoryRepository
-                    .findTrendingKeywords(sevenDaysAgo, pageable);
-
-            // ✅ Remove duplicates by normalizedKeyword, keep highest searchCount
-            return allTrending.stream()
-                    .collect(Collectors.groupingBy(
-                            SearchHistoryEntity::getNormalizedKeyword,
-                            Collectors.maxBy((h1, h2) -> h1.getSearchCount().compareTo(h2.getSearchCount()))
-                    ))
-                    .values()
-                    .stream()
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .sorted((h1, h2) -> h2.getSearchCount().compareTo(h1.getSearchCount()))
-                    .limit(5)
-                    .map(history -> new SearchKeywordModel(history.getKeyword(), history.getSearchCount()))
-                    .collect(Collectors.toList());
-
+            // Đọc top keyword từ bộ đếm cửa sổ trượt đã cộng dồn sẵn
+            return trendingKeywordService.getTopKeywords();
         } catch (Exception e) {
             log.error("Error getting trending keywords", e);
             return new ArrayList<>();
@@ -153,23 +202,14 @@ public class SearchServiceImpl implements ISearchService {
     }
 
     @Override
-    @Cacheable(value = "suggestions", key = "#prefix + '_' + #userId")
     public List<SearchKeywordModel> getSuggestions(String prefix, String userId) {
         try {
             if (prefix == null || prefix.trim().length() < 2) {
                 return new ArrayList<>();
             }
 
-            String normalizedPrefix = normalizeKeyword(prefix);
-            Pageable pageable = PageRequest.of(0, 8, Sort.by("searchCount").descending());
-
-            List<SearchHistoryEntity> suggestions = searchHistoryRepository
-                    .findSuggestionsByPrefix(normalizedPrefix, pageable);
-
-            return suggestions.stream()
-                    .map(history -> new SearchKeywordModel(history.getKeyword(), history.getSearchCount()))
-                    .distinct()
-                    .collect(Collectors.toList());
+            // Tra trie trong bộ nhớ, không truy vấn Mongo/Redis mỗi lần gõ phím
+            return suggestionService.suggest(normalizeKeyword(prefix));
 
         } catch (Exception e) {
             log.error("Error getting suggestions for prefix: {}", prefix, e);
@@ -208,34 +248,6 @@ public class SearchServiceImpl implements ISearchService {
         }
     }
 
-    // Helper method to record search history
-    private void recordSearchHistory(String keyword, String userId) {
-        if (userId == null) {
-            return;
-        }
-
-        try {
-            String normalizedKeyword = normalizeKeyword(keyword);
-
-            Optional<SearchHistoryEntity> existingHistory = searchHistoryRepository
-                    .findByUserIdAndNormalizedKeyword(userId, normalizedKeyword);
-
-            if (existingHistory.isPresent()) {
-                SearchHistoryEntity history = existingHistory.get();
-                history.incrementSearchCount();
-                searchHistoryRepository.save(history);
-            } else {
-                SearchHistoryEntity newHistory = new SearchHistoryEntity(
-                        userId, keyword, normalizedKeyword
-                );
-                searchHistoryRepository.save(newHistory);
-            }
-
-        } catch (Exception e) {
-            log.error("Error recording search history for keyword: {} and user: {}", keyword, userId, e);
-        }
-    }
-
     // Helper method to normalize keyword
     private String normalizeKeyword(String keyword) {
         if (keyword == null) return "";
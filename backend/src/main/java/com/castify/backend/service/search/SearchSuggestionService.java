@@ -0,0 +1,93 @@
+package com.castify.backend.service.search;
+
+import com.castify.backend.entity.SearchHistoryEntity;
+import com.castify.backend.models.search.SearchKeywordModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Gợi ý tìm kiếm toàn cục từ trie trong bộ nhớ: keyword đã chuẩn hoá được cộng dồn số lần tìm của mọi user.
+ * Dựng lại từ searchHistory khi khởi động và định kỳ (đồng bộ giữa các node, bỏ keyword đã bị xoá),
+ * giữa các lần dựng thì cộng dồn theo từng lần tìm.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SearchSuggestionService {
+    private static final int TOP_K = 8;
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private SuggestionTrie trie = new SuggestionTrie(TOP_K);
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onStartup() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${search.suggestions.rebuild-interval-ms:600000}",
+            fixedDelayString = "${search.suggestions.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        try {
+            // Cộng số lần tìm của mọi user theo keyword chuẩn hoá, giữ cách viết gần nhất để hiển thị
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.sort(Sort.by(Sort.Direction.ASC, "lastSearched")),
+                    Aggregation.group("normalizedKeyword")
+                            .sum("searchCount").as("count")
+                            .last("keyword").as("keyword")
+            ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+            SuggestionTrie fresh = new SuggestionTrie(TOP_K);
+            for (Document result : mongoTemplate.aggregate(aggregation, SearchHistoryEntity.class, Document.class)) {
+                Object normalizedKeyword = result.get("_id");
+                Object keyword = result.get("keyword");
+                Number count = (Number) result.get("count");
+                if (normalizedKeyword != null && keyword != null && count != null) {
+                    fresh.add(normalizedKeyword.toString(), keyword.toString(), count.longValue());
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                trie = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Rebuilt search suggestions with {} keywords", fresh.size());
+        } catch (Exception e) {
+            log.error("Error rebuilding search suggestions", e);
+        }
+    }
+
+    public void recordSearch(String normalizedKeyword, String keyword, long count) {
+        lock.writeLock().lock();
+        try {
+            trie.add(normalizedKeyword, keyword, count);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<SearchKeywordModel> suggest(String normalizedPrefix) {
+        lock.readLock().lock();
+        try {
+            return trie.complete(normalizedPrefix);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.castify.backend.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tách từ cho index tìm kiếm: bỏ dấu tiếng Việt (kể cả đ -> d), chữ thường, tách theo ký tự không phải chữ/số.
+ */
+final class SearchTextAnalyzer {
+    private SearchTextAnalyzer() {
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+
+        String folded = Normalizer.normalize(text.replace('đ', 'd').replace('Đ', 'D'), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+        for (String token : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Cộng tần suất từ của 1 field (đã nhân boost) vào danh sách từ của tài liệu.
+     */
+    static void addField(Map<String, Double> terms, String text, double boost) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, boost, Double::sum);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.castify.backend.service.search;
+
+import com.castify.backend.models.search.SearchKeywordModel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie theo keyword đã chuẩn hoá, mỗi node giữ sẵn top-K keyword phổ biến nhất có tiền tố đó.
+ * Tra gợi ý chỉ cần đi theo tiền tố, không phải duyệt cây con. Không thread-safe, caller tự khoá.
+ */
+class SuggestionTrie {
+    private static final Comparator<Entry> BY_COUNT_DESC = Comparator.comparingLong((Entry entry) -> entry.count).reversed()
+            .thenComparing(entry -> entry.normalizedKeyword);
+
+    private final int topK;
+    private final Node root = new Node();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    SuggestionTrie(int topK) {
+        this.topK = topK;
+    }
+
+    /**
+     * Cộng thêm số lần tìm cho keyword, cập nhật top-K trên đường đi từ gốc.
+     */
+    void add(String normalizedKeyword, String keyword, long delta) {
+        if (normalizedKeyword.isEmpty() || delta <= 0) {
+            return;
+        }
+
+        Entry entry = entries.computeIfAbsent(normalizedKeyword, key -> new Entry(key, keyword));
+        entry.keyword = keyword; // Hiển thị theo cách gõ gần nhất
+        entry.count += delta;
+
+        Node node = root;
+        for (int i = 0; i < normalizedKeyword.length(); i++) {
+            node = node.children.computeIfAbsent(normalizedKeyword.charAt(i), c -> new Node());
+            offer(node, entry);
+        }
+    }
+
+    List<SearchKeywordModel> complete(String normalizedPrefix) {
+        Node node = root;
+        for (int i = 0; i < normalizedPrefix.length() && node != null; i++) {
+            node = node.children.get(normalizedPrefix.charAt(i));
+        }
+        if (node == null) {
+            return new ArrayList<>();
+        }
+
+        List<SearchKeywordModel> suggestions = new ArrayList<>(node.top.size());
+        for (Entry entry : node.top) {
+            suggestions.add(new SearchKeywordModel(entry.keyword, (int) Math.min(entry.count, Integer.MAX_VALUE)));
+        }
+        return suggestions;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    // Số lần tìm chỉ tăng nên chỉ keyword vừa tăng có thể đổi vị trí trong top-K của node
+    private void offer(Node node, Entry entry) {
+        List<Entry> top = node.top;
+        if (!top.contains(entry)) {
+            if (top.size() >= topK && BY_COUNT_DESC.compare(entry, top.get(top.size() - 1)) >= 0) {
+                return;
+            }
+            top.add(entry);
+        }
+        top.sort(BY_COUNT_DESC);
+        if (top.size() > topK) {
+            top.remove(top.size() - 1);
+        }
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<Entry> top = new ArrayList<>(2);
+    }
+
+    private static class Entry {
+        private final String normalizedKeyword;
+        private String keyword;
+        private long count;
+
+        Entry(String normalizedKeyword, String keyword) {
+            this.normalizedKeyword = normalizedKeyword;
+            this.keyword = keyword;
+        }
+    }
+}
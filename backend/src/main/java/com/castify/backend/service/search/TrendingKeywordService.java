@@ -0,0 +1,175 @@
+package com.castify.backend.service.search;
+
+import com.castify.backend.entity.SearchHistoryEntity;
+import com.castify.backend.models.search.SearchKeywordModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+/**
+ * Keyword trending toàn cục trong cửa sổ trượt 7 ngày.
+ * Mỗi lần tìm cộng vào sorted set của giờ hiện tại và sorted set tổng của cửa sổ (ZINCRBY),
+ * đọc top-N chỉ là 1 lệnh ZREVRANGE trên set tổng.
+ * Mỗi giờ 1 instance (SETNX) dựng lại set tổng bằng ZUNIONSTORE các giờ còn trong cửa sổ, giờ cũ tự hết hạn.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class TrendingKeywordService {
+    private static final String BUCKET_KEY_PREFIX = "trending_keywords:hour:";
+    private static final String WINDOW_KEY = "trending_keywords:window";
+    private static final String DISPLAY_KEY = "trending_keywords:display";
+    private static final String ROLL_LOCK_PREFIX = "trending_keywords_roll:";
+    private static final String BACKFILL_LOCK_KEY = "trending_keywords_backfill_lock";
+    private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+    private static final int WINDOW_HOURS = 7 * 24;
+    private static final Duration BUCKET_TTL = Duration.ofHours(WINDOW_HOURS + 2);
+    private static final int TOP_N = 5;
+    private static final int CLEANUP_BATCH_SIZE = 500;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MongoTemplate mongoTemplate;
+
+    private volatile long ttlSetForHour = -1;
+
+    public void record(String normalizedKeyword, String keyword, long count) {
+        if (normalizedKeyword == null || normalizedKeyword.isEmpty() || count <= 0) {
+            return;
+        }
+        try {
+            long hour = System.currentTimeMillis() / HOUR_MILLIS;
+            String bucketKey = BUCKET_KEY_PREFIX + hour;
+            ZSetOperations<String, String> zSet = stringRedisTemplate.opsForZSet();
+            zSet.incrementScore(bucketKey, normalizedKeyword, count);
+            zSet.incrementScore(WINDOW_KEY, normalizedKeyword, count);
+            // Hiển thị theo cách gõ gần nhất
+            stringRedisTemplate.opsForHash().put(DISPLAY_KEY, normalizedKeyword, keyword);
+            if (ttlSetForHour != hour) {
+                stringRedisTemplate.expire(bucketKey, BUCKET_TTL);
+                ttlSetForHour = hour;
+            }
+        } catch (Exception e) {
+            // Trending không được làm hỏng thao tác tìm kiếm
+            log.error("Error updating trending keyword {}: {}", normalizedKeyword, e.getMessage());
+        }
+    }
+
+    public List<SearchKeywordModel> getTopKeywords() {
+        List<SearchKeywordModel> keywords = new ArrayList<>();
+        Set<ZSetOperations.TypedTuple<String>> top = stringRedisTemplate.opsForZSet()
+                .reverseRangeWithScores(WINDOW_KEY, 0, TOP_N - 1);
+        if (top == null || top.isEmpty()) {
+            return keywords;
+        }
+
+        List<Object> normalizedKeywords = top.stream().map(tuple -> (Object) tuple.getValue()).toList();
+        List<Object> displays = stringRedisTemplate.opsForHash().multiGet(DISPLAY_KEY, normalizedKeywords);
+        int i = 0;
+        for (ZSetOperations.TypedTuple<String> tuple : top) {
+            Object display = displays.get(i++);
+            int count = tuple.getScore() != null ? tuple.getScore().intValue() : 0;
+            keywords.add(new SearchKeywordModel(display != null ? display.toString() : tuple.getValue(), count));
+        }
+        return keywords;
+    }
+
+    @Scheduled(cron = "${search.trending.roll-cron:0 1 * * * *}")
+    public void rollWindow() {
+        try {
+            long hour = System.currentTimeMillis() / HOUR_MILLIS;
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ROLL_LOCK_PREFIX + hour, "1", Duration.ofHours(2));
+            if (!Boolean.TRUE.equals(acquired)) {
+                return;
+            }
+
+            // ZUNIONSTORE là lệnh nguyên tử nên không mất ZINCRBY chạy song song
+            List<String> bucketKeys = LongStream.range(hour - WINDOW_HOURS + 1, hour + 1)
+                    .mapToObj(h -> BUCKET_KEY_PREFIX + h)
+                    .toList();
+            stringRedisTemplate.opsForZSet().unionAndStore(bucketKeys.get(0), bucketKeys.subList(1, bucketKeys.size()), WINDOW_KEY);
+            cleanupDisplayNames();
+        } catch (Exception e) {
+            log.error("Error rolling trending keyword window", e);
+        }
+    }
+
+    // Bỏ tên hiển thị của keyword đã ra khỏi cửa sổ: ZMSCORE theo lô thay vì 1 ZSCORE mỗi keyword
+    private void cleanupDisplayNames() {
+        List<Object> displayed = new ArrayList<>(stringRedisTemplate.opsForHash().keys(DISPLAY_KEY));
+        List<Object> stale = new ArrayList<>();
+        for (int from = 0; from < displayed.size(); from += CLEANUP_BATCH_SIZE) {
+            List<Object> batch = displayed.subList(from, Math.min(from + CLEANUP_BATCH_SIZE, displayed.size()));
+            List<Double> scores = stringRedisTemplate.opsForZSet().score(WINDOW_KEY, batch.toArray());
+            if (scores == null) {
+                continue;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (scores.get(i) == null) {
+                    stale.add(batch.get(i));
+                }
+            }
+        }
+        if (!stale.isEmpty()) {
+            stringRedisTemplate.opsForHash().delete(DISPLAY_KEY, stale.toArray());
+        }
+    }
+
+    /**
+     * Lần đầu chạy (chưa có cửa sổ) thì lấy số lần tìm 7 ngày gần đây từ searchHistory, ghi vào giờ hiện tại.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void backfillIfEmpty() {
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(WINDOW_KEY))) {
+                return;
+            }
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(BACKFILL_LOCK_KEY, "1", Duration.ofMinutes(30));
+            if (!Boolean.TRUE.equals(acquired)) {
+                return;
+            }
+
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("lastSearched").gte(LocalDateTime.now().minusDays(7))),
+                    Aggregation.sort(Sort.by(Sort.Direction.ASC, "lastSearched")),
+                    Aggregation.group("normalizedKeyword")
+                            .sum("searchCount").as("count")
+                            .last("keyword").as("keyword")
+            ).withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+
+            int backfilled = 0;
+            for (Document result : mongoTemplate.aggregate(aggregation, SearchHistoryEntity.class, Document.class)) {
+                Object normalizedKeyword = result.get("_id");
+                Object keyword = result.get("keyword");
+                Number count = (Number) result.get("count");
+                if (normalizedKeyword != null && keyword != null && count != null) {
+                    record(normalizedKeyword.toString(), keyword.toString(), count.longValue());
+                    backfilled++;
+                }
+            }
+            log.info("Backfilled {} trending keywords", backfilled);
+        } catch (Exception e) {
+            log.error("Error backfilling trending keywords", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.castify.backend.service.streaming;
+
+import com.castify.backend.models.podcast.SolutionModel;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+public interface IRenditionIndexService {
+    Optional<Path> resolveRendition(String podcastId, int quality);
+
+    Optional<Path> resolveHlsRoot(String podcastId);
+
+    void index(String podcastId, List<SolutionModel> solutions, String hlsPath);
+
+    void evict(String podcastId);
+}
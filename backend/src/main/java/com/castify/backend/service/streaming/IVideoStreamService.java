@@ -0,0 +1,13 @@
+package com.castify.backend.service.streaming;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface IVideoStreamService {
+    void serve(Path file, String contentType, CacheControl cacheControl,
+               HttpServletRequest request, HttpServletResponse response) throws IOException;
+}
@@ -0,0 +1,114 @@
+package com.castify.backend.service.streaming;
+
+import com.castify.backend.entity.PodcastEntity;
+import com.castify.backend.models.podcast.SolutionModel;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Cache trong bộ nhớ (LRU) cho danh sách bản transcode của từng podcast,
+ * để chọn chất lượng video chỉ tốn 1 lần tra map thay vì quét thư mục.
+ * Podcast chưa có bản transcode nào thì không cache; index/evict báo các node khác xoá qua relay.
+ */
+@Service
+@Slf4j
+public class RenditionIndexServiceImpl implements IRenditionIndexService {
+    private static final String INVALIDATE_CHANNEL = "rendition_index_invalidated";
+
+    private record RenditionIndex(NavigableMap<Integer, Path> renditions, Path hlsRoot) {}
+
+    private final Map<String, RenditionIndex> cache;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private IBrokerRelayService brokerRelayService;
+
+    public RenditionIndexServiceImpl(@Value("${streaming.rendition-index.max-entries:10000}") int maxEntries) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RenditionIndex> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    @PostConstruct
+    public void subscribeInvalidations() {
+        // Node khác vừa transcode/đóng gói: nạp lại từ Mongo ở lần dùng tiếp theo
+        brokerRelayService.subscribe(INVALIDATE_CHANNEL, String.class, cache::remove);
+    }
+
+    @Override
+    public Optional<Path> resolveRendition(String podcastId, int quality) {
+        RenditionIndex index = getOrLoad(podcastId);
+        if (index == null) {
+            return Optional.empty();
+        }
+        // Chất lượng gần nhất thấp hơn hoặc bằng yêu cầu
+        Map.Entry<Integer, Path> entry = index.renditions().floorEntry(quality);
+        return entry != null ? Optional.of(entry.getValue()) : Optional.empty();
+    }
+
+    @Override
+    public Optional<Path> resolveHlsRoot(String podcastId) {
+        RenditionIndex index = getOrLoad(podcastId);
+        return index != null ? Optional.ofNullable(index.hlsRoot()) : Optional.empty();
+    }
+
+    @Override
+    public void index(String podcastId, List<SolutionModel> solutions, String hlsPath) {
+        cache.put(podcastId, build(solutions, hlsPath));
+        brokerRelayService.publish(INVALIDATE_CHANNEL, podcastId);
+    }
+
+    @Override
+    public void evict(String podcastId) {
+        cache.remove(podcastId);
+        brokerRelayService.publish(INVALIDATE_CHANNEL, podcastId);
+    }
+
+    private RenditionIndex getOrLoad(String podcastId) {
+        RenditionIndex index = cache.get(podcastId);
+        if (index != null) {
+            return index;
+        }
+
+        // Chỉ lấy các field cần thiết, không load cả podcast
+        Query query = new Query(Criteria.where("_id").is(podcastId));
+        query.fields().include("solutionModelList").include("hlsPath");
+        PodcastEntity podcast = mongoTemplate.findOne(query, PodcastEntity.class);
+        if (podcast == null) {
+            return null;
+        }
+
+        index = build(podcast.getSolutionModelList(), podcast.getHlsPath());
+        // Đang transcode (chưa có bản nào) thì không cache, tránh giữ trạng thái rỗng sau khi transcode xong
+        if (!index.renditions().isEmpty()) {
+            cache.put(podcastId, index);
+        }
+        return index;
+    }
+
+    private RenditionIndex build(List<SolutionModel> solutions, String hlsPath) {
+        NavigableMap<Integer, Path> renditions = new TreeMap<>();
+        if (solutions != null) {
+            for (SolutionModel solution : solutions) {
+                renditions.put((int) solution.getSolution(), Paths.get(solution.getUrl()));
+            }
+        }
+        return new RenditionIndex(Collections.unmodifiableNavigableMap(renditions),
+                hlsPath != null ? Paths.get(hlsPath) : null);
+    }
+}
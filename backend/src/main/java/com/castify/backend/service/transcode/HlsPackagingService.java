@@ -0,0 +1,240 @@
+package com.castify.backend.service.transcode;
+
+import com.castify.backend.entity.PodcastEntity;
+import com.castify.backend.models.podcast.SolutionModel;
+import com.castify.backend.repository.PodcastRepository;
+import com.castify.backend.service.streaming.IRenditionIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Đóng gói các bản transcode thành HLS (segment fMP4/CMAF) kèm master playlist
+ * để player tự chuyển bitrate, và tìm file playlist/segment khi stream.
+ */
+@Service
+@Slf4j
+public class HlsPackagingService {
+    public static final String MASTER_PLAYLIST = "master.m3u8";
+    public static final String VARIANT_PLAYLIST = "index.m3u8";
+
+    private static final int SEGMENT_SECONDS = 6;
+    private static final Pattern RENDITION_PATTERN = Pattern.compile("\\d{3,4}p");
+    private static final Pattern VERSION_PATTERN = Pattern.compile("v[0-9a-z]+");
+    private static final Pattern FILE_PATTERN = Pattern.compile("[A-Za-z0-9_.-]+\\.(m3u8|m4s|mp4)");
+
+    @Autowired
+    private PodcastRepository podcastRepository;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private IRenditionIndexService renditionIndexService;
+
+    /**
+     * Remux (hoặc encode nếu codec gốc không phải h264) từng bản trong solutionModelList
+     * thành HLS và ghi master playlist.
+     * Mỗi lần đóng gói ghi vào 1 thư mục phiên bản mới (hls/{podcastId}/v{thời điểm}) nên URL segment
+     * không bao giờ bị ghi đè nội dung khác (segment được cache immutable).
+     */
+    public Path packageRenditions(String podcastId, String outputDir) throws IOException, InterruptedException {
+        PodcastEntity podcast = podcastRepository.findPodcastEntityById(podcastId);
+        if (podcast == null) throw new RuntimeException("Podcast not found");
+
+        Path podcastRoot = Paths.get(outputDir, "hls", podcastId);
+        String version = "v" + Long.toString(System.currentTimeMillis(), 36);
+        Path hlsRoot = podcastRoot.resolve(version);
+        Files.createDirectories(hlsRoot);
+
+        try {
+            List<SolutionModel> solutions = new ArrayList<>(podcast.getSolutionModelList());
+            solutions.sort(Comparator.comparingLong(SolutionModel::getSolution));
+
+            StringBuilder master = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:7\n#EXT-X-INDEPENDENT-SEGMENTS\n");
+            for (SolutionModel solution : solutions) {
+                String renditionName = solution.getSolution() + "p";
+                Path renditionDir = hlsRoot.resolve(renditionName);
+                Files.createDirectories(renditionDir);
+
+                segment(solution.getUrl(), renditionDir);
+
+                long bandwidth = estimateBandwidth(solution.getUrl(), podcast.getDuration());
+                int width = probeWidth(solution.getUrl());
+                master.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth);
+                if (width > 0) {
+                    master.append(",RESOLUTION=").append(width).append("x").append(solution.getSolution());
+                }
+                // Master phục vụ ở /hls/{podcastId}/master.m3u8 nên đường dẫn variant có kèm phiên bản
+                master.append("\n").append(version).append("/").append(renditionName).append("/")
+                        .append(VARIANT_PLAYLIST).append("\n");
+            }
+
+            Files.writeString(hlsRoot.resolve(MASTER_PLAYLIST), master.toString(), StandardCharsets.UTF_8);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            deleteRecursively(hlsRoot); // retry sẽ tạo phiên bản mới
+            throw e;
+        }
+
+        Query query = new Query(Criteria.where("_id").is(podcastId));
+        mongoTemplate.updateFirst(query, new Update().set("hlsPath", hlsRoot.toString()), PodcastEntity.class);
+        renditionIndexService.index(podcastId, podcast.getSolutionModelList(), hlsRoot.toString());
+
+        // Giữ phiên bản trước cho player đang phát dở, xoá các phiên bản cũ hơn
+        String previousPath = podcast.getHlsPath();
+        pruneOldVersions(podcastRoot, hlsRoot, previousPath != null ? Paths.get(previousPath) : null);
+
+        return hlsRoot;
+    }
+
+    /**
+     * Tìm file master playlist hoặc file trong 1 rendition (variant playlist, init segment, media segment).
+     * rendition = null nghĩa là lấy file ở thư mục gốc (master playlist).
+     * version = null là URL cũ không có phiên bản, lấy theo thư mục HLS hiện tại.
+     */
+    public Optional<Path> resolveFile(String podcastId, String version, String rendition, String fileName) {
+        if (!FILE_PATTERN.matcher(fileName).matches()) {
+            return Optional.empty();
+        }
+        if (rendition != null && !RENDITION_PATTERN.matcher(rendition).matches()) {
+            return Optional.empty();
+        }
+        if (version != null && !VERSION_PATTERN.matcher(version).matches()) {
+            return Optional.empty();
+        }
+
+        // Thư mục HLS lấy từ rendition index, không đọc podcast từ Mongo cho mỗi segment
+        Optional<Path> root = renditionIndexService.resolveHlsRoot(podcastId);
+        if (root.isEmpty()) {
+            return Optional.empty();
+        }
+        Path hlsRoot = root.get();
+        if (version != null) {
+            // Phiên bản trước vẫn nằm cạnh phiên bản hiện tại (hls/{podcastId}/v...)
+            Path podcastRoot = VERSION_PATTERN.matcher(hlsRoot.getFileName().toString()).matches()
+                    ? hlsRoot.getParent()
+                    : hlsRoot;
+            hlsRoot = podcastRoot.resolve(version);
+        }
+
+        Path file = (rendition == null ? hlsRoot : hlsRoot.resolve(rendition)).resolve(fileName).normalize();
+        if (!file.startsWith(hlsRoot) || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(file);
+    }
+
+    private void pruneOldVersions(Path podcastRoot, Path current, Path previous) {
+        try (var children = Files.list(podcastRoot)) {
+            for (Path child : children.toList()) {
+                if (Files.isDirectory(child)
+                        && VERSION_PATTERN.matcher(child.getFileName().toString()).matches()
+                        && !child.equals(current)
+                        && !child.equals(previous)) {
+                    deleteRecursively(child);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to prune old HLS versions in {}: {}", podcastRoot, e.getMessage());
+        }
+    }
+
+    private void segment(String inputPath, Path renditionDir) throws IOException, InterruptedException {
+        boolean isH264 = "h264".equals(probeVideoCodec(inputPath));
+
+        List<String> command = new ArrayList<>(List.of("ffmpeg", "-y", "-i", inputPath, "-map", "0:v:0", "-map", "0:a?"));
+        if (isH264) {
+            command.addAll(List.of("-c:v", "copy"));
+        } else {
+            command.addAll(List.of("-c:v", "libx264", "-crf", "23", "-preset", "veryfast"));
+        }
+        command.addAll(List.of(
+                "-c:a", "aac",
+                "-f", "hls",
+                "-hls_time", String.valueOf(SEGMENT_SECONDS),
+                "-hls_playlist_type", "vod",
+                "-hls_segment_type", "fmp4",
+                "-hls_fmp4_init_filename", "init.mp4",
+                "-hls_segment_filename", renditionDir.resolve("seg_%05d.m4s").toString(),
+                renditionDir.resolve(VARIANT_PLAYLIST).toString()
+        ));
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            while (reader.readLine() != null);
+        }
+
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new RuntimeException("FFmpeg thất bại khi đóng gói HLS cho " + renditionDir.getFileName());
+        }
+    }
+
+    private long estimateBandwidth(String inputPath, long durationSeconds) {
+        long size = new File(inputPath).length();
+        if (durationSeconds <= 0 || size <= 0) {
+            return 1_000_000L;
+        }
+        return size * 8 / durationSeconds;
+    }
+
+    private String probeVideoCodec(String inputPath) throws IOException, InterruptedException {
+        return probe(inputPath, "stream=codec_name");
+    }
+
+    private int probeWidth(String inputPath) {
+        try {
+            return Integer.parseInt(probe(inputPath, "stream=width"));
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private String probe(String inputPath, String entries) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(
+                "ffprobe",
+                "-v", "error",
+                "-select_streams", "v:0",
+                "-show_entries", entries,
+                "-of", "csv=p=0",
+                inputPath
+        );
+
+        Process process = builder.start();
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        process.waitFor();
+        return line != null ? line.trim() : "";
+    }
+
+    private void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (var paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
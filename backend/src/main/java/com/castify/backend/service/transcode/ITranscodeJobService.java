@@ -0,0 +1,16 @@
+package com.castify.backend.service.transcode;
+
+import com.castify.backend.models.podcast.TranscodeJobModel;
+
+public interface ITranscodeJobService {
+    TranscodeJobModel enqueue(String podcastId, String userId, String videoPath, String outputDir,
+                              String thumbnailDir, boolean captureThumbnail);
+
+    TranscodeJobModel getJob(String jobId) throws Exception;
+
+    TranscodeJobModel getLatestJobByPodcast(String podcastId) throws Exception;
+
+    void dispatchPendingJobs();
+
+    void recoverStaleJobs();
+}
@@ -0,0 +1,456 @@
+package com.castify.backend.service.transcode;
+
+import com.castify.backend.entity.PodcastEntity;
+import com.castify.backend.entity.TranscodeJobEntity;
+import com.castify.backend.entity.UserEntity;
+import com.castify.backend.enums.NotiType;
+import com.castify.backend.enums.TranscodeJobStatus;
+import com.castify.backend.enums.TranscodeStage;
+import com.castify.backend.exception.PermissionDeniedException;
+import com.castify.backend.models.podcast.TranscodeJobModel;
+import com.castify.backend.models.podcast.TranscodeResult;
+import com.castify.backend.repository.PodcastRepository;
+import com.castify.backend.repository.TranscodeJobRepository;
+import com.castify.backend.repository.TranscriptRepository;
+import com.castify.backend.service.ffmpeg.IFFmpegService;
+import com.castify.backend.service.notification.INotificationService;
+import com.castify.backend.service.notification.VideoTranscodeService;
+import com.castify.backend.service.podcast.IVideoTranscribe;
+import com.castify.backend.service.uploadFile.IUploadFileService;
+import com.castify.backend.service.user.IUserService;
+import com.castify.backend.utils.FileUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+@Service
+@Slf4j
+public class TranscodeJobServiceImpl implements ITranscodeJobService {
+    private static final String PROGRESS_DESTINATION = "/queue/transcode";
+
+    // Định danh node hiện tại, dùng để biết job nào đang được node nào xử lý
+    private final String workerId = UUID.randomUUID().toString();
+    // Các job đang chạy trên node này (không bị recoverStaleJobs thu hồi)
+    private final Set<String> inFlightJobIds = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    private TranscodeJobRepository jobRepository;
+    @Autowired
+    private PodcastRepository podcastRepository;
+    @Autowired
+    private TranscriptRepository transcriptRepository;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private IFFmpegService ffmpegService;
+    @Autowired
+    private IUploadFileService uploadFileService;
+    @Autowired
+    private VideoTranscodeService videoTranscodeService;
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+    @Autowired
+    private IVideoTranscribe videoTranscribe;
+    @Autowired
+    private INotificationService notificationService;
+    @Autowired
+    @Lazy
+    private IUserService userService;
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    @Qualifier("transcodeExecutor")
+    private ThreadPoolTaskExecutor transcodeExecutor;
+
+    @Value("${transcode.worker.retry-backoff-seconds:30}")
+    private long retryBackoffSeconds;
+
+    @Value("${transcode.worker.stale-after-minutes:60}")
+    private long staleAfterMinutes;
+
+    @Override
+    public TranscodeJobModel enqueue(String podcastId, String userId, String videoPath, String outputDir,
+                                     String thumbnailDir, boolean captureThumbnail) {
+        TranscodeJobEntity job = new TranscodeJobEntity();
+        job.setPodcastId(podcastId);
+        job.setUserId(userId);
+        job.setVideoPath(videoPath);
+        job.setOutputDir(outputDir);
+        job.setThumbnailDir(thumbnailDir);
+        job.setCaptureThumbnail(captureThumbnail);
+        job.setStage(captureThumbnail ? TranscodeStage.THUMBNAIL : TranscodeStage.DURATION);
+
+        TranscodeJobEntity savedJob = jobRepository.save(job);
+
+        // Thử nhận job ngay nếu còn worker rảnh, không cần đợi lượt poll tiếp theo
+        dispatchPendingJobs();
+
+        return toModel(savedJob);
+    }
+
+    @Override
+    public TranscodeJobModel getJob(String jobId) throws Exception {
+        TranscodeJobEntity job = jobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Transcode job not found"));
+        checkOwner(job);
+        return toModel(job);
+    }
+
+    @Override
+    public TranscodeJobModel getLatestJobByPodcast(String podcastId) throws Exception {
+        TranscodeJobEntity job = jobRepository.findTopByPodcastIdOrderByCreatedAtDesc(podcastId)
+                .orElseThrow(() -> new RuntimeException("Transcode job not found"));
+        checkOwner(job);
+        return toModel(job);
+    }
+
+    @Scheduled(fixedDelayString = "${transcode.worker.poll-interval-ms:5000}")
+    @Override
+    public void dispatchPendingJobs() {
+        while (inFlightJobIds.size() < transcodeExecutor.getMaxPoolSize()) {
+            TranscodeJobEntity job = claimNextJob();
+            if (job == null) {
+                return;
+            }
+
+            inFlightJobIds.add(job.getId());
+            try {
+                transcodeExecutor.execute(() -> runJob(job));
+            } catch (RejectedExecutionException e) {
+                // Pool đầy: trả job về hàng đợi, lần poll sau sẽ nhận lại
+                inFlightJobIds.remove(job.getId());
+                releaseJob(job);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Heartbeat cho các job đang chạy trên node này: stage dài (transcription, 1 lượt ffmpeg)
+     * không cập nhật updatedAt nên cần làm mới định kỳ để node khác không coi là job chết
+     */
+    @Scheduled(fixedDelayString = "${transcode.worker.heartbeat-interval-ms:60000}")
+    public void heartbeat() {
+        if (inFlightJobIds.isEmpty()) {
+            return;
+        }
+        Query query = new Query(Criteria.where("_id").in(inFlightJobIds)
+                .and("status").is(TranscodeJobStatus.RUNNING)
+                .and("workerId").is(workerId));
+        mongoTemplate.updateMulti(query, new Update().set("updatedAt", LocalDateTime.now()), TranscodeJobEntity.class);
+    }
+
+    /**
+     * Thu hồi các job RUNNING không còn cập nhật (node xử lý bị crash/restart)
+     */
+    @Scheduled(fixedRate = 300000) // 5 phút
+    @Override
+    public void recoverStaleJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(staleAfterMinutes);
+        List<TranscodeJobEntity> staleJobs = jobRepository.findByStatusAndUpdatedAtBefore(TranscodeJobStatus.RUNNING, cutoff);
+
+        for (TranscodeJobEntity job : staleJobs) {
+            if (inFlightJobIds.contains(job.getId())) {
+                continue;
+            }
+            // Điều kiện updatedAt < cutoff được kiểm tra lại khi ghi: heartbeat vừa tới thì không thu hồi
+            if (handleFailure(job, new RuntimeException("Worker stopped responding"), cutoff)) {
+                log.warn("Recovered stale transcode job {} (worker {}, stage {})", job.getId(), job.getWorkerId(), job.getStage());
+            }
+        }
+    }
+
+    /**
+     * Nhận 1 job PENDING một cách nguyên tử để nhiều node không xử lý trùng
+     */
+    private TranscodeJobEntity claimNextJob() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(Criteria.where("status").is(TranscodeJobStatus.PENDING)
+                .and("nextAttemptAt").lte(now))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        Update update = new Update()
+                .set("status", TranscodeJobStatus.RUNNING)
+                .set("workerId", workerId)
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+
+        return mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), TranscodeJobEntity.class);
+    }
+
+    private void releaseJob(TranscodeJobEntity job) {
+        Query query = new Query(Criteria.where("_id").is(job.getId()).and("workerId").is(workerId));
+        Update update = new Update()
+                .set("status", TranscodeJobStatus.PENDING)
+                .set("workerId", null)
+                .set("updatedAt", LocalDateTime.now())
+                .inc("attempts", -1);
+        mongoTemplate.updateFirst(query, update, TranscodeJobEntity.class);
+    }
+
+    private void runJob(TranscodeJobEntity job) {
+        try {
+            PodcastEntity podcast = podcastRepository.findPodcastEntityById(job.getPodcastId());
+            if (podcast == null) {
+                // Podcast đã bị xóa trong lúc chờ, không cần retry
+                markFailed(job, "Podcast not found");
+                return;
+            }
+            publishProgress(job);
+
+            if (job.getStage() == TranscodeStage.THUMBNAIL) {
+                captureThumbnail(job);
+                advance(job, TranscodeStage.DURATION, 10);
+            }
+
+            if (job.getStage() == TranscodeStage.DURATION) {
+                long duration = ffmpegService.getVideoDuration(job.getVideoPath());
+                updatePodcastField(job.getPodcastId(), "duration", duration);
+                advance(job, TranscodeStage.RENDITIONS, 20);
+            }
+
+            if (job.getStage() == TranscodeStage.RENDITIONS) {
+                TranscodeResult result = videoTranscodeService.transcodeVideo(
+                        job.getVideoPath(), job.getOutputDir(), job.getPodcastId(),
+                        percent -> reportStageProgress(job, 20 + percent * 50 / 100));
+                job.setTranscodeElapsedMs(result.getTotalElapsedMs());
+                job.setRenditionMetrics(result.getRenditions());
+                advance(job, TranscodeStage.PACKAGING, 70);
+            }
+
+            if (job.getStage() == TranscodeStage.PACKAGING) {
+                hlsPackagingService.packageRenditions(job.getPodcastId(), job.getOutputDir());
+                advance(job, TranscodeStage.TRANSCRIPTION, 80);
+            }
+
+            if (job.getStage() == TranscodeStage.TRANSCRIPTION) {
+                transcribe(job);
+                advance(job, TranscodeStage.DONE, 100);
+            }
+
+            markCompleted(job, podcast);
+        } catch (JobOwnershipLostException e) {
+            // Không retry/đánh dấu lỗi: trạng thái job giờ do node khác quản lý
+            log.warn(e.getMessage());
+        } catch (Exception e) {
+            log.error("Transcode job {} failed at stage {}: {}", job.getId(), job.getStage(), e.getMessage());
+            handleFailure(job, e);
+        } finally {
+            inFlightJobIds.remove(job.getId());
+        }
+    }
+
+    private void captureThumbnail(TranscodeJobEntity job) throws Exception {
+        Path thumbnailDir = Paths.get(job.getThumbnailDir());
+        String videoFileName = Paths.get(job.getVideoPath()).getFileName().toString();
+        String tempThumbnailFileName = "thumb_" + videoFileName.replaceAll("\\.[^.]+$", "") + ".jpeg";
+        Path tempThumbnailPath = thumbnailDir.resolve(tempThumbnailFileName);
+
+        // Sử dụng FFmpeg để capture frame đầu tiên
+        ffmpegService.captureFrameFromVideo(job.getVideoPath(), tempThumbnailPath.toString());
+
+        // Resize về đúng tỉ lệ 16:9
+        Path resizedThumbnailPath = thumbnailDir.resolve("resized_" + tempThumbnailFileName);
+        ffmpegService.resizeImageTo16by9(tempThumbnailPath.toString(), resizedThumbnailPath.toString());
+
+        // Upload frame đã capture lên Cloudinary
+        String thumbnailUrl = uploadFileService.uploadImageBytes(FileUtils.encodeFileToBase64(resizedThumbnailPath.toFile()));
+        updatePodcastField(job.getPodcastId(), "thumbnailUrl", thumbnailUrl);
+    }
+
+    private void transcribe(TranscodeJobEntity job) {
+        // Xóa transcript của lần chạy trước (nếu retry) để không bị trùng
+        transcriptRepository.deleteByPodcastId(job.getPodcastId());
+
+        ResponseEntity<?> response = videoTranscribe.transcribeVideo(new File(job.getVideoPath()), job.getPodcastId());
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new RuntimeException("Transcription failed: " + response.getBody());
+        }
+    }
+
+    private void updatePodcastField(String podcastId, String field, Object value) {
+        Query query = new Query(Criteria.where("_id").is(podcastId));
+        mongoTemplate.updateFirst(query, new Update().set(field, value), PodcastEntity.class);
+    }
+
+    private void advance(TranscodeJobEntity job, TranscodeStage nextStage, int progress) {
+        updateOwnedJob(job, new Update()
+                .set("stage", nextStage)
+                .set("progress", progress)
+                .set("transcodeElapsedMs", job.getTranscodeElapsedMs())
+                .set("renditionMetrics", job.getRenditionMetrics()));
+        job.setStage(nextStage);
+        job.setProgress(progress);
+        publishProgress(job);
+    }
+
+    private void reportStageProgress(TranscodeJobEntity job, int progress) {
+        if (progress <= job.getProgress()) {
+            return;
+        }
+        updateOwnedJob(job, new Update().set("progress", progress));
+        job.setProgress(progress);
+        publishProgress(job);
+    }
+
+    private void markCompleted(TranscodeJobEntity job, PodcastEntity podcast) {
+        LocalDateTime now = LocalDateTime.now();
+        updateOwnedJob(job, new Update()
+                .set("status", TranscodeJobStatus.COMPLETED)
+                .set("errorMessage", null)
+                .set("completedAt", now));
+        job.setStatus(TranscodeJobStatus.COMPLETED);
+        job.setErrorMessage(null);
+        job.setCompletedAt(now);
+        publishProgress(job);
+
+        notifyOwner(job, "Podcast của bạn đã sẵn sàng!",
+                "Video " + podcast.getTitle() + " đã được xử lý xong.");
+    }
+
+    private void markFailed(TranscodeJobEntity job, String reason) {
+        updateOwnedJob(job, new Update()
+                .set("status", TranscodeJobStatus.FAILED)
+                .set("errorMessage", reason));
+        job.setStatus(TranscodeJobStatus.FAILED);
+        job.setErrorMessage(reason);
+        publishProgress(job);
+    }
+
+    /**
+     * Ghi các field được chỉ định khi job vẫn RUNNING và thuộc worker đã nhận nó.
+     * Job đã bị thu hồi / node khác nhận lại thì ném JobOwnershipLostException để dừng xử lý.
+     */
+    private void updateOwnedJob(TranscodeJobEntity job, Update update) {
+        LocalDateTime now = LocalDateTime.now();
+        update.set("updatedAt", now);
+        Query query = new Query(Criteria.where("_id").is(job.getId())
+                .and("status").is(TranscodeJobStatus.RUNNING)
+                .and("workerId").is(job.getWorkerId()));
+        if (mongoTemplate.updateFirst(query, update, TranscodeJobEntity.class).getMatchedCount() == 0) {
+            throw new JobOwnershipLostException(job);
+        }
+        job.setUpdatedAt(now);
+    }
+
+    private void handleFailure(TranscodeJobEntity job, Exception e) {
+        handleFailure(job, e, null);
+    }
+
+    /**
+     * Chỉ chuyển trạng thái khi job vẫn RUNNING và thuộc đúng worker đã đọc (và còn stale nếu staleBefore != null),
+     * để không ghi đè job đã được node khác nhận lại. Trả về false nếu job không còn thuộc worker đó.
+     */
+    private boolean handleFailure(TranscodeJobEntity job, Exception e, LocalDateTime staleBefore) {
+        Criteria criteria = Criteria.where("_id").is(job.getId())
+                .and("status").is(TranscodeJobStatus.RUNNING)
+                .and("workerId").is(job.getWorkerId());
+        if (staleBefore != null) {
+            criteria = criteria.and("updatedAt").lt(staleBefore);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        boolean exhausted = job.getAttempts() >= job.getMaxAttempts();
+        Update update = new Update()
+                .set("errorMessage", e.getMessage())
+                .set("updatedAt", now);
+        if (exhausted) {
+            update.set("status", TranscodeJobStatus.FAILED);
+        } else {
+            // Retry với backoff tăng dần, tiếp tục từ stage đang lỗi
+            long backoff = retryBackoffSeconds * (1L << Math.max(0, job.getAttempts() - 1));
+            update.set("status", TranscodeJobStatus.PENDING)
+                    .set("workerId", null)
+                    .set("nextAttemptAt", now.plusSeconds(backoff));
+        }
+
+        TranscodeJobEntity updated = mongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), TranscodeJobEntity.class);
+        if (updated == null) {
+            log.warn("Transcode job {} is no longer owned by worker {}, skip failure handling", job.getId(), job.getWorkerId());
+            return false;
+        }
+        publishProgress(updated);
+
+        if (exhausted) {
+            notifyOwner(updated, "Xử lý podcast thất bại",
+                    "Không thể xử lý video sau " + updated.getAttempts() + " lần thử: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void publishProgress(TranscodeJobEntity job) {
+        try {
+            messagingTemplate.convertAndSendToUser(job.getUserId(), PROGRESS_DESTINATION, toModel(job));
+        } catch (Exception e) {
+            log.error("Failed to publish transcode progress for job {}", job.getId(), e);
+        }
+    }
+
+    private void notifyOwner(TranscodeJobEntity job, String title, String content) {
+        try {
+            notificationService.saveNotificationNonSender(
+                    job.getUserId(),
+                    NotiType.UPLOAD,
+                    title,
+                    content,
+                    "/watch?pid=" + job.getPodcastId()
+            );
+        } catch (Exception e) {
+            log.error("Failed to send transcode notification for job {}", job.getId(), e);
+        }
+    }
+
+    private void checkOwner(TranscodeJobEntity job) throws Exception {
+        UserEntity currentUser = userService.getUserByAuthentication();
+        if (!job.getUserId().equals(currentUser.getId())) {
+            throw new PermissionDeniedException("You do not have permission to view this job");
+        }
+    }
+
+    private TranscodeJobModel toModel(TranscodeJobEntity job) {
+        return new TranscodeJobModel(
+                job.getId(),
+                job.getPodcastId(),
+                job.getStatus(),
+                job.getStage(),
+                job.getProgress(),
+                job.getAttempts(),
+                job.getErrorMessage(),
+                job.getTranscodeElapsedMs(),
+                job.getRenditionMetrics(),
+                job.getCreatedAt(),
+                job.getUpdatedAt()
+        );
+    }
+
+    private static class JobOwnershipLostException extends RuntimeException {
+        JobOwnershipLostException(TranscodeJobEntity job) {
+            super("Transcode job " + job.getId() + " is no longer owned by worker " + job.getWorkerId()
+                    + ", stop processing at stage " + job.getStage());
+        }
+    }
+}
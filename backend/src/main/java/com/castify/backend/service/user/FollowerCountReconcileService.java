@@ -0,0 +1,137 @@
+package com.castify.backend.service.user;
+
+import com.castify.backend.entity.UserEntity;
+import com.castify.backend.service.authenticatation.PrincipalCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Đối soát bộ đếm totalFollower trên user với dữ liệu following thực tế,
+ * sửa các lệch do save cả document hoặc lỗi giữa chừng khi follow/unfollow.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FollowerCountReconcileService {
+    private static final int BATCH_SIZE = 500;
+    private static final String LOCK_KEY = "follower_count_reconcile_lock";
+    private static final Duration LOCK_TTL = Duration.ofMinutes(30);
+
+    private final MongoTemplate mongoTemplate;
+    private final PrincipalCache principalCache;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onStartup() {
+        // Index multikey cho following.userId (auto-index-creation đang tắt)
+        mongoTemplate.indexOps(UserEntity.class)
+                .ensureIndex(new Index().on("following.userId", Sort.Direction.ASC).named("following_user_id_idx"));
+        reconcile();
+    }
+
+    @Scheduled(cron = "${user.follower-count.reconcile-cron:0 30 3 * * *}")
+    public void reconcile() {
+        try {
+            // Nhiều instance cùng khởi động/cùng cron: chỉ 1 instance đối soát
+            Boolean acquired = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(LOCK_KEY, "1", LOCK_TTL);
+            if (!Boolean.TRUE.equals(acquired)) {
+                return;
+            }
+
+            Query query = new Query();
+            query.fields().include("_id").include("totalFollower");
+
+            // Đọc totalFollower trước rồi mới đếm follower thực tế theo từng lô,
+            // follow/unfollow chen vào giữa sẽ làm đổi totalFollower và lệnh ghi có điều kiện bị bỏ qua
+            List<Document> batch = new ArrayList<>(BATCH_SIZE);
+            int fixed = 0;
+            try (Stream<Document> stream = mongoTemplate.stream(query, Document.class, "user")) {
+                Iterator<Document> users = stream.iterator();
+                while (users.hasNext()) {
+                    batch.add(users.next());
+                    if (batch.size() == BATCH_SIZE) {
+                        fixed += reconcileBatch(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                fixed += reconcileBatch(batch);
+            }
+
+            if (fixed > 0) {
+                log.info("Reconciled follower count for {} users", fixed);
+            }
+        } catch (Exception e) {
+            log.error("Error reconciling follower counts", e);
+        }
+    }
+
+    private int reconcileBatch(List<Document> users) {
+        List<String> userIds = users.stream().map(user -> user.get("_id").toString()).toList();
+
+        // Đếm follower thực tế của các user trong lô (dùng index following.userId)
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("following.userId").in(userIds)),
+                Aggregation.unwind("following"),
+                Aggregation.match(Criteria.where("following.userId").in(userIds)),
+                Aggregation.group("following.userId").count().as("count")
+        );
+        Map<String, Long> actualCounts = new HashMap<>();
+        for (Document result : mongoTemplate.aggregate(aggregation, UserEntity.class, Document.class)) {
+            Object userId = result.get("_id");
+            if (userId != null) {
+                actualCounts.put(userId.toString(), ((Number) result.get("count")).longValue());
+            }
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserEntity.class);
+        List<String> fixedUserIds = new ArrayList<>();
+        for (Document user : users) {
+            String userId = user.get("_id").toString();
+            Number stored = (Number) user.get("totalFollower");
+            long expected = actualCounts.getOrDefault(userId, 0L);
+            if (stored != null && stored.longValue() == expected) {
+                continue;
+            }
+
+            // Chỉ ghi khi totalFollower vẫn là giá trị vừa đọc
+            Criteria criteria = Criteria.where("_id").is(user.get("_id"))
+                    .and("totalFollower").is(stored == null ? null : stored.longValue());
+            bulkOps.updateOne(new Query(criteria), new Update().set("totalFollower", expected));
+            fixedUserIds.add(userId);
+        }
+        if (fixedUserIds.isEmpty()) {
+            return 0;
+        }
+
+        int modified = bulkOps.execute().getModifiedCount();
+        principalCache.invalidateAll(fixedUserIds);
+        return modified;
+    }
+}
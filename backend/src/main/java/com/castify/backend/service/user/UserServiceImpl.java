@@ -4,6 +4,7 @@ import com.castify.backend.entity.UserEntity;
 import com.castify.backend.entity.location.WardEntity;
 import com.castify.backend.enums.NotiType;
 import com.castify.backend.enums.Role;
+import com.castify.backend.enums.SearchCategory;
 import com.castify.backend.models.PageDTO;
 import com.castify.backend.models.authentication.ChangePssReq;
 import com.castify.backend.models.paginated.PaginatedResponse;
@@ -14,6 +15,8 @@ import com.castify.backend.repository.WardRepository;
 import com.castify.backend.repository.template.UserTemplate;
 import com.castify.backend.service.notification.INotificationService;
 import com.castify.backend.service.notification.NotificationServiceImpl;
+import com.castify.backend.service.authenticatation.PrincipalCache;
+import com.castify.backend.service.search.SearchIndexService;
 import com.castify.backend.service.uploadFile.IUploadFileService;
 import com.castify.backend.utils.SecurityUtils;
 import lombok.extern.slf4j.Slf4j;
@@ -58,6 +61,10 @@ public class UserServiceImpl implements IUserService {
     private INotificationService notificationService = new NotificationServiceImpl();
     @Autowired
     private MongoTemplate mongoTemplate;
+    @Autowired
+    private SearchIndexService searchIndexService;
+    @Autowired
+    private PrincipalCache principalCache;
 
     @Override
     public UserModel getUserByUsername(String username) throws Exception {
@@ -98,9 +105,8 @@ public class UserServiceImpl implements IUserService {
         // Tạo custom mapping hoặc sử dụng logic thủ công
         UserDetailModel userDetail = modelMapper.map(userEntity, UserDetailModel.class);
 
-        // Tính toán số lượng follower
-        long followerSize = userRepository.findUsersFollowers(userEntity.getId()).size();
-        userDetail.setTotalFollower(followerSize);
+        // Số lượng follower lấy từ bộ đếm trên user
+        userDetail.setTotalFollower(userEntity.getTotalFollower());
 
         // Tính toán số lượng posts
         long podcastSize = podcastRepository.countByUser(userEntity);
@@ -227,22 +233,29 @@ public class UserServiceImpl implements IUserService {
             userData.setFollowing(new ArrayList<>());
         }
 
-        // Tìm xem user hiện tại đã theo dõi targetUser chưa
-        Optional<FollowInfo> existingFollowing = userData.getFollowing()
-                .stream()
-                .filter(f -> f.getUserId().equals(targetUser.getId()))
-                .findFirst();
-
-        if (existingFollowing.isPresent()) {
+        // Cập nhật bằng $push/$pull thay vì save cả user để bộ đếm follower luôn khớp
+        if (userData.isFollow(targetUser.getId())) {
             // Nếu đã theo dõi, thực hiện unfollow
-            userData.getFollowing().remove(existingFollowing.get());
-            userRepository.save(userData);
+            Query query = new Query(Criteria.where("_id").is(userData.getId())
+                    .and("following.userId").is(targetUser.getId()));
+            Update update = new Update().pull("following", Query.query(Criteria.where("userId").is(targetUser.getId())).getQueryObject());
+            if (mongoTemplate.updateFirst(query, update, UserEntity.class).getModifiedCount() > 0) {
+                incrementFollowerCount(targetUser.getId(), -1);
+                principalCache.invalidate(userData.getId());
+            }
             return "Unfollowed successfully.";
         } else {
             // Nếu chưa theo dõi, thêm targetUser vào danh sách following
+            // Điều kiện $ne giúp request trùng (double click) không cộng follower 2 lần
+            Query query = new Query(Criteria.where("_id").is(userData.getId())
+                    .and("following.userId").ne(targetUser.getId()));
+            Update update = new Update().push("following", new FollowInfo(targetUser.getId(), LocalDateTime.now()));
+            if (mongoTemplate.updateFirst(query, update, UserEntity.class).getModifiedCount() == 0) {
+                return "Followed successfully.";
+            }
+            incrementFollowerCount(targetUser.getId(), 1);
+            principalCache.invalidate(userData.getId());
 //            String receiverId, NotiType type, String title, String content, String url
-            userData.getFollowing().add(new FollowInfo(targetUser.getId(), LocalDateTime.now()));
-            userRepository.save(userData);
             notificationService.saveNotification(
                     targetUser.getId(),
                     NotiType.FOLLOW,
@@ -255,6 +268,12 @@ public class UserServiceImpl implements IUserService {
     }
 
 
+    private void incrementFollowerCount(String userId, int delta) {
+        Query query = new Query(Criteria.where("_id").is(userId));
+        mongoTemplate.updateFirst(query, new Update().inc("totalFollower", delta), UserEntity.class);
+        principalCache.invalidate(userId);
+    }
+
     public List<UserEntity> suggestFriends(UserEntity currentUser) {
         // Lấy danh sách tất cả người dùng
         List<UserEntity> allUsers = userRepository.findAll();
@@ -544,7 +563,7 @@ public class UserServiceImpl implements IUserService {
     }
 
     private long getFollowerCount(UserEntity userEntity) {
-        return userRepository.findUsersFollowers(userEntity.getId()).size();
+        return userEntity.getTotalFollower();
     }
 
     private long getPostCount(UserEntity userEntity) {
@@ -602,15 +621,28 @@ public class UserServiceImpl implements IUserService {
 
     @Override
     public void updateFavoriteGenres(List<String> genreIds) {
+        // Principal có thể lấy từ cache: chỉ $set trường đổi, không save cả user cũ đè dữ liệu mới hơn
         UserEntity user = SecurityUtils.getCurrentUser();
-        user.setFavoriteGenreIds(genreIds);
-        userRepository.save(user);
+        Query query = new Query(Criteria.where("_id").is(user.getId()));
+        mongoTemplate.updateFirst(query, new Update().set("favoriteGenreIds", genreIds), UserEntity.class);
+        principalCache.invalidate(user.getId());
     }
 
     @Override
     public Page<UserSimple> searchUsers(String keyword, Pageable pageable) {
         try {
-            // Sử dụng method có sẵn
+            // Lấy id đã xếp hạng từ index, chỉ đọc DB cho trang hiện tại
+            Optional<List<String>> hits = searchIndexService.search(SearchCategory.USER, keyword);
+            if (hits.isPresent()) {
+                List<String> ids = hits.get();
+                int start = (int) Math.min(pageable.getOffset(), ids.size());
+                List<String> pageIds = ids.subList(start, Math.min(start + pageable.getPageSize(), ids.size()));
+                List<UserEntity> users = SearchIndexService.inRankOrder(pageIds,
+                        userRepository.findAllById(pageIds), UserEntity::getId);
+                return new PageImpl<>(users.stream().map(this::mapToUserSimpleAnonymous).toList(), pageable, ids.size());
+            }
+
+            // Index chưa dựng xong: dùng truy vấn regex cũ
             Page<UserEntity> userEntities = userRepositoryTemplate.findByKeywordWithAggregation(keyword, pageable);
 
             // Convert to UserSimple
@@ -643,6 +675,7 @@ public class UserServiceImpl implements IUserService {
                 Query query = new Query(Criteria.where("_id").is(userId));
                 Update update = new Update().addToSet("suggestedGenreIds").each(newSuggestedGenres.toArray());
                 mongoTemplate.updateFirst(query, update, UserEntity.class);
+                principalCache.invalidate(userId);
             }
         } catch (Exception e) {
             log.error("Error updating suggested genres for user {}: {}", userId, e.getMessage());
@@ -1,9 +1,11 @@
 package com.castify.backend.service.watchParty;
 
+import com.castify.backend.entity.watchParty.PlaybackSyncEvent;
 import com.castify.backend.entity.watchParty.WatchPartyMessageEntity;
 import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
 import com.castify.backend.enums.SyncEventType;
 import com.castify.backend.models.PageDTO;
+import com.castify.backend.models.paginated.CursorPaginatedResponse;
 import com.castify.backend.models.watchParty.EditWatchPartyRoomDTO;
 import com.castify.backend.models.watchParty.WatchPartyRoomModel;
 import org.springframework.data.domain.Page;
@@ -19,13 +21,15 @@ public interface IWatchPartyService {
     void leaveRoom(String roomId);
     void forceCloseRoom(String roomId);
     WatchPartyRoomEntity changePodcast(String roomId, String newPodcastId);
-    void syncPlayback(String roomId, long position, boolean isPlaying, SyncEventType eventType, String username);
-    WatchPartyMessageEntity sendMessage(String roomId, String message, String username);
+    void syncPlayback(String roomId, double position, boolean isPlaying, double playbackRate, SyncEventType eventType, String userId);
+    PlaybackSyncEvent getSyncState(String roomId, Long clientTime);
+    WatchPartyMessageEntity sendMessage(String roomId, String message, String sessionId, String userId);
     WatchPartyRoomEntity getRoomDetails(String roomId);
     PageDTO<WatchPartyRoomEntity> getPublicRooms(int page, int size,  String excludeUserId);
     PageDTO<WatchPartyRoomEntity> getMyRooms(int page, int size);
     WatchPartyRoomEntity getRoomByCode(String roomCode);
     List<WatchPartyMessageEntity> getRoomMessages(String roomId, int page, int size);
+    CursorPaginatedResponse<WatchPartyMessageEntity> getRoomMessagesBefore(String roomId, String before, int size);
     void kickUser(String roomId, String targetUserId, String reason);
     void banUser(String roomId, String targetUserId, String reason);
     void unbanUser(String roomId, String targetUserId);
@@ -0,0 +1,297 @@
+package com.castify.backend.service.watchParty;
+
+import com.castify.backend.entity.FrameEntity;
+import com.castify.backend.entity.UserEntity;
+import com.castify.backend.entity.watchParty.WatchPartyMessageEntity;
+import com.castify.backend.enums.MessageType;
+import com.castify.backend.models.watchParty.ChatSenderProfile;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Nhận chat của watch party: kiểm tra rate limit (token bucket theo user), dựng message từ
+ * thông tin người gửi đã cache theo session rồi trả về để broadcast ngay.
+ * Message được ghi xuống Mongo theo lô bởi flusher chạy nền; hàng đợi có giới hạn
+ * và mỗi message chỉ được ghi lại tối đa max-attempts lần khi Mongo lỗi.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WatchPartyChatPipeline {
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+    private static final long IDLE_BUCKET_MILLIS = 10 * 60 * 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${watch-party.chat.burst:5}")
+    private int burst;
+    @Value("${watch-party.chat.messages-per-second:1}")
+    private double messagesPerSecond;
+    @Value("${watch-party.chat.max-pending:50000}")
+    private int maxPending;
+    @Value("${watch-party.chat.max-attempts:5}")
+    private int maxAttempts;
+
+    private final Map<String, ChatSenderProfile> sendersBySession = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> bucketsByUser = new ConcurrentHashMap<>();
+    private final Queue<PendingMessage> pendingMessages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Lô đang ghi và các message trong lô bị xoá trong lúc ghi (khoá bằng queueLock cùng với hàng đợi)
+    private final Map<String, WatchPartyMessageEntity> inFlightMessages = new HashMap<>();
+    private final Set<String> deletedInFlightIds = new HashSet<>();
+    private final Object queueLock = new Object();
+
+    /**
+     * Tạo message chat, chưa ghi DB. Ném RuntimeException nếu user gửi quá nhanh.
+     */
+    public WatchPartyMessageEntity accept(String roomId, String message, String sessionId, String userId) {
+        TokenBucket bucket = bucketsByUser.computeIfAbsent(userId, id -> new TokenBucket(burst, messagesPerSecond));
+        if (!bucket.tryConsume()) {
+            throw new RuntimeException("You are sending messages too fast");
+        }
+        // Mongo chậm/lỗi lâu thì từ chối, không để hàng đợi chiếm hết bộ nhớ
+        if (pendingCount.get() >= maxPending) {
+            log.warn("Watch party chat queue is full, rejecting message of user {}", userId);
+            throw new RuntimeException("Chat is temporarily unavailable, please try again later");
+        }
+
+        ChatSenderProfile sender = sessionId != null
+                ? sendersBySession.computeIfAbsent(sessionId, id -> loadSender(userId))
+                : loadSender(userId);
+
+        WatchPartyMessageEntity chatMessage = new WatchPartyMessageEntity();
+        // Gán id trước để client xoá được message ngay cả khi chưa flush
+        chatMessage.setId(new ObjectId().toHexString());
+        chatMessage.setRoomId(roomId);
+        chatMessage.setUserId(sender.getUserId());
+        chatMessage.setUsername(sender.getUsername());
+        chatMessage.setAvatarUrl(sender.getAvatarUrl());
+        chatMessage.setUserFrameUrl(sender.getUserFrameUrl());
+        chatMessage.setMessage(message);
+        chatMessage.setType(MessageType.CHAT);
+
+        enqueue(new PendingMessage(chatMessage, 0));
+        return chatMessage;
+    }
+
+    /**
+     * Bỏ message của user chưa ghi xong xuống DB: còn trong hàng đợi thì xoá khỏi hàng đợi,
+     * đang nằm trong lô đang ghi thì đánh dấu để xoá ngay sau khi lô ghi xong.
+     * Trả về false nếu không có (đã ghi xong).
+     */
+    public boolean discard(String roomId, String messageId, String userId) {
+        synchronized (queueLock) {
+            if (removePending(pending -> pending.message().getId().equals(messageId)
+                    && pending.message().getRoomId().equals(roomId)
+                    && pending.message().getUserId().equals(userId))) {
+                return true;
+            }
+            WatchPartyMessageEntity inFlight = inFlightMessages.get(messageId);
+            if (inFlight != null && inFlight.getRoomId().equals(roomId) && inFlight.getUserId().equals(userId)) {
+                deletedInFlightIds.add(messageId);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public void discardRoom(String roomId) {
+        synchronized (queueLock) {
+            removePending(pending -> roomId.equals(pending.message().getRoomId()));
+            inFlightMessages.values().stream()
+                    .filter(message -> roomId.equals(message.getRoomId()))
+                    .forEach(message -> deletedInFlightIds.add(message.getId()));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        // Index cho phân trang chat theo cursor (timestamp, _id) (auto-index-creation đang tắt)
+        mongoTemplate.indexOps(WatchPartyMessageEntity.class).ensureIndex(new Index()
+                .on("roomId", Sort.Direction.ASC)
+                .on("timestamp", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("room_timestamp_id_idx"));
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        sendersBySession.remove(event.getSessionId());
+    }
+
+    @Scheduled(fixedDelayString = "${watch-party.chat.flush-interval-ms:1000}")
+    public void flush() {
+        List<PendingMessage> batch = new ArrayList<>();
+        synchronized (queueLock) {
+            PendingMessage pending;
+            while (batch.size() < MAX_BATCH_SIZE && (pending = pendingMessages.poll()) != null) {
+                pendingCount.decrementAndGet();
+                batch.add(pending);
+                inFlightMessages.put(pending.message().getId(), pending.message());
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            insert(batch);
+        }
+
+        // Dọn bucket của user không chat lâu (đã đầy lại)
+        long now = System.currentTimeMillis();
+        bucketsByUser.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        while (pendingCount.get() > 0) {
+            int before = pendingCount.get();
+            flush();
+            if (pendingCount.get() >= before) {
+                break; // Mongo lỗi, không lặp vô hạn khi tắt
+            }
+        }
+    }
+
+    private void insert(List<PendingMessage> batch) {
+        List<PendingMessage> failed = new ArrayList<>();
+        try {
+            BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, WatchPartyMessageEntity.class);
+            bulkOps.insert(batch.stream().map(PendingMessage::message).toList());
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // Bỏ qua lỗi trùng id (đã ghi ở lần trước), các lỗi khác thì ghi lại lần sau
+            e.getErrors().stream()
+                    .filter(error -> error.getCode() != DUPLICATE_KEY_ERROR)
+                    .forEach(error -> failed.add(batch.get(error.getIndex())));
+            log.error("Failed to insert {} of {} watch party messages", e.getErrors().size(), batch.size());
+        } catch (Exception e) {
+            failed.addAll(batch);
+            log.error("Failed to insert {} watch party messages, will retry", batch.size(), e);
+        }
+
+        List<String> deletedIds = new ArrayList<>();
+        synchronized (queueLock) {
+            for (PendingMessage pending : batch) {
+                String id = pending.message().getId();
+                inFlightMessages.remove(id);
+                if (deletedInFlightIds.remove(id)) {
+                    deletedIds.add(id);
+                }
+            }
+            for (PendingMessage pending : failed) {
+                if (deletedIds.contains(pending.message().getId())) {
+                    continue;
+                }
+                if (pending.attempts() + 1 >= maxAttempts) {
+                    log.error("Dropping watch party message {} after {} failed inserts", pending.message().getId(), maxAttempts);
+                    continue;
+                }
+                enqueue(new PendingMessage(pending.message(), pending.attempts() + 1));
+            }
+        }
+
+        // Message bị xoá trong lúc lô đang ghi
+        if (!deletedIds.isEmpty()) {
+            try {
+                mongoTemplate.remove(new Query(Criteria.where("_id").in(deletedIds)), WatchPartyMessageEntity.class);
+            } catch (Exception e) {
+                log.error("Failed to delete {} watch party messages removed while inserting", deletedIds.size(), e);
+            }
+        }
+    }
+
+    private void enqueue(PendingMessage pending) {
+        pendingMessages.add(pending);
+        pendingCount.incrementAndGet();
+    }
+
+    private boolean removePending(Predicate<PendingMessage> filter) {
+        boolean removed = false;
+        Iterator<PendingMessage> iterator = pendingMessages.iterator();
+        while (iterator.hasNext()) {
+            if (filter.test(iterator.next())) {
+                iterator.remove();
+                pendingCount.decrementAndGet();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private ChatSenderProfile loadSender(String userId) {
+        Query query = new Query(Criteria.where("_id").is(userId));
+        query.fields().include("username", "avatarUrl", "usedFrame");
+        UserEntity user = mongoTemplate.findOne(query, UserEntity.class);
+        if (user == null) {
+            throw new RuntimeException("User not found");
+        }
+
+        // Chỉ resolve frame 1 lần cho cả session
+        FrameEntity usedFrame = user.getUsedFrame();
+        String frameUrl = usedFrame != null ? usedFrame.getImageURL() : null;
+        return new ChatSenderProfile(user.getId(), user.getUsername(), user.getAvatarUrl(), frameUrl);
+    }
+
+    private record PendingMessage(WatchPartyMessageEntity message, int attempts) {
+    }
+
+    private static class TokenBucket {
+        private final int capacity;
+        private final double refillPerMillis;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, double perSecond) {
+            this.capacity = capacity;
+            this.refillPerMillis = perSecond / 1000.0;
+            this.tokens = capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        synchronized boolean tryConsume() {
+            refill(System.currentTimeMillis());
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isIdle(long now) {
+            return now - lastRefill > IDLE_BUCKET_MILLIS;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMillis);
+            lastRefill = now;
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.castify.backend.service.watchParty;
 
 import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
+import com.castify.backend.enums.SearchCategory;
 import com.castify.backend.repository.WatchPartyMessageRepository;
 import com.castify.backend.repository.WatchPartyRoomRepository;
+import com.castify.backend.service.search.SearchIndexService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -21,6 +28,10 @@ public class WatchPartyCleanupServiceImpl implements IWatchPartyCleanupService{
     private final WatchPartyRoomRepository roomRepository;
     private final WatchPartyMessageRepository messageRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final WatchPartyPlaybackStateService playbackStateService;
+    private final WatchPartyRoomCache roomCache;
+    private final MongoTemplate mongoTemplate;
+    private final SearchIndexService searchIndexService;
 
     @Scheduled(fixedRate = 300000) // Run every 5 minutes (300,000ms)
     @Transactional
@@ -87,12 +98,16 @@ public class WatchPartyCleanupServiceImpl implements IWatchPartyCleanupService{
         // Notify all participants before closing
         notifyRoomExpiration(room);
 
-        // Mark room as inactive
-        room.setActive(false);
-        room.setLastUpdated(LocalDateTime.now());
-
-        // Save room state
-        roomRepository.save(room);
+        // Mark room as inactive (chỉ $set, không ghi đè participants mà node khác vừa sửa)
+        WatchPartyRoomEntity expired = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(roomId).and("isActive").is(true)),
+                new Update().set("isActive", false).set("lastUpdated", LocalDateTime.now()).inc("revision", 1),
+                FindAndModifyOptions.options().returnNew(true), WatchPartyRoomEntity.class);
+        if (expired != null) {
+            roomCache.put(roomId, expired);
+            searchIndexService.refresh(SearchCategory.WATCH_PARTY_ROOM, roomId);
+        }
+        playbackStateService.remove(roomId);
 
         // Send final closure notification
         sendRoomClosedNotification(room, "AUTO_EXPIRED");
@@ -0,0 +1,342 @@
+package com.castify.backend.service.watchParty;
+
+import com.castify.backend.entity.watchParty.PlaybackSyncEvent;
+import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
+import com.castify.backend.enums.SyncEventType;
+import com.castify.backend.models.watchParty.PlaybackState;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import com.castify.backend.service.websocket.OutboundBackpressureInterceptor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giữ trạng thái phát (vị trí, play/pause, version) của các phòng watch party trong bộ nhớ.
+ * Sự kiện sync chỉ cập nhật bộ nhớ rồi broadcast; Mongo được ghi lại theo lô định kỳ
+ * (write-behind) và chỉ $set các field playback, không save lại cả document.
+ * <p>
+ * Trạng thái là 1 mốc (position + giờ server + playbackRate), mọi event gửi ra đều kèm serverTime
+ * để client tự tính vị trí dự kiến; server gửi heartbeat định kỳ và tự trả lời sync request.
+ * Chạy nhiều node thì mỗi thay đổi được phát sang các node khác làm bản sao; chỉ node nhận event
+ * gần nhất (owner) gửi heartbeat và ghi Mongo.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WatchPartyPlaybackStateService {
+    private static final long SEEK_COALESCE_MS = 50; // Gộp các SEEK liên tiếp khi user kéo thanh tua
+    private static final double DUPLICATE_TOLERANCE_SECONDS = 0.5; // Lệch ít hơn mức này coi như event lặp lại
+    private static final String PLAYBACK_CHANNEL = "watch_party_playback";
+    private static final String REMOVED_CHANNEL = "watch_party_playback_removed";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final IBrokerRelayService brokerRelayService;
+
+    private final Map<String, PlaybackState> states = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService coalesceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "watch-party-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void subscribeReplicas() {
+        brokerRelayService.subscribe(PLAYBACK_CHANNEL, PlaybackState.class, this::applyReplica);
+        brokerRelayService.subscribe(REMOVED_CHANNEL, String.class, states::remove);
+    }
+
+    /**
+     * Lấy trạng thái phát của phòng, khởi tạo từ snapshot trong Mongo nếu chưa có trong bộ nhớ.
+     */
+    public PlaybackState getState(WatchPartyRoomEntity room) {
+        return states.computeIfAbsent(room.getId(), id -> {
+            PlaybackState state = new PlaybackState();
+            state.setRoomId(id);
+            state.setPosition(room.getCurrentPosition());
+            state.setPlaying(room.isPlaying());
+            state.setUpdatedAt(toEpochMillis(room.getLastUpdated()));
+            state.setOwner(true);
+            return state;
+        });
+    }
+
+    /**
+     * Áp dụng 1 sự kiện sync và broadcast cho cả phòng.
+     * PLAY/PAUSE được gửi ngay, SEEK dồn dập được gộp lại chỉ gửi vị trí mới nhất.
+     */
+    public void apply(WatchPartyRoomEntity room, double position, boolean isPlaying, double playbackRate,
+                      SyncEventType eventType, String userId) {
+        PlaybackState state = getState(room);
+        double rate = playbackRate > 0 ? playbackRate : 1.0;
+        long now = System.currentTimeMillis();
+        boolean broadcastNow;
+        boolean scheduleSeek;
+        PlaybackState replica;
+
+        synchronized (state) {
+            // Client báo lại đúng vị trí server đã dự kiến (heartbeat/echo) thì bỏ qua
+            if (eventType == state.getLastEventType()
+                    && isPlaying == state.isPlaying()
+                    && rate == state.getPlaybackRate()
+                    && Math.abs(position - state.expectedPosition(now)) < DUPLICATE_TOLERANCE_SECONDS) {
+                return;
+            }
+
+            state.setPosition(position);
+            state.setPlaying(isPlaying);
+            state.setPlaybackRate(rate);
+            state.setVersion(state.getVersion() + 1);
+            state.setUpdatedAt(now);
+            state.setUpdatedBy(userId);
+            state.setLastEventType(eventType);
+            state.setOwner(true);
+            state.setDirty(true);
+            replica = copyOf(state);
+
+            if (eventType == SyncEventType.SEEK) {
+                // Đã có lượt gửi đang chờ thì nó sẽ lấy vị trí mới nhất
+                scheduleSeek = !state.isBroadcastPending();
+                state.setBroadcastPending(true);
+                broadcastNow = false;
+            } else {
+                state.setBroadcastPending(false);
+                broadcastNow = true;
+                scheduleSeek = false;
+            }
+        }
+
+        brokerRelayService.publish(PLAYBACK_CHANNEL, replica);
+
+        // Giữ object phòng trong cache khớp với trạng thái mới (không ghi DB)
+        room.setCurrentPosition((long) position);
+        room.setPlaying(isPlaying);
+        room.setLastUpdated(toLocalDateTime(now));
+
+        if (broadcastNow) {
+            broadcast(state);
+        } else if (scheduleSeek) {
+            coalesceExecutor.schedule(() -> flushPendingSeek(state), SEEK_COALESCE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Ghi trạng thái phát trong bộ nhớ (mới hơn Mongo) lên object phòng trước khi trả về hoặc save.
+     */
+    public void overlay(WatchPartyRoomEntity room) {
+        PlaybackState state = states.get(room.getId());
+        if (state == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            room.setCurrentPosition((long) state.expectedPosition(now));
+            room.setPlaying(state.isPlaying());
+            room.setLastUpdated(toLocalDateTime(now));
+        }
+    }
+
+    /**
+     * Trạng thái hiện tại để trả lời sync request, không cần hỏi host.
+     */
+    public PlaybackSyncEvent getSyncState(WatchPartyRoomEntity room, Long clientTime) {
+        PlaybackSyncEvent syncEvent = toEvent(getState(room), SyncEventType.SYNC_STATE);
+        syncEvent.setClientTime(clientTime);
+        return syncEvent;
+    }
+
+    /**
+     * Đặt lại trạng thái phát (ví dụ khi host đổi video). Trạng thái mới đã được lưu cùng room.
+     */
+    public void reset(WatchPartyRoomEntity room) {
+        PlaybackState previous = states.remove(room.getId());
+        PlaybackState state = getState(room);
+        PlaybackState replica;
+        synchronized (state) {
+            if (previous != null) {
+                state.setVersion(previous.getVersion() + 1);
+            }
+            state.setUpdatedAt(System.currentTimeMillis());
+            replica = copyOf(state);
+        }
+        brokerRelayService.publish(PLAYBACK_CHANNEL, replica);
+    }
+
+    public void remove(String roomId) {
+        states.remove(roomId);
+        brokerRelayService.publish(REMOVED_CHANNEL, roomId);
+    }
+
+    /**
+     * Ghi các phòng có thay đổi xuống Mongo, tối đa 1 lần mỗi chu kỳ cho mỗi phòng.
+     */
+    @Scheduled(fixedDelayString = "${watch-party.playback.persist-interval-ms:2000}")
+    public void persistDirtyStates() {
+        List<PlaybackState> snapshots = new ArrayList<>();
+        for (PlaybackState state : states.values()) {
+            synchronized (state) {
+                if (!state.isDirty()) {
+                    continue;
+                }
+                state.setDirty(false);
+                snapshots.add(copyOf(state));
+            }
+        }
+
+        if (snapshots.isEmpty()) {
+            return;
+        }
+
+        try {
+            BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, WatchPartyRoomEntity.class);
+            for (PlaybackState snapshot : snapshots) {
+                Query query = new Query(Criteria.where("_id").is(snapshot.getRoomId()));
+                Update update = new Update()
+                        .set("currentPosition", (long) snapshot.getPosition())
+                        .set("isPlaying", snapshot.isPlaying())
+                        .set("lastUpdated", toLocalDateTime(snapshot.getUpdatedAt()));
+                bulkOps.updateOne(query, update);
+            }
+            bulkOps.execute();
+        } catch (Exception e) {
+            log.error("Failed to persist playback state of {} rooms", snapshots.size(), e);
+            // Đánh dấu lại để lần sau ghi tiếp
+            for (PlaybackState snapshot : snapshots) {
+                PlaybackState state = states.get(snapshot.getRoomId());
+                if (state != null) {
+                    synchronized (state) {
+                        state.setDirty(true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Heartbeat nhẹ cho các phòng đang phát để client bù lệch (drift) mà không cần event từ host.
+     */
+    @Scheduled(fixedRateString = "${watch-party.playback.heartbeat-interval-ms:5000}")
+    public void sendHeartbeats() {
+        for (PlaybackState state : states.values()) {
+            if (!state.isPlaying() || !state.isOwner()) {
+                continue;
+            }
+            PlaybackSyncEvent heartbeat = toEvent(state, SyncEventType.HEARTBEAT);
+            heartbeat.setUserId(null);
+            messagingTemplate.convertAndSend("/topic/room/" + heartbeat.getRoomId() + "/sync", heartbeat,
+                    OutboundBackpressureInterceptor.droppableHeaders());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coalesceExecutor.shutdownNow();
+        persistDirtyStates();
+    }
+
+    /**
+     * Nhận thay đổi từ node khác. Node đó đã broadcast cho client rồi nên ở đây chỉ cập nhật bản sao.
+     */
+    private void applyReplica(PlaybackState replica) {
+        PlaybackState state = states.computeIfAbsent(replica.getRoomId(), id -> {
+            PlaybackState created = new PlaybackState();
+            created.setRoomId(id);
+            return created;
+        });
+        synchronized (state) {
+            if (state.getVersion() > replica.getVersion()
+                    || (state.getVersion() == replica.getVersion() && state.getUpdatedAt() > replica.getUpdatedAt())) {
+                return;
+            }
+            state.setPosition(replica.getPosition());
+            state.setPlaying(replica.isPlaying());
+            state.setPlaybackRate(replica.getPlaybackRate());
+            state.setVersion(replica.getVersion());
+            state.setUpdatedAt(replica.getUpdatedAt());
+            state.setUpdatedBy(replica.getUpdatedBy());
+            state.setLastEventType(replica.getLastEventType());
+            state.setOwner(false);
+            state.setDirty(false);
+            state.setBroadcastPending(false);
+        }
+    }
+
+    private PlaybackState copyOf(PlaybackState state) {
+        PlaybackState copy = new PlaybackState();
+        copy.setRoomId(state.getRoomId());
+        copy.setPosition(state.getPosition());
+        copy.setPlaying(state.isPlaying());
+        copy.setPlaybackRate(state.getPlaybackRate());
+        copy.setVersion(state.getVersion());
+        copy.setUpdatedAt(state.getUpdatedAt());
+        copy.setUpdatedBy(state.getUpdatedBy());
+        copy.setLastEventType(state.getLastEventType());
+        return copy;
+    }
+
+    private void flushPendingSeek(PlaybackState state) {
+        synchronized (state) {
+            if (!state.isBroadcastPending()) {
+                return; // Đã có PLAY/PAUSE gửi trạng thái mới hơn
+            }
+            state.setBroadcastPending(false);
+        }
+        broadcast(state);
+    }
+
+    private void broadcast(PlaybackState state) {
+        PlaybackSyncEvent syncEvent = toEvent(state, null);
+        messagingTemplate.convertAndSend("/topic/room/" + syncEvent.getRoomId() + "/sync", syncEvent);
+    }
+
+    /**
+     * Chụp trạng thái thành event, position được quy về thời điểm gửi (serverTime = now).
+     * eventType = null nghĩa là dùng event gần nhất đã làm đổi trạng thái.
+     */
+    private PlaybackSyncEvent toEvent(PlaybackState state, SyncEventType eventType) {
+        long now = System.currentTimeMillis();
+        PlaybackSyncEvent syncEvent = new PlaybackSyncEvent();
+        synchronized (state) {
+            syncEvent.setRoomId(state.getRoomId());
+            syncEvent.setUserId(state.getUpdatedBy());
+            syncEvent.setPosition(state.expectedPosition(now));
+            syncEvent.setPlaying(state.isPlaying());
+            syncEvent.setPlaybackRate(state.getPlaybackRate());
+            syncEvent.setEventType(eventType != null ? eventType : state.getLastEventType());
+            syncEvent.setVersion(state.getVersion());
+        }
+        syncEvent.setServerTime(now);
+        return syncEvent;
+    }
+
+    private long toEpochMillis(LocalDateTime time) {
+        if (time == null) {
+            return System.currentTimeMillis();
+        }
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
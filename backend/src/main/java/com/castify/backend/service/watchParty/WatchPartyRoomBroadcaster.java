@@ -0,0 +1,96 @@
+package com.castify.backend.service.watchParty;
+
+import com.castify.backend.entity.watchParty.WatchPartyParticipant;
+import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
+import com.castify.backend.enums.ParticipantEventType;
+import com.castify.backend.models.watchParty.ParticipantDelta;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gửi thay đổi của phòng ra WebSocket.
+ * Thay đổi người tham gia được gửi ngay dưới dạng delta nhỏ trên /participants;
+ * document phòng đầy đủ trên /update được gộp theo cửa sổ ngắn, 1 đợt nhiều người vào/ra chỉ gửi 1 lần.
+ * /update không được đánh dấu droppable: client không nhận được bản sau nếu phòng không thay đổi nữa.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WatchPartyRoomBroadcaster {
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${watch-party.fanout.update-window-ms:250}")
+    private long updateWindowMs;
+
+    // roomId -> snapshot JSON mới nhất của phòng đang chờ gửi
+    private final Map<String, JsonNode> pendingUpdates = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService fanoutExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "watch-party-fanout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Gửi document phòng (đã gộp) cho client đang dùng /update.
+     */
+    public void roomUpdated(WatchPartyRoomEntity room) {
+        String roomId = room.getId();
+        // Chụp lại phòng ngay lúc gọi, entity vẫn bị sửa tiếp trước khi cửa sổ gộp kết thúc
+        JsonNode snapshot = objectMapper.valueToTree(room);
+        // Chỉ lên lịch gửi khi chưa có đợt nào chờ, các lần sau chỉ thay bằng bản mới nhất
+        if (pendingUpdates.put(roomId, snapshot) == null) {
+            fanoutExecutor.schedule(() -> flushUpdate(roomId), updateWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void participantChanged(WatchPartyRoomEntity room, ParticipantEventType type, String userId) {
+        participantChanged(room, type, userId, null);
+    }
+
+    public void participantChanged(WatchPartyRoomEntity room, ParticipantEventType type, String userId,
+                                   WatchPartyParticipant participant) {
+        ParticipantDelta delta = new ParticipantDelta();
+        delta.setRoomId(room.getId());
+        delta.setType(type);
+        delta.setUserId(userId);
+        delta.setParticipant(participant);
+        delta.setHostUserId(room.getHostUserId());
+        delta.setParticipantCount(room.getParticipants().size());
+
+        messagingTemplate.convertAndSend("/topic/room/" + room.getId() + "/participants", delta);
+    }
+
+    public void cancel(String roomId) {
+        pendingUpdates.remove(roomId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanoutExecutor.shutdownNow();
+    }
+
+    private void flushUpdate(String roomId) {
+        JsonNode room = pendingUpdates.remove(roomId);
+        if (room == null) {
+            return;
+        }
+        try {
+            messagingTemplate.convertAndSend("/topic/room/" + roomId + "/update", room);
+        } catch (Exception e) {
+            log.error("Failed to broadcast update for room {}", roomId, e);
+        }
+    }
+}
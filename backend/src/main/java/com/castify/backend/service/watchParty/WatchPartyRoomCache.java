@@ -0,0 +1,98 @@
+package com.castify.backend.service.watchParty;
+
+import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
+import com.castify.backend.service.websocket.IBrokerRelayService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache các phòng đang hoạt động. 1 node thì giữ trong bộ nhớ,
+ * chạy nhiều node (relay = redis) thì dùng chung qua Redis để mọi node thấy cùng 1 trạng thái phòng.
+ * Chỉ ghi khi revision không cũ hơn bản đang có, để node đọc Mongo chậm không ghi đè thay đổi mới hơn.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WatchPartyRoomCache {
+    private static final String KEY_PREFIX = "watch_party_room:";
+    private static final Duration TTL = Duration.ofMinutes(30);
+
+    // SET nếu revision mới >= revision đang lưu (ARGV: document, revision, ttl ms)
+    private static final RedisScript<Long> PUT_IF_NEWER = new DefaultRedisScript<>("""
+            local current = redis.call('GET', KEYS[1])
+            if current then
+              local ok, doc = pcall(cjson.decode, current)
+              if ok and type(doc) == 'table' and tonumber(doc['revision']) and tonumber(doc['revision']) > tonumber(ARGV[2]) then
+                return 0
+              end
+            end
+            redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3])
+            return 1
+            """, Long.class);
+
+    private final IBrokerRelayService brokerRelayService;
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final Map<String, WatchPartyRoomEntity> localRooms = new ConcurrentHashMap<>();
+
+    public WatchPartyRoomEntity get(String roomId) {
+        if (!brokerRelayService.isClustered()) {
+            return localRooms.get(roomId);
+        }
+        try {
+            Object cached = redisTemplate.opsForValue().get(KEY_PREFIX + roomId);
+            // Phòng đã đóng được giữ lại như tombstone để chặn bản cũ, không trả ra ngoài
+            return cached instanceof WatchPartyRoomEntity room && room.isActive() ? room : null;
+        } catch (Exception e) {
+            log.warn("Failed to read room {} from Redis: {}", roomId, e.getMessage());
+            return null; // Đọc lại từ Mongo
+        }
+    }
+
+    public void put(String roomId, WatchPartyRoomEntity room) {
+        if (!brokerRelayService.isClustered()) {
+            if (!room.isActive()) {
+                localRooms.remove(roomId);
+                return;
+            }
+            localRooms.merge(roomId, room,
+                    (current, candidate) -> candidate.getRevision() >= current.getRevision() ? candidate : current);
+            return;
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+            redisTemplate.execute(PUT_IF_NEWER, RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class),
+                    List.of(KEY_PREFIX + roomId),
+                    valueSerializer.serialize(room),
+                    String.valueOf(room.getRevision()).getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(TTL.toMillis()).getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            log.warn("Failed to cache room {} in Redis: {}", roomId, e.getMessage());
+        }
+    }
+
+    public void remove(String roomId) {
+        if (!brokerRelayService.isClustered()) {
+            localRooms.remove(roomId);
+            return;
+        }
+        try {
+            redisTemplate.delete(KEY_PREFIX + roomId);
+        } catch (Exception e) {
+            log.warn("Failed to evict room {} from Redis: {}", roomId, e.getMessage());
+        }
+    }
+}
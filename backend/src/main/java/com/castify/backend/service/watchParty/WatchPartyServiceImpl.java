@@ -1,6 +1,5 @@
 package com.castify.backend.service.watchParty;
 
-import com.castify.backend.entity.FrameEntity;
 import com.castify.backend.entity.PodcastEntity;
 import com.castify.backend.entity.UserEntity;
 import com.castify.backend.entity.watchParty.PlaybackSyncEvent;
@@ -8,42 +7,59 @@ import com.castify.backend.entity.watchParty.WatchPartyMessageEntity;
 import com.castify.backend.entity.watchParty.WatchPartyParticipant;
 import com.castify.backend.entity.watchParty.WatchPartyRoomEntity;
 import com.castify.backend.enums.MessageType;
+import com.castify.backend.enums.ParticipantEventType;
+import com.castify.backend.enums.SearchCategory;
 import com.castify.backend.enums.SyncEventType;
 import com.castify.backend.models.PageDTO;
+import com.castify.backend.models.paginated.CursorPaginatedResponse;
 import com.castify.backend.models.watchParty.EditWatchPartyRoomDTO;
 import com.castify.backend.models.watchParty.WatchPartyRoomModel;
 import com.castify.backend.repository.*;
+import com.castify.backend.service.search.SearchIndexService;
+import com.castify.backend.utils.MessageCursorUtil;
 import com.castify.backend.utils.SecurityUtils;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.*;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class WatchPartyServiceImpl implements IWatchPartyService {
+    // Field của phòng nằm trong index tìm kiếm (xem SearchIndexService)
+    private static final List<String> INDEXED_FIELDS = List.of("roomName", "roomCode", "publish", "isActive");
+
     private final WatchPartyRoomRepository roomRepository;
     private final WatchPartyMessageRepository messageRepository;
     private final PodcastRepository podcastRepository;
     private final SimpMessagingTemplate messagingTemplate;
 
-    private final Map<String, WatchPartyRoomEntity> activeRooms = new ConcurrentHashMap<>();
+    private final WatchPartyRoomCache activeRooms;
     private final UserRepository userRepository;
     private final MongoTemplate mongoTemplate;
     private final ModelMapper modelMapper;
     private final FrameRepository frameRepository;
+    private final WatchPartyPlaybackStateService playbackStateService;
+    private final WatchPartyRoomBroadcaster roomBroadcaster;
+    private final WatchPartyChatPipeline chatPipeline;
+    private final SearchIndexService searchIndexService;
 
     @Override
     public WatchPartyRoomEntity createRoom(String podcastId, String roomName, boolean isPublic) {
@@ -70,7 +86,7 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         if (host.getUsedFrame() != null) {
             hostParticipant.setUserFrameUrl(host.getUsedFrame().getImageURL());
         }
-        room.getParticipants().add(hostParticipant);
+        room.addParticipant(hostParticipant);
 
         // Save to DB and cache
         room = roomRepository.save(room);
@@ -97,15 +113,16 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         boolean oldIsPublic = room.isPublish();
 
         // Update room settings
+        Update update = new Update()
+                .set("publish", editRequest.isPublish())
+                .set("allowChat", editRequest.isAllowChat());
         if (editRequest.getRoomName() != null && !editRequest.getRoomName().trim().isEmpty()) {
-            room.setRoomName(editRequest.getRoomName().trim());
+            update.set("roomName", editRequest.getRoomName().trim());
+        }
+        room = updateRoom(hostCriteria(roomId, currentUser.getId()), update);
+        if (room == null) {
+            throw new RuntimeException("Only host can edit settings");
         }
-        room.setPublish(editRequest.isPublish());
-        room.setAllowChat(editRequest.isAllowChat());
-        room.setLastUpdated(LocalDateTime.now());
-
-        roomRepository.save(room);
-        activeRooms.put(roomId, room);
 
         List<String> changes = new ArrayList<>();
 
@@ -128,7 +145,7 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         }
 
         // Broadcast messages
-        messagingTemplate.convertAndSend("/topic/room/" + roomId + "/update", room);
+        roomBroadcaster.roomUpdated(room);
 
         Map<String, Object> settingsUpdate = new HashMap<>();
         settingsUpdate.put("roomName", room.getRoomName());
@@ -152,30 +169,21 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
 
         if (room.getExpiresAt() != null && room.getExpiresAt().isBefore(LocalDateTime.now())) {
             // Auto-expire the room
-            room.setActive(false);
-            roomRepository.save(room);
+            expireRoom(room.getId());
             throw new RuntimeException("Room has expired and is no longer available");
         }
 
-        if (room.isBanned(user.getId())) {
-            throw new RuntimeException("You are banned from this room");
-        }
-
-        // Kiểm tra room có full không
-        if (room.isFull()) {
-            throw new RuntimeException("Room is full");
-        }
+        checkCanJoin(room, user.getId());
 
         // Kiểm tra user đã trong room chưa
+        WatchPartyRoomEntity updated;
         if (room.hasParticipant(user.getId())) {
             // Update online status
-            room.getParticipants().stream()
-                    .filter(p -> p.getUserId().equals(user.getId()))
-                    .findFirst()
-                    .ifPresent(p -> {
-                        p.setOnline(true);
-                        p.setLastSeen(LocalDateTime.now());
-                    });
+            updated = updateRoom(Criteria.where("_id").is(room.getId()).and("isActive").is(true)
+                            .and("participants.userId").is(user.getId()),
+                    new Update()
+                            .set("participants.$.isOnline", true)
+                            .set("participants.$.lastSeen", LocalDateTime.now()));
         } else {
             // Add new participant
             WatchPartyParticipant participant = new WatchPartyParticipant();
@@ -185,18 +193,35 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
             if (user.getUsedFrame() != null) {
                 participant.setUserFrameUrl(user.getUsedFrame().getImageURL());
             }
-            room.getParticipants().add(participant);
+            // Điều kiện ban / đầy / đã tham gia được kiểm tra lại ngay trong lệnh $push
+            updated = updateRoom(Criteria.where("_id").is(room.getId()).and("isActive").is(true)
+                            .and("bannedUserIds").ne(user.getId())
+                            .and("participants.userId").ne(user.getId())
+                            .andOperator(Criteria.expr(ComparisonOperators
+                                    .valueOf(ArrayOperators.Size.lengthOfArray("participants"))
+                                    .lessThan("maxParticipants"))),
+                    new Update().push("participants", participant));
+        }
+
+        if (updated == null) {
+            // Phòng đổi giữa lúc đọc và ghi (node khác vừa ban, phòng vừa đầy hoặc user đã vào từ tab khác)
+            updated = roomRepository.findByIdAndIsActiveTrue(room.getId())
+                    .orElseThrow(() -> new RuntimeException("Room not found or expired"));
+            if (!updated.hasParticipant(user.getId())) {
+                checkCanJoin(updated, user.getId());
+                throw new RuntimeException("Could not join room, please try again");
+            }
+            activeRooms.put(updated.getId(), updated);
         }
-
-        // Update room
-        room.setLastUpdated(LocalDateTime.now());
-        room = roomRepository.save(room);
-        activeRooms.put(room.getId(), room);
+        room = updated;
+        playbackStateService.overlay(room);
 
         // Notify other participants
         notifyRoomParticipants(room.getId(), "USER_JOINED", user.getUsername() + " joined the room");
 
-        messagingTemplate.convertAndSend("/topic/room/" + room.getId() + "/update", room);
+        WatchPartyParticipant joined = room.findParticipant(user.getId());
+        roomBroadcaster.participantChanged(room, ParticipantEventType.JOINED, user.getId(), joined);
+        roomBroadcaster.roomUpdated(room);
 
         return room;
     }
@@ -205,37 +230,49 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
     public void leaveRoom(String roomId) {
         UserEntity user = SecurityUtils.getCurrentUser();
 
-        WatchPartyRoomEntity room = activeRooms.get(roomId);
-        if (room == null) {
-            room = roomRepository.findById(roomId).orElse(null);
-        }
+        // Remove participant
+        WatchPartyRoomEntity room = updateRoom(Criteria.where("_id").is(roomId).and("participants.userId").is(user.getId()),
+                new Update().pull("participants", new Document("userId", user.getId())));
 
         if (room != null) {
-            // Remove participant hoặc set offline
-            room.getParticipants().removeIf(p -> p.getUserId().equals(user.getId()));
-
-            // Nếu host leave thì chuyển host hoặc close room
-            if (room.isHost(user.getId())) {
-                if (!room.getParticipants().isEmpty()) {
+            // Nếu host leave thì chuyển host hoặc close room.
+            // Node khác có thể thêm / bớt người cùng lúc nên đọc lại và thử tiếp khi điều kiện không còn đúng
+            boolean hostChanged = false;
+            while (room != null && room.isActive() && room.isHost(user.getId())) {
+                if (room.getParticipants().isEmpty()) {
+                    // Close room if no participants left
+                    if (closeRoom(roomId)) {
+                        return;
+                    }
+                } else {
                     // Transfer host to first participant
                     WatchPartyParticipant newHost = room.getParticipants().get(0);
-                    room.setHostUserId(newHost.getUserId());
-                    notifyRoomParticipants(roomId, "HOST_TRANSFERRED",
-                            newHost.getUsername() + " is now the host");
-                } else {
-                    // Close room if no participants left
-                    closeRoom(roomId);
-                    return;
+                    WatchPartyRoomEntity transferred = updateRoom(Criteria.where("_id").is(roomId)
+                                    .and("hostUserId").is(user.getId())
+                                    .and("participants.userId").is(newHost.getUserId()),
+                            new Update().set("hostUserId", newHost.getUserId()));
+                    if (transferred != null) {
+                        room = transferred;
+                        hostChanged = true;
+                        notifyRoomParticipants(roomId, "HOST_TRANSFERRED",
+                                newHost.getUsername() + " is now the host");
+                        break;
+                    }
                 }
+                room = roomRepository.findById(roomId).orElse(null);
             }
-
-            room.setLastUpdated(LocalDateTime.now());
-            roomRepository.save(room);
-            activeRooms.put(roomId, room);
+            if (room == null || !room.isActive()) {
+                return;
+            }
+            playbackStateService.overlay(room);
 
             // Notify other participants
             notifyRoomParticipants(roomId, "USER_LEFT", user.getUsername() + " left the room");
-            messagingTemplate.convertAndSend("/topic/room/" + roomId + "/update", room);
+            roomBroadcaster.participantChanged(room, ParticipantEventType.LEFT, user.getId());
+            if (hostChanged) {
+                roomBroadcaster.participantChanged(room, ParticipantEventType.HOST_CHANGED, room.getHostUserId());
+            }
+            roomBroadcaster.roomUpdated(room);
         }
     }
 
@@ -255,7 +292,14 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
             throw new RuntimeException("Only host can close the room");
         }
 
-        room.getParticipants().clear();
+        // Close room
+        room = updateRoom(hostCriteria(roomId, currentUser.getId()),
+                new Update().set("participants", new ArrayList<>()).set("isActive", false));
+        if (room == null) {
+            throw new RuntimeException("Only host can close the room");
+        }
+
+        chatPipeline.discardRoom(roomId);
         messageRepository.deleteByRoomId(roomId);
 
         notifyRoomParticipants(roomId, "ROOM_CLOSED",
@@ -271,15 +315,8 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
                 )
         );
 
-        // Close room
-        room.setActive(false);
-        room.setLastUpdated(LocalDateTime.now());
-
-        // Save to database
-        roomRepository.save(room);
-
-        // Remove from active rooms cache
-        activeRooms.remove(roomId);
+        playbackStateService.remove(roomId);
+        roomBroadcaster.cancel(roomId);
     }
 
     @Override
@@ -305,15 +342,15 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         String oldPodcastTitle = oldPodcast != null ? oldPodcast.getTitle() : "Unknown";
 
         // Update room
-        room.setPodcastId(newPodcastId);
-        room.setPodcastThumbnail(newPodcast.getThumbnailUrl());
-        room.setCurrentPosition(0); // Reset to beginning
-        room.setPlaying(false); // Pause by default
-        room.setLastUpdated(LocalDateTime.now());
-
-        // Save to database
-        roomRepository.save(room);
-        activeRooms.put(roomId, room);
+        room = updateRoom(hostCriteria(roomId, currentUser.getId()), new Update()
+                .set("podcastId", newPodcastId)
+                .set("podcastThumbnail", newPodcast.getThumbnailUrl())
+                .set("currentPosition", 0L) // Reset to beginning
+                .set("isPlaying", false)); // Pause by default
+        if (room == null) {
+            throw new RuntimeException("Only host can change the podcast");
+        }
+        playbackStateService.reset(room);
 
         // Send system message
         String changeMessage = String.format("Host changed the video from \"%s\" to \"%s\"",
@@ -335,75 +372,52 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         messagingTemplate.convertAndSend("/topic/room/" + roomId + "/podcast-changed", podcastChangeData);
 
         // Broadcast room update
-        messagingTemplate.convertAndSend("/topic/room/" + roomId + "/update", room);
+        roomBroadcaster.roomUpdated(room);
 
         System.out.println(" Podcast changed successfully in room: " + roomId);
         return room;
     }
 
     /**
-     * Sync playback state
+     * Sync playback state. Trạng thái được giữ trong bộ nhớ, Mongo được ghi sau theo lô
      */
     @Override
-    public void syncPlayback(String roomId, long position, boolean isPlaying, SyncEventType eventType, String username) {
-        UserEntity user = userRepository.findByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
-
-        WatchPartyRoomEntity room = activeRooms.get(roomId);
-        if (room == null) {
-            room = roomRepository.findByIdAndIsActiveTrue(roomId).orElse(null);
-        }
+    public void syncPlayback(String roomId, double position, boolean isPlaying, double playbackRate,
+                             SyncEventType eventType, String userId) {
+        WatchPartyRoomEntity room = getRoomDetails(roomId);
 
         if (room == null) {
             throw new RuntimeException("Room not found");
         }
 
         // Kiểm tra quyền control (nếu hostOnlyControl = true)
-        if (room.isHostOnlyControl() && !room.isHost(user.getId())) {
+        if (room.isHostOnlyControl() && !room.isHost(userId)) {
             throw new RuntimeException("Only host can control playback");
         }
 
-        // Update room state
-        room.setCurrentPosition(position);
-        room.setPlaying(isPlaying);
-        room.setLastUpdated(LocalDateTime.now());
+        playbackStateService.apply(room, position, isPlaying, playbackRate, eventType, userId);
+    }
 
-        roomRepository.save(room);
-        activeRooms.put(roomId, room);
+    /**
+     * Trả lời sync request từ trạng thái trên server thay vì chuyển tới host
+     */
+    @Override
+    public PlaybackSyncEvent getSyncState(String roomId, Long clientTime) {
+        WatchPartyRoomEntity room = getRoomDetails(roomId);
 
-        // Broadcast to all participants
-        PlaybackSyncEvent syncEvent = new PlaybackSyncEvent();
-        syncEvent.setRoomId(roomId);
-        syncEvent.setUserId(user.getId());
-        syncEvent.setPosition(position);
-        syncEvent.setPlaying(isPlaying);
-        syncEvent.setEventType(eventType);
+        if (room == null) {
+            throw new RuntimeException("Room not found");
+        }
 
-        messagingTemplate.convertAndSend("/topic/room/" + roomId + "/sync", syncEvent);
+        return playbackStateService.getSyncState(room, clientTime);
     }
 
+    /**
+     * Chat đi qua pipeline: rate limit, người gửi lấy từ cache theo session, ghi DB theo lô ở nền
+     */
     @Override
-    public WatchPartyMessageEntity sendMessage(String roomId, String message, String username) {
-        UserEntity user = userRepository.findByUsername(username).orElseThrow(() -> new RuntimeException("User not found"));
-        FrameEntity usedFrame = user.getUsedFrame();
-
-        WatchPartyMessageEntity chatMessage = new WatchPartyMessageEntity();
-        chatMessage.setRoomId(roomId);
-        chatMessage.setUserId(user.getId());
-        chatMessage.setUsername(user.getUsername());
-        chatMessage.setAvatarUrl(user.getAvatarUrl());
-        chatMessage.setMessage(message);
-        chatMessage.setType(MessageType.CHAT);
-
-        if (usedFrame != null) {
-            chatMessage.setUserFrameUrl(usedFrame.getImageURL());
-        } else {
-            log.info("User {} has no frame", username);
-        }
-
-        messageRepository.save(chatMessage);
-        return chatMessage;
-        // Broadcast to room
-//        messagingTemplate.convertAndSend("/topic/room/" + roomId + "/chat", chatMessage);
+    public WatchPartyMessageEntity sendMessage(String roomId, String message, String sessionId, String userId) {
+        return chatPipeline.accept(roomId, message, sessionId, userId);
     }
 
     @Override
@@ -414,14 +428,15 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
             if (room != null) {
                 if (room.getExpiresAt() != null && room.getExpiresAt().isBefore(LocalDateTime.now())) {
                     // Auto-expire the room
-                    room.setActive(false);
-                    roomRepository.save(room);
-                    activeRooms.remove(roomId);
+                    expireRoom(roomId);
                     return null; // Room expired
                 }
                 activeRooms.put(roomId, room);
             }
         }
+        if (room != null) {
+            playbackStateService.overlay(room);
+        }
         return room;
     }
 
@@ -479,7 +494,7 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         }
 
         // Lấy messages với pagination, sort theo timestamp desc
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "timestamp"));
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "timestamp", "_id"));
         List<WatchPartyMessageEntity> messages = messageRepository.findByRoomIdOrderByTimestampDesc(roomId, pageable);
 
         // Reverse list để hiển thị theo thứ tự thời gian tăng dần (cũ -> mới)
@@ -488,6 +503,45 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         return messages;
     }
 
+    @Override
+    public CursorPaginatedResponse<WatchPartyMessageEntity> getRoomMessagesBefore(String roomId, String before, int size) {
+        MessageCursorUtil.checkPageSize(size);
+        UserEntity user = SecurityUtils.getCurrentUser();
+        WatchPartyRoomEntity room = getRoomDetails(roomId);
+
+        if (room == null) {
+            throw new RuntimeException("Room not found");
+        }
+
+        if (!room.hasParticipant(user.getId())) {
+            throw new RuntimeException("You are not a participant in this room");
+        }
+
+        // Keyset theo (timestamp, _id) giảm dần trên index room_timestamp_id, không skip
+        Criteria criteria = Criteria.where("roomId").is(roomId);
+        if (before != null && !before.isBlank()) {
+            criteria = new Criteria().andOperator(criteria, MessageCursorUtil.olderThan(before));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "timestamp", "_id"))
+                .limit(size + 1);
+        List<WatchPartyMessageEntity> messages = new ArrayList<>(mongoTemplate.find(query, WatchPartyMessageEntity.class));
+
+        boolean hasMore = messages.size() > size;
+        if (hasMore) {
+            messages = new ArrayList<>(messages.subList(0, size));
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            WatchPartyMessageEntity oldest = messages.get(messages.size() - 1);
+            nextCursor = MessageCursorUtil.encode(oldest.getTimestamp(), oldest.getId());
+        }
+
+        // Hiển thị theo thứ tự thời gian tăng dần (cũ -> mới)
+        Collections.reverse(messages);
+        return new CursorPaginatedResponse<>(messages, nextCursor, hasMore);
+    }
+
     @Override
     public void kickUser(String roomId, String targetUserId, String reason) {
         UserEntity currentUser = SecurityUtils.getCurrentUser();
@@ -513,10 +567,7 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         }
 
         // Get target user info before removing
-        WatchPartyParticipant targetParticipant = room.getParticipants().stream()
-                .filter(p -> p.getUserId().equals(targetUserId))
-                .findFirst()
-                .orElse(null);
+        WatchPartyParticipant targetParticipant = room.findParticipant(targetUserId);
 
         // ✅ Get target user entity để lấy username
         UserEntity targetUser = userRepository.findById(targetUserId)
@@ -538,12 +589,12 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         System.out.println("🔥 KICK notification sent successfully!");
 
         // Remove participant from room
-        room.getParticipants().removeIf(p -> p.getUserId().equals(targetUserId));
-        room.setLastUpdated(LocalDateTime.now());
-
-        // Save room
-        roomRepository.save(room);
-        activeRooms.put(roomId, room);
+        room = updateRoom(hostCriteria(roomId, currentUser.getId()).and("participants.userId").is(targetUserId),
+                new Update().pull("participants", new Document("userId", targetUserId)));
+        if (room == null) {
+            throw new RuntimeException("User is not in this room");
+        }
+        playbackStateService.overlay(room);
 
         // Send system message
         String kickMessage = targetParticipant != null
@@ -556,7 +607,8 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         notifyRoomParticipants(roomId, "USER_KICKED", kickMessage);
 
         // Broadcast room update
-        messagingTemplate.convertAndSend("/topic/room/" + roomId + "/update", room);
+        roomBroadcaster.participantChanged(room, ParticipantEventType.KICKED, targetUserId);
+        roomBroadcaster.roomUpdated(room);
     }
 
     @Override
@@ -595,16 +647,14 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
                 )
         );
 
-        // Add to banned list
-        room.banUser(targetUserId);
-
-        // Remove from participants if present
-        room.getParticipants().removeIf(p -> p.getUserId().equals(targetUserId));
-        room.setLastUpdated(LocalDateTime.now());
-
-        // Save room
-        roomRepository.save(room);
-        activeRooms.put(roomId, room);
+        // Add to banned list, remove from participants if present
+        room = updateRoom(hostCriteria(roomId, currentUser.getId()), new Update()
+                .addToSet("bannedUserIds", targetUserId)
+                .pull("participants", new Document("userId", targetUserId)));
+        if (room == null) {
+            throw new RuntimeException("Only host can ban users");
+        }
+        playbackStateService.overlay(room);
 
         // Send system message
         String banMessage = targetUser.getUsername() + " was banned from the room";
@@ -615,7 +665,8 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         notifyRoomParticipants(roomId, "USER_BANNED", banMessage);
 
         // Broadcast room update
-        messagingTemplate.convertAndSend("/topic/room/" + roomId + "/update", room);
+        roomBroadcaster.participantChanged(room, ParticipantEventType.BANNED, targetUserId);
+        roomBroadcaster.roomUpdated(room);
     }
 
     @Override
@@ -633,12 +684,9 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         }
 
         // Remove from banned list
-        room.unbanUser(targetUserId);
-        room.setLastUpdated(LocalDateTime.now());
-
-        // Save room
-        roomRepository.save(room);
-        activeRooms.put(roomId, room);
+        if (updateRoom(hostCriteria(roomId, currentUser.getId()), new Update().pull("bannedUserIds", targetUserId)) == null) {
+            throw new RuntimeException("Only host can unban users");
+        }
 
         // Get target user info
         UserEntity targetUser = userRepository.findById(targetUserId)
@@ -656,6 +704,13 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
     public void deleteMessage(String roomId, String messageId) {
         UserEntity currentUser = SecurityUtils.getCurrentUser();
 
+        // Message chưa ghi xong xuống DB thì bỏ khỏi hàng đợi (hoặc xoá ngay sau khi lô đang ghi xong)
+        if (chatPipeline.discard(roomId, messageId, currentUser.getId())) {
+            messagingTemplate.convertAndSend("/topic/room/" + roomId + "/message-deleted",
+                    Map.of("messageId", messageId, "userId", currentUser.getId()));
+            return;
+        }
+
         // Get the message
         WatchPartyMessageEntity message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
@@ -692,17 +747,38 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
             throw new RuntimeException("Only host can view banned users");
         }
 
+        if (room.getBannedUserIds().isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // 1 query cho tất cả user bị ban, chỉ lấy các field cần (không resolve DBRef location)
+        Query userQuery = new Query(Criteria.where("_id").in(room.getBannedUserIds()));
+        userQuery.fields().include("firstName", "middleName", "lastName", "username", "avatarUrl", "usedFrame");
+        Map<String, UserEntity> usersById = mongoTemplate.find(userQuery, UserEntity.class).stream()
+                .collect(Collectors.toMap(UserEntity::getId, user -> user));
+
+        // Frame là lazy DBRef: gom id rồi load 1 lần thay vì resolve từng user
+        Map<String, String> frameIdByUserId = new HashMap<>();
+        for (UserEntity user : usersById.values()) {
+            if (user.getUsedFrame() instanceof LazyLoadingProxy proxy && proxy.toDBRef() != null) {
+                frameIdByUserId.put(user.getId(), proxy.toDBRef().getId().toString());
+            }
+        }
+        Map<String, String> frameUrlById = new HashMap<>();
+        frameRepository.findAllById(new HashSet<>(frameIdByUserId.values()))
+                .forEach(frame -> frameUrlById.put(frame.getId(), frame.getImageURL()));
+
         List<Map<String, Object>> bannedUsers = new ArrayList<>();
 
         for (String bannedUserId : room.getBannedUserIds()) {
-            UserEntity user = userRepository.findById(bannedUserId).orElse(null);
+            UserEntity user = usersById.get(bannedUserId);
             if (user != null) {
                 Map<String, Object> bannedUser = new HashMap<>();
                 bannedUser.put("id", user.getId());
                 bannedUser.put("username", user.getUsername());
                 bannedUser.put("fullName", user.getFullname());
                 bannedUser.put("avatarUrl", user.getAvatarUrl());
-                bannedUser.put("userFrameUrl", user.getUsedFrame().getImageURL());
+                bannedUser.put("userFrameUrl", frameUrlById.get(frameIdByUserId.get(bannedUserId)));
                 bannedUsers.add(bannedUser);
             }
         }
@@ -731,18 +807,62 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         messagingTemplate.convertAndSend("/topic/room/" + roomId + "/chat", systemMessage);
     }
 
-    private void closeRoom(String roomId) {
-        WatchPartyRoomEntity room = activeRooms.get(roomId);
-        if (room != null) {
-            room.setActive(false);
-            roomRepository.save(room);
-            activeRooms.remove(roomId);
-            messageRepository.deleteByRoomId(roomId);
+    /**
+     * Đóng phòng nếu vẫn chưa có ai; trả false nếu có người vừa vào từ node khác.
+     */
+    private boolean closeRoom(String roomId) {
+        WatchPartyRoomEntity room = updateRoom(Criteria.where("_id").is(roomId).and("isActive").is(true)
+                .and("participants").size(0), new Update().set("isActive", false));
+        if (room == null) {
+            return false;
+        }
+        playbackStateService.remove(roomId);
+        roomBroadcaster.cancel(roomId);
+        chatPipeline.discardRoom(roomId);
+        messageRepository.deleteByRoomId(roomId);
+
+        // Notify all participants
+        messagingTemplate.convertAndSend("/topic/room/" + roomId + "/system",
+                Map.of("eventType", "ROOM_CLOSED", "message", "Room has been closed"));
+        return true;
+    }
+
+    private void expireRoom(String roomId) {
+        updateRoom(Criteria.where("_id").is(roomId).and("isActive").is(true), new Update().set("isActive", false));
+    }
+
+    private void checkCanJoin(WatchPartyRoomEntity room, String userId) {
+        if (room.isBanned(userId)) {
+            throw new RuntimeException("You are banned from this room");
+        }
+
+        // Kiểm tra room có full không
+        if (room.isFull()) {
+            throw new RuntimeException("Room is full");
+        }
+    }
 
-            // Notify all participants
-            messagingTemplate.convertAndSend("/topic/room/" + roomId + "/system",
-                    Map.of("eventType", "ROOM_CLOSED", "message", "Room has been closed"));
+    private static Criteria hostCriteria(String roomId, String hostUserId) {
+        return Criteria.where("_id").is(roomId).and("isActive").is(true).and("hostUserId").is(hostUserId);
+    }
+
+    /**
+     * Cập nhật từng phần trên Mongo (findAndModify) rồi đưa document mới vào cache.
+     * Không save cả document để các node sửa cùng 1 phòng không ghi đè thay đổi của nhau.
+     * Trả null nếu không còn document nào khớp điều kiện.
+     */
+    private WatchPartyRoomEntity updateRoom(Criteria criteria, Update update) {
+        update.inc("revision", 1).set("lastUpdated", LocalDateTime.now());
+        WatchPartyRoomEntity updated = mongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), WatchPartyRoomEntity.class);
+        if (updated != null) {
+            activeRooms.put(updated.getId(), updated);
+            // findAndModify không sinh AfterSaveEvent, index tìm kiếm phải được cập nhật tay
+            if (INDEXED_FIELDS.stream().anyMatch(update::modifies)) {
+                searchIndexService.refresh(SearchCategory.WATCH_PARTY_ROOM, updated.getId());
+            }
         }
+        return updated;
     }
 
     // method to extend room expiration (for hosts)
@@ -761,11 +881,11 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
 
         // Extend expiration by additional hours
         LocalDateTime newExpiration = room.getExpiresAt().plusHours(additionalHours);
-        room.setExpiresAt(newExpiration);
-        room.setLastUpdated(LocalDateTime.now());
-
-        roomRepository.save(room);
-        activeRooms.put(roomId, room);
+        room = updateRoom(hostCriteria(roomId, currentUser.getId()), new Update().set("expiresAt", newExpiration));
+        if (room == null) {
+            throw new RuntimeException("Only host can extend room expiration");
+        }
+        playbackStateService.overlay(room);
 
         // Send WebSocket notification for expiration update
         sendExpirationUpdateNotification(roomId, newExpiration, additionalHours, currentUser.getUsername());
@@ -811,6 +931,21 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
                     ).and("isActive").is(true)
                     .and("publish").is(true); // Chỉ search public rooms
 
+            // Có index thì lấy id theo thứ tự liên quan, chỉ đọc DB cho trang hiện tại
+            Optional<List<String>> hits = searchIndexService.search(SearchCategory.WATCH_PARTY_ROOM, keyword);
+            if (hits.isPresent()) {
+                List<String> ids = hits.get();
+                int start = (int) Math.min(pageable.getOffset(), ids.size());
+                List<String> pageIds = ids.subList(start, Math.min(start + pageable.getPageSize(), ids.size()));
+                Query pageQuery = new Query(Criteria.where("_id").in(pageIds).and("isActive").is(true).and("publish").is(true));
+                List<WatchPartyRoomModel> roomModels = SearchIndexService.inRankOrder(pageIds,
+                                mongoTemplate.find(pageQuery, WatchPartyRoomEntity.class), WatchPartyRoomEntity::getId)
+                        .stream()
+                        .map(this::toSearchRoomModel)
+                        .toList();
+                return new PageImpl<>(roomModels, pageable, ids.size());
+            }
+
             Query query = new Query(criteria);
 
             // Count total elements
@@ -822,16 +957,7 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
 
             // Convert to models
             List<WatchPartyRoomModel> roomModels = roomEntities.stream()
-                    .map(room -> {
-                        WatchPartyRoomModel model = modelMapper.map(room, WatchPartyRoomModel.class);
-
-                        // Add additional info
-                        model.setMaxParticipants(100);
-                        model.setHostUserId(room.getHostUserId());
-                        model.setHostUsername(getHostUsername(room.getHostUserId()));
-
-                        return model;
-                    })
+                    .map(this::toSearchRoomModel)
                     .collect(Collectors.toList());
 
             return new PageImpl<>(roomModels, pageable, totalElements);
@@ -842,6 +968,17 @@ public class WatchPartyServiceImpl implements IWatchPartyService {
         }
     }
 
+    private WatchPartyRoomModel toSearchRoomModel(WatchPartyRoomEntity room) {
+        WatchPartyRoomModel model = modelMapper.map(room, WatchPartyRoomModel.class);
+
+        // Add additional info
+        model.setMaxParticipants(100);
+        model.setHostUserId(room.getHostUserId());
+        model.setHostUsername(getHostUsername(room.getHostUserId()));
+
+        return model;
+    }
+
     private void sendExpirationUpdateNotification(String roomId, LocalDateTime newExpiration, int additionalHours, String hostUsername) {
         try {
             Map<String, Object> expirationUpdate = Map.of(
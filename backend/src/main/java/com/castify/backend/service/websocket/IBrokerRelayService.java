@@ -0,0 +1,24 @@
+package com.castify.backend.service.websocket;
+
+import org.springframework.messaging.Message;
+
+import java.util.function.Consumer;
+
+/**
+ * Chuyển tiếp message của broker và event trạng thái giữa các node backend.
+ * Chế độ chọn bằng websocket.broker.relay: local (1 node, mặc định) hoặc redis.
+ */
+public interface IBrokerRelayService {
+    /**
+     * Header đánh dấu message nhận từ node khác, không chuyển tiếp lại.
+     */
+    String RELAYED_HEADER = "castifyRelayed";
+
+    boolean isClustered();
+
+    void relay(Message<?> message);
+
+    void publish(String channel, Object event);
+
+    <T> void subscribe(String channel, Class<T> type, Consumer<T> listener);
+}
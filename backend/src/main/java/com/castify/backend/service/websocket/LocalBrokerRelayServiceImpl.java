@@ -0,0 +1,31 @@
+package com.castify.backend.service.websocket;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Service;
+
+import java.util.function.Consumer;
+
+/**
+ * Chạy 1 node: simple broker đã đủ, không cần chuyển tiếp gì.
+ */
+@Service
+@ConditionalOnProperty(name = "websocket.broker.relay", havingValue = "local", matchIfMissing = true)
+public class LocalBrokerRelayServiceImpl implements IBrokerRelayService {
+    @Override
+    public boolean isClustered() {
+        return false;
+    }
+
+    @Override
+    public void relay(Message<?> message) {
+    }
+
+    @Override
+    public void publish(String channel, Object event) {
+    }
+
+    @Override
+    public <T> void subscribe(String channel, Class<T> type, Consumer<T> listener) {
+    }
+}
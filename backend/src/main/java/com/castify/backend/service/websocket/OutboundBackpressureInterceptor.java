@@ -0,0 +1,59 @@
+package com.castify.backend.service.websocket;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backpressure cho kênh gửi ra client: session chậm có send buffer vượt ngưỡng thì bỏ các message
+ * đánh dấu droppable (heartbeat - lần sau sẽ gửi lại) để không chạm giới hạn send buffer và bị đóng kết nối.
+ * Kích thước buffer lấy từ decorator của session qua {@link WebSocketSendBufferRegistry}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboundBackpressureInterceptor implements ChannelInterceptor {
+    public static final String DROPPABLE_HEADER = "castifyDroppable";
+
+    private final WebSocketSendBufferRegistry sendBufferRegistry;
+
+    @Value("${websocket.outbound.max-buffered-bytes:131072}")
+    private int maxBufferedBytes;
+
+    private final AtomicInteger droppedCount = new AtomicInteger();
+
+    /**
+     * Header cho message có thể bỏ khi client chậm, dùng với convertAndSend(destination, payload, headers).
+     */
+    public static MessageHeaders droppableHeaders() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setHeader(DROPPABLE_HEADER, Boolean.TRUE);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (message.getHeaders().get(DROPPABLE_HEADER) == null) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || sendBufferRegistry.getBufferSize(sessionId) < maxBufferedBytes) {
+            return message;
+        }
+
+        int dropped = droppedCount.incrementAndGet();
+        if (dropped % 100 == 1) {
+            log.warn("Dropping messages for slow WebSocket session {} ({} dropped in total)", sessionId, dropped);
+        }
+        return null;
+    }
+}
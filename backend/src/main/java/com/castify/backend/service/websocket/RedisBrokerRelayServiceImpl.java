@@ -0,0 +1,147 @@
+package com.castify.backend.service.websocket;
+
+import com.castify.backend.models.websocket.ClusterEvent;
+import com.castify.backend.models.websocket.RelayedBrokerMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Nhiều node sau load balancer: mỗi node vẫn dùng simple broker cho các session của mình,
+ * message gửi vào broker được publish lên Redis và các node khác đưa lại vào broker của họ.
+ * User destination (/user/...) cũng được chuyển tiếp, node nào có session của user sẽ tự gửi.
+ */
+@Service
+@ConditionalOnProperty(name = "websocket.broker.relay", havingValue = "redis")
+@Slf4j
+public class RedisBrokerRelayServiceImpl implements IBrokerRelayService {
+    private static final String BROKER_CHANNEL = "ws_broker_relay";
+    private static final String EVENT_CHANNEL_PREFIX = "ws_cluster_event:";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final RedisMessageListenerContainer listenerContainer = new RedisMessageListenerContainer();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+    @Autowired
+    private ObjectMapper objectMapper;
+    // Lazy để tránh vòng phụ thuộc với cấu hình WebSocket (broker channel cần interceptor của relay)
+    @Autowired
+    @Lazy
+    @Qualifier("brokerChannel")
+    private MessageChannel brokerChannel;
+
+    @PostConstruct
+    public void start() {
+        listenerContainer.setConnectionFactory(redisConnectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.addMessageListener((message, pattern) -> onBrokerMessage(message.getBody()),
+                new ChannelTopic(BROKER_CHANNEL));
+        listenerContainer.start();
+        log.info("WebSocket broker relay started on Redis, node {}", nodeId);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        listenerContainer.destroy();
+    }
+
+    @Override
+    public boolean isClustered() {
+        return true;
+    }
+
+    @Override
+    public void relay(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE
+                || accessor.getDestination() == null
+                || accessor.getHeader(RELAYED_HEADER) != null
+                // Message đã được resolve cho 1 session cụ thể ở node này
+                || accessor.getHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION) != null
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return;
+        }
+
+        try {
+            MimeType contentType = accessor.getContentType();
+            RelayedBrokerMessage relayed = new RelayedBrokerMessage(
+                    nodeId,
+                    accessor.getDestination(),
+                    contentType != null ? contentType.toString() : null,
+                    payload
+            );
+            stringRedisTemplate.convertAndSend(BROKER_CHANNEL, objectMapper.writeValueAsString(relayed));
+        } catch (Exception e) {
+            log.error("Failed to relay message to {}", accessor.getDestination(), e);
+        }
+    }
+
+    @Override
+    public void publish(String channel, Object event) {
+        try {
+            ClusterEvent clusterEvent = new ClusterEvent(nodeId, objectMapper.writeValueAsString(event));
+            stringRedisTemplate.convertAndSend(EVENT_CHANNEL_PREFIX + channel, objectMapper.writeValueAsString(clusterEvent));
+        } catch (Exception e) {
+            log.error("Failed to publish cluster event on {}", channel, e);
+        }
+    }
+
+    @Override
+    public <T> void subscribe(String channel, Class<T> type, Consumer<T> listener) {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                ClusterEvent clusterEvent = objectMapper.readValue(message.getBody(), ClusterEvent.class);
+                if (nodeId.equals(clusterEvent.getNodeId())) {
+                    return;
+                }
+                listener.accept(objectMapper.readValue(clusterEvent.getPayload(), type));
+            } catch (Exception e) {
+                log.error("Failed to handle cluster event on {}", channel, e);
+            }
+        }, new ChannelTopic(EVENT_CHANNEL_PREFIX + channel));
+    }
+
+    private void onBrokerMessage(byte[] body) {
+        try {
+            RelayedBrokerMessage relayed = objectMapper.readValue(new String(body, StandardCharsets.UTF_8), RelayedBrokerMessage.class);
+            if (nodeId.equals(relayed.getNodeId())) {
+                return;
+            }
+
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setDestination(relayed.getDestination());
+            if (relayed.getContentType() != null) {
+                accessor.setContentType(MimeType.valueOf(relayed.getContentType()));
+            }
+            accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+            accessor.setLeaveMutable(true);
+
+            brokerChannel.send(MessageBuilder.createMessage(relayed.getPayload(), accessor.getMessageHeaders()));
+        } catch (Exception e) {
+            log.error("Failed to deliver relayed broker message", e);
+        }
+    }
+}
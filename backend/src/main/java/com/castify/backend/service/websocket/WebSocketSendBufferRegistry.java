@@ -0,0 +1,37 @@
+package com.castify.backend.service.websocket;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Giữ ConcurrentWebSocketSessionDecorator của từng session để biết send buffer thực tế.
+ * Message tồn đọng của client chậm nằm trong buffer này (không phải hàng đợi của clientOutboundChannel),
+ * nên quyết định bỏ message phải dựa trên getBufferSize() của nó.
+ */
+@Component
+public class WebSocketSendBufferRegistry {
+    private final Map<String, ConcurrentWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    public ConcurrentWebSocketSessionDecorator decorate(WebSocketSession session, int sendTimeLimit, int bufferSizeLimit) {
+        ConcurrentWebSocketSessionDecorator decorated =
+                new ConcurrentWebSocketSessionDecorator(session, sendTimeLimit, bufferSizeLimit);
+        sessions.put(session.getId(), decorated);
+        return decorated;
+    }
+
+    /**
+     * Số byte đang chờ gửi của session, 0 nếu session không còn.
+     */
+    public int getBufferSize(String sessionId) {
+        ConcurrentWebSocketSessionDecorator decorated = sessions.get(sessionId);
+        return decorated != null ? decorated.getBufferSize() : 0;
+    }
+
+    public void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+}
@@ -0,0 +1,55 @@
+package com.castify.backend.utils;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Cursor cho phân trang tin nhắn theo (timestamp, _id) giảm dần.
+ * Cursor là base64 của "timestamp|id" của tin nhắn cũ nhất đã trả về.
+ */
+public class MessageCursorUtil {
+    private static final String SEPARATOR = "|";
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Kích thước trang phải trong [1, MAX_PAGE_SIZE]: size <= 0 sẽ thành limit(0) (không giới hạn) hoặc lỗi khi lấy cursor.
+     */
+    public static int checkPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return pageSize;
+    }
+
+    public static String encode(LocalDateTime timestamp, String id) {
+        String raw = timestamp + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Điều kiện lấy các tin nhắn đứng sau cursor: timestamp nhỏ hơn, hoặc bằng timestamp nhưng _id nhỏ hơn.
+     */
+    public static Criteria olderThan(String cursor) {
+        LocalDateTime timestamp;
+        Object idValue;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // Timestamp không chứa "|", id thì có thể
+            int separatorIndex = raw.indexOf(SEPARATOR);
+            timestamp = LocalDateTime.parse(raw.substring(0, separatorIndex));
+            String id = raw.substring(separatorIndex + 1);
+            idValue = ObjectId.isValid(id) ? new ObjectId(id) : id;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+
+        return new Criteria().orOperator(
+                Criteria.where("timestamp").lt(timestamp),
+                Criteria.where("timestamp").is(timestamp).and("_id").lt(idValue)
+        );
+    }
+}
@@ -0,0 +1,45 @@
+package com.castify.backend.models.watchParty;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlaybackStateTest {
+    private static final long UPDATED_AT = 1_700_000_000_000L;
+
+    @Test
+    void pausedStateStaysAtPosition() {
+        PlaybackState state = state(42.5, false, 1.0);
+
+        assertEquals(42.5, state.expectedPosition(UPDATED_AT + 10_000));
+    }
+
+    @Test
+    void playingStateAdvancesWithElapsedTime() {
+        PlaybackState state = state(10.0, true, 1.0);
+
+        assertEquals(10.0, state.expectedPosition(UPDATED_AT));
+        assertEquals(12.5, state.expectedPosition(UPDATED_AT + 2_500), 1e-9);
+    }
+
+    @Test
+    void playbackRateScalesElapsedTime() {
+        assertEquals(14.0, state(10.0, true, 2.0).expectedPosition(UPDATED_AT + 2_000), 1e-9);
+        assertEquals(11.0, state(10.0, true, 0.5).expectedPosition(UPDATED_AT + 2_000), 1e-9);
+    }
+
+    @Test
+    void clockBehindUpdatedAtDoesNotRewind() {
+        // Đồng hồ giữa các node lệch nhau: now trước updatedAt thì giữ nguyên vị trí
+        assertEquals(10.0, state(10.0, true, 1.0).expectedPosition(UPDATED_AT - 5_000));
+    }
+
+    private static PlaybackState state(double position, boolean playing, double playbackRate) {
+        PlaybackState state = new PlaybackState();
+        state.setPosition(position);
+        state.setPlaying(playing);
+        state.setPlaybackRate(playbackRate);
+        state.setUpdatedAt(UPDATED_AT);
+        return state;
+    }
+}
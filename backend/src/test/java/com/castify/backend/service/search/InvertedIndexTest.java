@@ -0,0 +1,100 @@
+package com.castify.backend.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InvertedIndexTest {
+
+    @Test
+    void tokenizeFoldsVietnameseDiacritics() {
+        assertEquals(List.of("duong", "pho", "ha", "noi", "2024"), SearchTextAnalyzer.tokenize("Đường phố Hà Nội - 2024!"));
+        assertTrue(SearchTextAnalyzer.tokenize("   ").isEmpty());
+        assertTrue(SearchTextAnalyzer.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void addFieldAppliesBoost() {
+        Map<String, Double> terms = new HashMap<>();
+        SearchTextAnalyzer.addField(terms, "Nhạc nhạc", 2.0);
+        SearchTextAnalyzer.addField(terms, "nhac pop", 1.0);
+        assertEquals(5.0, terms.get("nhac"));
+        assertEquals(1.0, terms.get("pop"));
+    }
+
+    @Test
+    void ranksByBm25AndPrefersDocumentsMatchingMoreTerms() {
+        InvertedIndex index = new InvertedIndex();
+        index.upsert("title", doc("Học tiếng Anh", 3.0, "podcast giáo dục"));
+        index.upsert("description", doc("Podcast giáo dục", 3.0, "học tiếng anh mỗi ngày"));
+        index.upsert("partial", doc("Tiếng Việt", 3.0, "ngữ pháp"));
+        index.upsert("unrelated", doc("Nhạc pop", 3.0, "âm nhạc"));
+
+        List<String> results = index.search(SearchTextAnalyzer.tokenize("hoc tieng anh"), 10);
+
+        assertEquals(List.of("title", "description", "partial"), results);
+    }
+
+    @Test
+    void ranksExactThenPrefixThenFuzzyMatches() {
+        InvertedIndex index = new InvertedIndex();
+        index.upsert("exact", doc("Music", 1.0, null));
+        index.upsert("prefix", doc("Musician", 1.0, null));
+
+        assertEquals(List.of("exact", "prefix"), index.search(List.of("music"), 10));
+        // "musici" là tiền tố của "musician" và sai 1 ký tự so với "music": tiền tố xếp trên
+        assertEquals(List.of("prefix", "exact"), index.search(List.of("musici"), 10));
+    }
+
+    @Test
+    void matchesTyposWithinEditDistance() {
+        InvertedIndex index = new InvertedIndex();
+        index.upsert("podcast", doc("Podcast hay", 1.0, null));
+        index.upsert("other", doc("Radio", 1.0, null));
+
+        // 1 ký tự sai với từ 4-7 ký tự
+        assertEquals(List.of("podcast"), index.search(List.of("podkast"), 10));
+        // Từ ngắn hơn 4 ký tự không được sửa lỗi
+        assertTrue(index.search(List.of("hey"), 10).isEmpty());
+    }
+
+    @Test
+    void fuzzyMatchesOnlyTermsWithinLengthRange() {
+        InvertedIndex index = new InvertedIndex();
+        index.upsert("short", doc("Podcat", 1.0, null));
+        index.upsert("long", doc("Poddcasts", 1.0, null));
+
+        // "podcast" (7 ký tự) chỉ được sửa 1 ký tự: "podcat" khớp, "poddcasts" lệch 2 ký tự
+        assertEquals(List.of("short"), index.search(List.of("podcast"), 10));
+
+        // Term bị xoá khỏi index thì không còn là ứng viên gõ sai
+        index.remove("short");
+        assertTrue(index.search(List.of("podcast"), 10).isEmpty());
+    }
+
+    @Test
+    void removedAndReplacedDocumentsAreNoLongerMatched() {
+        InvertedIndex index = new InvertedIndex();
+        index.upsert("a", doc("Bóng đá", 1.0, null));
+        index.upsert("b", doc("Bóng rổ", 1.0, null));
+
+        index.remove("a");
+        index.upsert("b", doc("Cầu lông", 1.0, null));
+
+        assertEquals(1, index.size());
+        assertTrue(index.search(List.of("bong"), 10).isEmpty());
+        assertEquals(List.of("b"), index.search(List.of("cau", "long"), 10));
+    }
+
+    private static Map<String, Double> doc(String title, double titleBoost, String description) {
+        Map<String, Double> terms = new HashMap<>();
+        SearchTextAnalyzer.addField(terms, title, titleBoost);
+        SearchTextAnalyzer.addField(terms, description, 1.0);
+        return terms;
+    }
+}
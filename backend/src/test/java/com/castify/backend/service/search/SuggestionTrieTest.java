@@ -0,0 +1,60 @@
+package com.castify.backend.service.search;
+
+import com.castify.backend.models.search.SearchKeywordModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuggestionTrieTest {
+
+    @Test
+    void completesPrefixWithTopKByCount() {
+        SuggestionTrie trie = new SuggestionTrie(2);
+        trie.add("nhac pop", "nhạc pop", 5);
+        trie.add("nhac rock", "nhạc rock", 3);
+        trie.add("nhac jazz", "nhạc jazz", 1);
+        trie.add("tin tuc", "tin tức", 10);
+
+        assertEquals(List.of(
+                new SearchKeywordModel("nhạc pop", 5),
+                new SearchKeywordModel("nhạc rock", 3)
+        ), trie.complete("nhac"));
+        assertEquals(List.of(new SearchKeywordModel("tin tức", 10)), trie.complete("t"));
+        assertTrue(trie.complete("xyz").isEmpty());
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    void keywordEntersTopKAfterIncrements() {
+        SuggestionTrie trie = new SuggestionTrie(2);
+        trie.add("nhac pop", "nhạc pop", 5);
+        trie.add("nhac rock", "nhạc rock", 3);
+        trie.add("nhac jazz", "nhạc jazz", 1);
+
+        trie.add("nhac jazz", "Nhạc Jazz", 4);
+        trie.add("nhac jazz", "Nhạc Jazz", 2);
+
+        // Hiển thị theo cách gõ gần nhất, số lần tìm cộng dồn
+        assertEquals(List.of(
+                new SearchKeywordModel("Nhạc Jazz", 7),
+                new SearchKeywordModel("nhạc pop", 5)
+        ), trie.complete("nhac"));
+        assertEquals(List.of(new SearchKeywordModel("Nhạc Jazz", 7)), trie.complete("nhac j"));
+        assertEquals(List.of(new SearchKeywordModel("nhạc rock", 3)), trie.complete("nhac r"));
+    }
+
+    @Test
+    void tiesAreOrderedByKeywordAndInvalidAddsIgnored() {
+        SuggestionTrie trie = new SuggestionTrie(3);
+        trie.add("kb", "kb", 2);
+        trie.add("ka", "ka", 2);
+        trie.add("", "", 5);
+        trie.add("kc", "kc", 0);
+
+        assertEquals(List.of(new SearchKeywordModel("ka", 2), new SearchKeywordModel("kb", 2)), trie.complete("k"));
+        assertEquals(2, trie.size());
+    }
+}
@@ -0,0 +1,191 @@
+package com.castify.backend.service.streaming;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoStreamServiceImplTest {
+    private static final long LAST_MODIFIED = Instant.parse("2024-05-01T10:00:00Z").toEpochMilli();
+    private static final String ETAG = "\"" + Long.toHexString(LAST_MODIFIED) + "-" + Long.toHexString(100) + "\"";
+
+    private final VideoStreamServiceImpl service = new VideoStreamServiceImpl();
+
+    @TempDir
+    Path tempDir;
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        content = new byte[100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        file = tempDir.resolve("video.mp4");
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(LAST_MODIFIED));
+    }
+
+    @Test
+    void servesWholeFileWithValidators() throws Exception {
+        MockHttpServletResponse response = serve(get());
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(content, response.getContentAsByteArray());
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(LAST_MODIFIED, response.getDateHeader(HttpHeaders.LAST_MODIFIED));
+        assertEquals("max-age=60", response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    void servesSingleRange() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-19");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 10-19/100", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(10, response.getContentLengthLong());
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 20), response.getContentAsByteArray());
+    }
+
+    @Test
+    void mergesOverlappingRangesIntoMultipart() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-29,0-9,5-14");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges"));
+        String body = new String(response.getContentAsByteArray(), StandardCharsets.ISO_8859_1);
+        assertTrue(body.indexOf("Content-Range: bytes 0-14/100") < body.indexOf("Content-Range: bytes 20-29/100"));
+        assertEquals(2, body.split("Content-Range:").length - 1);
+    }
+
+    @Test
+    void servesWholeFileWhenRangesAddUpToMoreThanTheFile() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-79,10-89");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void rejectsUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = get();
+        request.addHeader(HttpHeaders.RANGE, "bytes=200-300");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */100", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void ifRangeHonorsMatchingValidatorsOnly() throws Exception {
+        MockHttpServletRequest matching = get();
+        matching.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        matching.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        assertEquals(206, serve(matching).getStatus());
+
+        MockHttpServletRequest matchingDate = get();
+        matchingDate.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        matchingDate.addHeader(HttpHeaders.IF_RANGE, "Wed, 01 May 2024 10:00:00 GMT");
+        assertEquals(206, serve(matchingDate).getStatus());
+
+        // File đã đổi so với bản client đang có: gửi lại cả file
+        MockHttpServletRequest stale = get();
+        stale.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+        stale.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+        MockHttpServletResponse response = serve(stale);
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void returnsNotModifiedForMatchingConditionalRequests() throws Exception {
+        MockHttpServletRequest ifNoneMatch = get();
+        ifNoneMatch.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + ETAG);
+        MockHttpServletResponse response = serve(ifNoneMatch);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        MockHttpServletRequest ifModifiedSince = get();
+        ifModifiedSince.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+        assertEquals(304, serve(ifModifiedSince).getStatus());
+
+        // If-None-Match được ưu tiên hơn If-Modified-Since
+        MockHttpServletRequest changed = get();
+        changed.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        changed.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+        assertEquals(200, serve(changed).getStatus());
+    }
+
+    @Test
+    void headRequestSendsHeadersOnly() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/video.mp4");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void missingFileIsNotFound() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.serve(tempDir.resolve("missing.mp4"), "video/mp4", null, get(), response);
+        assertEquals(404, response.getStatus());
+    }
+
+    @Test
+    void mergeRangesJoinsAdjacentRanges() {
+        List<long[]> merged = VideoStreamServiceImpl.mergeRanges(
+                HttpRange.parseRanges("bytes=10-19,0-9,40-49"), 100);
+
+        assertEquals(2, merged.size());
+        assertArrayEquals(new long[]{0, 19}, merged.get(0));
+        assertArrayEquals(new long[]{40, 49}, merged.get(1));
+        assertThrows(IllegalArgumentException.class,
+                () -> VideoStreamServiceImpl.mergeRanges(HttpRange.parseRanges("bytes=100-"), 100));
+    }
+
+    private MockHttpServletRequest get() {
+        return new MockHttpServletRequest("GET", "/video.mp4");
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.serve(file, "video/mp4", CacheControl.maxAge(Duration.ofMinutes(1)), request, response);
+        return response;
+    }
+}
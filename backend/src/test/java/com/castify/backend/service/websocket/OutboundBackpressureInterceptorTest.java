@@ -0,0 +1,105 @@
+package com.castify.backend.service.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OutboundBackpressureInterceptorTest {
+    private static final int MAX_BUFFERED_BYTES = 64 * 1024;
+    private static final String FRAME = "x".repeat(16 * 1024);
+
+    private final WebSocketSendBufferRegistry registry = new WebSocketSendBufferRegistry();
+    private final OutboundBackpressureInterceptor interceptor = new OutboundBackpressureInterceptor(registry);
+    private final ExecutorService sender = Executors.newSingleThreadExecutor();
+
+    private final CountDownLatch sendStarted = new CountDownLatch(1);
+    private final CountDownLatch clientReads = new CountDownLatch(1);
+    private ConcurrentWebSocketSessionDecorator slowSession;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(interceptor, "maxBufferedBytes", MAX_BUFFERED_BYTES);
+
+        // Client chậm: lần gửi đầu tiên bị treo cho tới khi client đọc
+        WebSocketSession raw = mock(WebSocketSession.class);
+        when(raw.getId()).thenReturn("slow");
+        when(raw.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            sendStarted.countDown();
+            assertTrue(clientReads.await(5, TimeUnit.SECONDS));
+            return null;
+        }).when(raw).sendMessage(any());
+
+        slowSession = registry.decorate(raw, 20000, 512 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        clientReads.countDown();
+        sender.shutdownNow();
+    }
+
+    @Test
+    void dropsDroppableMessagesOnceSessionBufferBacksUp() throws Exception {
+        Future<?> blockedSend = sender.submit(() -> {
+            slowSession.sendMessage(new TextMessage(FRAME));
+            return null;
+        });
+        assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+
+        // Buffer chưa vượt ngưỡng: vẫn gửi
+        assertNotNull(interceptor.preSend(message("slow", true), null));
+
+        for (int i = 0; i < 5; i++) {
+            slowSession.sendMessage(new TextMessage(FRAME));
+        }
+        assertTrue(registry.getBufferSize("slow") >= MAX_BUFFERED_BYTES);
+
+        assertNull(interceptor.preSend(message("slow", true), null));
+        assertNotNull(interceptor.preSend(message("slow", false), null));
+        assertNotNull(interceptor.preSend(message("other", true), null));
+
+        // Client đọc kịp thì buffer được xả và message droppable lại được gửi
+        clientReads.countDown();
+        blockedSend.get(5, TimeUnit.SECONDS);
+        assertEquals(0, registry.getBufferSize("slow"));
+        assertNotNull(interceptor.preSend(message("slow", true), null));
+    }
+
+    @Test
+    void closedSessionIsForgotten() {
+        registry.remove("slow");
+        assertEquals(0, registry.getBufferSize("slow"));
+    }
+
+    private static Message<String> message(String sessionId, boolean droppable) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setSessionId(sessionId);
+        if (droppable) {
+            accessor.setHeader(OutboundBackpressureInterceptor.DROPPABLE_HEADER, Boolean.TRUE);
+        }
+        return MessageBuilder.createMessage("payload", accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,62 @@
+package com.castify.backend.utils;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageCursorUtilTest {
+
+    @Test
+    void cursorRoundTripsToKeysetCondition() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123_000_000);
+        ObjectId id = new ObjectId();
+
+        String cursor = MessageCursorUtil.encode(timestamp, id.toHexString());
+
+        // Cursor dùng được trên URL
+        assertFalse(cursor.contains("+") || cursor.contains("/") || cursor.contains("="));
+        Document expected = new Document("$or", List.of(
+                new Document("timestamp", new Document("$lt", timestamp)),
+                new Document("timestamp", timestamp).append("_id", new Document("$lt", id))
+        ));
+        assertEquals(expected, MessageCursorUtil.olderThan(cursor).getCriteriaObject());
+    }
+
+    @Test
+    void nonObjectIdKeepsStringId() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 1, 10, 30);
+
+        Document condition = MessageCursorUtil.olderThan(MessageCursorUtil.encode(timestamp, "legacy|id"))
+                .getCriteriaObject();
+
+        @SuppressWarnings("unchecked")
+        List<Document> branches = (List<Document>) condition.get("$or");
+        assertEquals(new Document("$lt", "legacy|id"), branches.get(1).get("_id"));
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        assertThrows(IllegalArgumentException.class, () -> MessageCursorUtil.olderThan("not a cursor!"));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursorUtil.olderThan(
+                Base64.getUrlEncoder().encodeToString("no-separator".getBytes())));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursorUtil.olderThan(
+                Base64.getUrlEncoder().encodeToString("yesterday|abc".getBytes())));
+    }
+
+    @Test
+    void pageSizeMustBeWithinBounds() {
+        assertEquals(1, MessageCursorUtil.checkPageSize(1));
+        assertEquals(MessageCursorUtil.MAX_PAGE_SIZE, MessageCursorUtil.checkPageSize(MessageCursorUtil.MAX_PAGE_SIZE));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursorUtil.checkPageSize(0));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursorUtil.checkPageSize(-5));
+        assertThrows(IllegalArgumentException.class, () -> MessageCursorUtil.checkPageSize(MessageCursorUtil.MAX_PAGE_SIZE + 1));
+    }
+}